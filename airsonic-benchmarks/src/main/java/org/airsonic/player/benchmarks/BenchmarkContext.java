@@ -0,0 +1,92 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.TestContextManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Starts the Airsonic application context for the benchmarks, the same way as the integration tests do:
+ * in a mock servlet environment, with a fresh Airsonic home and its embedded HSQLDB database in a
+ * temporary directory.
+ * <p/>
+ * JMH runs each benchmark in a forked JVM, so a single context is shared by all benchmarks in a fork.
+ */
+public final class BenchmarkContext {
+
+    private static ApplicationContext applicationContext;
+    private static File home;
+
+    private BenchmarkContext() {
+    }
+
+    public static synchronized <T> T getBean(Class<T> type) {
+        if (applicationContext == null) {
+            applicationContext = start();
+        }
+        return applicationContext.getBean(type);
+    }
+
+    /**
+     * Returns the Airsonic home used by the running context.
+     */
+    public static synchronized File getHome() {
+        return home;
+    }
+
+    public static synchronized void stop() throws IOException {
+        if (applicationContext instanceof ConfigurableApplicationContext) {
+            ((ConfigurableApplicationContext) applicationContext).close();
+        }
+        applicationContext = null;
+        if (home != null) {
+            FileUtils.deleteDirectory(home);
+            home = null;
+        }
+    }
+
+    private static ApplicationContext start() {
+        try {
+            home = Files.createTempDirectory("airsonic-benchmarks").toFile();
+            System.setProperty("airsonic.home", home.getPath());
+            System.setProperty("spring.main.banner-mode", "off");
+            System.setProperty("logging.level.root", "WARN");
+            System.setProperty("logging.level.org.airsonic", "WARN");
+            System.setProperty("logging.level.liquibase", "WARN");
+            return new TestContextManager(Host.class).getTestContext().getApplicationContext();
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Only used to let Spring Boot locate the application configuration.
+     */
+    @SpringBootTest
+    static class Host {
+    }
+}
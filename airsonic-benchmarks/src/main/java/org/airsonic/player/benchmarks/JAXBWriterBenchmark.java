@@ -0,0 +1,113 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.controller.JAXBWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.subsonic.restapi.Child;
+import org.subsonic.restapi.Directory;
+import org.subsonic.restapi.MediaType;
+import org.subsonic.restapi.Response;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures marshalling a REST getMusicDirectory response, in XML and in JSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JAXBWriterBenchmark {
+
+    @Param({"xml", "json"})
+    public String format;
+
+    @Param({"20", "500"})
+    public int children;
+
+    private JAXBWriter jaxbWriter;
+    private MockHttpServletRequest request;
+    private Response response;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jaxbWriter = new JAXBWriter();
+
+        request = new MockHttpServletRequest();
+        request.setParameter("f", format);
+
+        Directory directory = new Directory();
+        directory.setId("1");
+        directory.setName("Night River");
+        Date created = new Date();
+        for (int i = 0; i < children; i++) {
+            Child child = new Child();
+            child.setId(String.valueOf(i + 2));
+            child.setParent("1");
+            child.setTitle("Song number " + i);
+            child.setAlbum("Night River");
+            child.setArtist("Blue Echo");
+            child.setIsDir(false);
+            child.setCoverArt("1");
+            child.setYear(2009);
+            child.setGenre("Rock");
+            child.setCreated(jaxbWriter.convertDate(created));
+            child.setPlayCount((long) i);
+            child.setDuration(215);
+            child.setBitRate(320);
+            child.setTrack(i + 1);
+            child.setSize(8600000L);
+            child.setSuffix("mp3");
+            child.setContentType("audio/mpeg");
+            child.setIsVideo(false);
+            child.setPath("Blue Echo/Night River/" + (i + 1) + " - Song number " + i + ".mp3");
+            child.setAlbumId("3");
+            child.setArtistId("4");
+            child.setType(MediaType.MUSIC);
+            directory.getChild().add(child);
+        }
+        response = jaxbWriter.createResponse(true);
+        response.setDirectory(directory);
+    }
+
+    @Benchmark
+    public int writeResponse() {
+        MockHttpServletResponse httpResponse = new MockHttpServletResponse();
+        jaxbWriter.writeResponse(request, httpResponse, response);
+        return httpResponse.getContentLength();
+    }
+}
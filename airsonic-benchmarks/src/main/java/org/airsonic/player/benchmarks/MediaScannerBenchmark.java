@@ -0,0 +1,70 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.service.MediaScannerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full scan of the synthetic library. The files are touched before each scan, so every file
+ * goes through {@code MediaScannerService.scanFile} and has its tags parsed again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MediaScannerBenchmark {
+
+    private MediaScannerService mediaScannerService;
+    private long time;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mediaScannerService = BenchmarkContext.getBean(MediaScannerService.class);
+        time = System.currentTimeMillis();
+    }
+
+    @Setup(Level.Iteration)
+    public void touch(ScannedLibrary library) {
+        // File systems may only keep whole seconds.
+        time += 2000L;
+        SyntheticLibrary.touch(library.getRoot(), time);
+    }
+
+    @Benchmark
+    public int scanLibrary() throws InterruptedException {
+        ScannedLibrary.scan(mediaScannerService);
+        return mediaScannerService.getScanCount();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.service.MediaFileService;
+import org.airsonic.player.service.search.IndexManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the work {@code MediaScannerService.scanFile} does for a single changed song: reading it
+ * through {@link MediaFileService#getMediaFile(File)}, which parses its tags again and writes it to the
+ * database, and adding it to the search index. {@code scanFile} itself is private and needs the context
+ * of a running scan, while {@link MediaScannerBenchmark} measures it as part of a full scan.
+ * <p/>
+ * The modification time of the song is moved forward before each call, so it is seen as changed and
+ * its tags are not served from the meta data cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanFileBenchmark {
+
+    private MediaFileService mediaFileService;
+    private IndexManager indexManager;
+    private final List<File> songs = new ArrayList<>();
+    private int next;
+    private long time;
+
+    @Setup(Level.Trial)
+    public void setUp(ScannedLibrary library) {
+        mediaFileService = BenchmarkContext.getBean(MediaFileService.class);
+        indexManager = BenchmarkContext.getBean(IndexManager.class);
+        listSongs(library.getRoot());
+        time = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public MediaFile scanFile() {
+        File song = songs.get(next);
+        next = (next + 1) % songs.size();
+        if (next == 0) {
+            // File systems may only keep whole seconds.
+            time += 2000L;
+        }
+        song.setLastModified(time);
+        MediaFile mediaFile = mediaFileService.getMediaFile(song);
+        indexManager.index(mediaFile);
+        return mediaFile;
+    }
+
+    private void listSongs(File dir) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                listSongs(child);
+            } else {
+                songs.add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.service.MediaScannerService;
+import org.airsonic.player.service.SettingsService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A synthetic library, registered as the only music folder and scanned once, for benchmarks
+ * that read from the database or the search index.
+ */
+@State(Scope.Benchmark)
+public class ScannedLibrary {
+
+    @Param("200")
+    public int artists;
+
+    @Param("5")
+    public int albumsPerArtist;
+
+    @Param("10")
+    public int songsPerAlbum;
+
+    private File root;
+    private List<MusicFolder> musicFolders;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SettingsService settingsService = BenchmarkContext.getBean(SettingsService.class);
+        root = new File(BenchmarkContext.getHome(), "library");
+        SyntheticLibrary.write(root, artists, albumsPerArtist, songsPerAlbum);
+        settingsService.createMusicFolder(new MusicFolder(root, "Library", true, new Date()));
+        scan(BenchmarkContext.getBean(MediaScannerService.class));
+
+        musicFolders = Collections.unmodifiableList(settingsService.getAllMusicFolders());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkContext.stop();
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    public List<MusicFolder> getMusicFolders() {
+        return musicFolders;
+    }
+
+    /**
+     * Scans the media library, and waits for the scan to complete.
+     */
+    static void scan(MediaScannerService mediaScannerService) throws InterruptedException {
+        mediaScannerService.scanLibrary();
+        while (mediaScannerService.isScanning()) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.RandomSearchCriteria;
+import org.airsonic.player.domain.SearchCriteria;
+import org.airsonic.player.domain.SearchResult;
+import org.airsonic.player.service.SearchService;
+import org.airsonic.player.service.search.IndexType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures queries against the search index built by scanning the synthetic library.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param("Night River")
+    public String query;
+
+    @Param("50")
+    public int count;
+
+    private SearchService searchService;
+    private SearchCriteria criteria;
+    private RandomSearchCriteria randomCriteria;
+
+    @Setup(Level.Trial)
+    public void setUp(ScannedLibrary library) {
+        searchService = BenchmarkContext.getBean(SearchService.class);
+
+        criteria = new SearchCriteria();
+        criteria.setQuery(query);
+        criteria.setOffset(0);
+        criteria.setCount(count);
+
+        randomCriteria = new RandomSearchCriteria(count, null, null, null, library.getMusicFolders());
+    }
+
+    @Benchmark
+    public SearchResult search(ScannedLibrary library) {
+        return searchService.search(criteria, library.getMusicFolders(), IndexType.SONG);
+    }
+
+    @Benchmark
+    public List<MediaFile> getRandomSongs() {
+        return searchService.getRandomSongs(randomCriteria);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.domain.PlayQueue;
+import org.airsonic.player.io.RangeOutputStream;
+import org.airsonic.player.io.ShoutCastOutputStream;
+import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.util.HttpRange;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the copy loop of the stream controller, writing through a byte range and
+ * SHOUTcast metadata decoration, as done for a ranged request from a SHOUTcast client.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamCopyBenchmark {
+
+    private static final int FILE_SIZE = 8 * 1024 * 1024;
+
+    @Param("2048")
+    public int bufferSize;
+
+    @Param({"false", "true"})
+    public boolean shoutCast;
+
+    private byte[] file;
+    private PlayQueue playQueue;
+    private SettingsService settingsService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        file = new byte[FILE_SIZE];
+        for (int i = 0; i < file.length; i++) {
+            file[i] = (byte) i;
+        }
+        playQueue = new PlayQueue();
+        settingsService = new SettingsService() {
+            @Override
+            public String getWelcomeTitle() {
+                return "Airsonic";
+            }
+        };
+    }
+
+    /**
+     * Copies the file through a range covering its second half, like for a client resuming playback.
+     */
+    @Benchmark
+    public long copy() throws IOException {
+        HttpRange range = new HttpRange(FILE_SIZE / 2, null);
+        OutputStream out = NullOutputStream.NULL_OUTPUT_STREAM;
+        if (shoutCast) {
+            out = new ShoutCastOutputStream(out, playQueue, settingsService);
+        }
+        out = RangeOutputStream.wrap(out, range);
+
+        long count = 0;
+        byte[] buf = new byte[bufferSize];
+        try (InputStream in = new ByteArrayInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+                count += n;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Writes a synthetic music library, laid out as "Artist/Album/NN - Title.wav".
+ * <p/>
+ * The files are short, silent and untagged, so the scanner derives artist, album and title
+ * from the file and directory names.
+ */
+public final class SyntheticLibrary {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final int SAMPLES = SAMPLE_RATE / 10;
+
+    private static final String[] WORDS = {
+            "Blue", "Night", "River", "Echo", "Silver", "Morning", "Fire", "Glass", "Winter", "Stone",
+            "Garden", "Ocean", "Shadow", "Golden", "Electric", "Paper", "Summer", "Iron", "Velvet", "Wild"
+    };
+
+    private SyntheticLibrary() {
+    }
+
+    /**
+     * Writes the library.
+     *
+     * @param root            The directory to write to. Created if necessary.
+     * @param artists         Number of artist directories.
+     * @param albumsPerArtist Number of album directories per artist.
+     * @param songsPerAlbum   Number of songs per album.
+     * @return The number of songs written.
+     */
+    public static int write(File root, int artists, int albumsPerArtist, int songsPerAlbum) throws IOException {
+        byte[] song = createWav();
+        int count = 0;
+        for (int i = 0; i < artists; i++) {
+            File artist = new File(root, name(i) + " " + i);
+            for (int j = 0; j < albumsPerArtist; j++) {
+                File album = new File(artist, name(i + j + 1) + " " + name(j) + " " + j);
+                if (!album.mkdirs()) {
+                    throw new IOException("Failed to create " + album);
+                }
+                for (int k = 0; k < songsPerAlbum; k++) {
+                    String title = String.format(Locale.ENGLISH, "%02d - %s %s", k + 1, name(i + k), name(j + k + 2));
+                    try (OutputStream out = new FileOutputStream(new File(album, title + ".wav"))) {
+                        out.write(song);
+                    }
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sets the modification time of all files in the library, so that the next scan parses them again.
+     */
+    public static void touch(File root, long time) {
+        File[] children = root.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                touch(child, time);
+            }
+            child.setLastModified(time);
+        }
+    }
+
+    private static String name(int i) {
+        return WORDS[i % WORDS.length];
+    }
+
+    /**
+     * Creates a tenth of a second of silence, as 8 kHz 16-bit mono PCM.
+     */
+    private static byte[] createWav() {
+        int dataSize = SAMPLES * 2;
+        ByteBuffer wav = ByteBuffer.allocate(44 + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put(ascii("RIFF")).putInt(36 + dataSize).put(ascii("WAVE"));
+        wav.put(ascii("fmt ")).putInt(16)
+           .putShort((short) 1)             // PCM
+           .putShort((short) 1)             // Mono
+           .putInt(SAMPLE_RATE)
+           .putInt(SAMPLE_RATE * 2)         // Byte rate
+           .putShort((short) 2)             // Block align
+           .putShort((short) 16);           // Bits per sample
+        wav.put(ascii("data")).putInt(dataSize);
+        return wav.array();
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -583,11 +583,11 @@ public class PlayQueueService {
 
         MediaFile file = player.getPlayQueue().getFile(index);
         String username = securityService.getCurrentUsername(request);
-        boolean starred = mediaFileDao.getMediaFileStarredDate(file.getId(), username) != null;
+        boolean starred = mediaFileService.getMediaFileStarredDate(file.getId(), username) != null;
         if (starred) {
-            mediaFileDao.unstarMediaFile(file.getId(), username);
+            mediaFileService.unstarMediaFile(file.getId(), username);
         } else {
-            mediaFileDao.starMediaFile(file.getId(), username);
+            mediaFileService.starMediaFile(file.getId(), username);
         }
         return convert(request, player, false);
     }
@@ -184,11 +184,11 @@ public class PlaylistService {
         List<MediaFile> files = playlistService.getFilesInPlaylist(id, true);
         MediaFile file = files.get(index);
 
-        boolean starred = mediaFileDao.getMediaFileStarredDate(file.getId(), username) != null;
+        boolean starred = mediaFileService.getMediaFileStarredDate(file.getId(), username) != null;
         if (starred) {
-            mediaFileDao.unstarMediaFile(file.getId(), username);
+            mediaFileService.unstarMediaFile(file.getId(), username);
         } else {
-            mediaFileDao.starMediaFile(file.getId(), username);
+            mediaFileService.starMediaFile(file.getId(), username);
         }
         return getPlaylist(id);
     }
@@ -19,8 +19,8 @@
  */
 package org.airsonic.player.ajax;
 
-import org.airsonic.player.dao.MediaFileDao;
 import org.airsonic.player.domain.User;
+import org.airsonic.player.service.MediaFileService;
 import org.airsonic.player.service.SecurityService;
 import org.directwebremoting.WebContext;
 import org.directwebremoting.WebContextFactory;
@@ -40,14 +40,14 @@ public class StarService {
     @Autowired
     private SecurityService securityService;
     @Autowired
-    private MediaFileDao mediaFileDao;
+    private MediaFileService mediaFileService;
 
     public void star(int id) {
-        mediaFileDao.starMediaFile(id, getUser());
+        mediaFileService.starMediaFile(id, getUser());
     }
 
     public void unstar(int id) {
-        mediaFileDao.unstarMediaFile(id, getUser());
+        mediaFileService.unstarMediaFile(id, getUser());
     }
 
     private String getUser() {
@@ -60,7 +60,7 @@ public class StarService {
         this.securityService = securityService;
     }
 
-    public void setMediaFileDao(MediaFileDao mediaFileDao) {
-        this.mediaFileDao = mediaFileDao;
+    public void setMediaFileService(MediaFileService mediaFileService) {
+        this.mediaFileService = mediaFileService;
     }
 }
@@ -38,6 +38,8 @@ public class MusicFolderSettingsCommand {
     private String hour;
     private boolean scanning;
     private boolean fastCache;
+    private boolean incrementalScan;
+    private boolean libraryWatch;
     private boolean organizeByFolderStructure;
     private List<MusicFolderInfo> musicFolders;
     private MusicFolderInfo newMusicFolder;
@@ -72,6 +74,22 @@ public class MusicFolderSettingsCommand {
         return fastCache;
     }
 
+    public boolean isIncrementalScan() {
+        return incrementalScan;
+    }
+
+    public void setIncrementalScan(boolean incrementalScan) {
+        this.incrementalScan = incrementalScan;
+    }
+
+    public boolean isLibraryWatch() {
+        return libraryWatch;
+    }
+
+    public void setLibraryWatch(boolean libraryWatch) {
+        this.libraryWatch = libraryWatch;
+    }
+
     public List<MusicFolderInfo> getMusicFolders() {
         return musicFolders;
     }
@@ -19,6 +19,7 @@
  */
 package org.airsonic.player.controller;
 
+import org.airsonic.player.dao.FileChecksumDao;
 import org.airsonic.player.domain.*;
 import org.airsonic.player.io.RangeOutputStream;
 import org.airsonic.player.service.*;
@@ -40,7 +41,12 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -62,6 +68,30 @@ public class DownloadController implements LastModified {
 
     private static final Logger LOG = LoggerFactory.getLogger(DownloadController.class);
 
+    private static final int BUFFER_SIZE = 16 * 1024; // 16 Kbit
+
+    /**
+     * Maximum number of bytes to transfer at a time when sending single files without a bitrate limit.
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 256 * 1024;
+
+    // Sizes of the zip records, see the zip file format specification.
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCAL_EXTRA_SIZE = 20;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    /**
+     * Range of modification times that fit in the DOS date and time fields of a zip entry, with a margin for the
+     * time zone.
+     */
+    private static final long MIN_ZIP_TIME = 347155200000L;  // 1981-01-01
+    private static final long MAX_ZIP_TIME = 4102444800000L;  // 2100-01-01
+
     @Autowired
     private PlayerService playerService;
     @Autowired
@@ -74,6 +104,8 @@ public class DownloadController implements LastModified {
     private SettingsService settingsService;
     @Autowired
     private MediaFileService mediaFileService;
+    @Autowired
+    private FileChecksumDao fileChecksumDao;
 
     public long getLastModified(HttpServletRequest request) {
         try {
@@ -121,24 +153,24 @@ public class DownloadController implements LastModified {
                 }
 
                 if (mediaFile.isFile()) {
-                    downloadFile(response, status, mediaFile.getFile(), range);
+                    downloadFile(request, response, status, mediaFile.getFile(), range);
                 } else {
                     List<MediaFile> children = mediaFileService.getChildrenOf(mediaFile, true, false, true);
                     String zipFileName = FilenameUtils.getBaseName(mediaFile.getPath()) + ".zip";
                     File coverArtFile = indexes == null ? mediaFile.getCoverArtFile() : null;
-                    downloadFiles(response, status, children, indexes, coverArtFile, range, zipFileName);
+                    downloadFiles(request, response, status, children, indexes, coverArtFile, range, zipFileName);
                 }
 
             } else if (playlistId != null) {
                 List<MediaFile> songs = playlistService.getFilesInPlaylist(playlistId);
                 Playlist playlist = playlistService.getPlaylist(playlistId);
-                downloadFiles(response, status, songs, null, null, range, playlist.getName() + ".zip");
+                downloadFiles(request, response, status, songs, null, null, range, playlist.getName() + ".zip");
 
             } else if (playerId != null) {
                 Player player = playerService.getPlayerById(playerId);
                 PlayQueue playQueue = player.getPlayQueue();
                 playQueue.setName("Playlist");
-                downloadFiles(response, status, playQueue.getFiles(), indexes, null, range, "download.zip");
+                downloadFiles(request, response, status, playQueue.getFiles(), indexes, null, range, "download.zip");
             }
 
         } finally {
@@ -157,23 +189,40 @@ public class DownloadController implements LastModified {
     /**
      * Downloads a single file.
      *
+     * @param request  The HTTP request.
      * @param response The HTTP response.
      * @param status   The download status.
      * @param file     The file to download.
      * @param range    The byte range, may be <code>null</code>.
      * @throws IOException If an I/O error occurs.
      */
-    private void downloadFile(HttpServletResponse response, TransferStatus status, File file, HttpRange range) throws IOException {
+    private void downloadFile(HttpServletRequest request, HttpServletResponse response, TransferStatus status, File file, HttpRange range) throws IOException {
         LOG.info("Starting to download '" + FileUtil.getShortPath(file) + "' to " + status.getPlayer());
         status.setFile(file);
 
+        long length = file.length();
+        if (range != null && range.getFirstBytePos() >= length) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + length);
+            return;
+        }
+        long start = range == null ? 0 : range.getFirstBytePos();
+        long end = range == null || !range.isClosed() ? length : Math.min(range.getLastBytePos() + 1, length);
+
         response.setContentType("application/x-download");
         response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodeAsRFC5987(file.getName()));
-        if (range == null) {
-            Util.setContentLength(response, file.length());
+        if (range != null) {
+            response.setHeader("Content-Range", String.format("bytes %d-%d/%d", start, end - 1, length));
         }
+        Util.setContentLength(response, end - start);
 
-        copyFileToStream(file, RangeOutputStream.wrap(response.getOutputStream(), range), status, range);
+        // Without a bitrate limit, the servlet container may send the file itself.
+        if (getBitrateLimit() == 0 && Util.isSendFileSupported(request)) {
+            Util.sendFile(request, file, start, end);
+            status.addBytesTransfered(end - start);
+        } else {
+            transferFile(file, start, end, response.getOutputStream(), status);
+        }
         LOG.info("Downloaded '" + FileUtil.getShortPath(file) + "' to " + status.getPlayer());
     }
 
@@ -198,6 +247,7 @@ public class DownloadController implements LastModified {
      * Downloads the given files.  The files are packed together in an
      * uncompressed zip-file.
      *
+     * @param request      The HTTP request.
      * @param response     The HTTP response.
      * @param status       The download status.
      * @param files        The files to download.
@@ -206,11 +256,11 @@ public class DownloadController implements LastModified {
      * @param range        The byte range, may be <code>null</code>.
      * @param zipFileName  The name of the resulting zip file.   @throws IOException If an I/O error occurs.
      */
-    private void downloadFiles(HttpServletResponse response, TransferStatus status, List<MediaFile> files, int[] indexes, File coverArtFile, HttpRange range, String zipFileName) throws IOException {
+    private void downloadFiles(HttpServletRequest request, HttpServletResponse response, TransferStatus status, List<MediaFile> files, int[] indexes, File coverArtFile, HttpRange range, String zipFileName) throws IOException {
         boolean cover_embedded = false;
 
         if (indexes != null && indexes.length == 1) {
-            downloadFile(response, status, files.get(indexes[0]).getFile(), range);
+            downloadFile(request, response, status, files.get(indexes[0]).getFile(), range);
             return;
         }
 
@@ -218,9 +268,6 @@ public class DownloadController implements LastModified {
         response.setContentType("application/x-download");
         response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodeAsRFC5987(zipFileName));
 
-        ZipOutputStream out = new ZipOutputStream(RangeOutputStream.wrap(response.getOutputStream(), range));
-        out.setMethod(ZipOutputStream.STORED);  // No compression.
-
         Set<MediaFile> filesToDownload = new HashSet<>();
         if (indexes == null) {
             filesToDownload.addAll(files);
@@ -232,8 +279,9 @@ public class DownloadController implements LastModified {
             }
         }
 
+        List<ZipItem> items = new ArrayList<>();
         for (MediaFile mediaFile : filesToDownload) {
-            zip(out, mediaFile.getParentFile(), mediaFile.getFile(), status, range);
+            collectZipItems(mediaFile.getParentFile(), mediaFile.getFile(), items);
             if (coverArtFile != null && coverArtFile.exists()) {
                 if (mediaFile.getFile().getCanonicalPath().equals(coverArtFile.getCanonicalPath())) {
                     cover_embedded = true;
@@ -241,10 +289,28 @@ public class DownloadController implements LastModified {
             }
         }
         if (coverArtFile != null && coverArtFile.exists() && !cover_embedded) {
-            zip(out, coverArtFile.getParentFile(), coverArtFile, status, range);
+            collectZipItems(coverArtFile.getParentFile(), coverArtFile, items);
         }
 
+        // All entries are stored, so the length of the zip file is known before writing it.
+        long length = getZipLength(items);
+        if (range != null && range.getFirstBytePos() >= length) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + length);
+            return;
+        }
+        long start = range == null ? 0 : range.getFirstBytePos();
+        long end = range == null || !range.isClosed() ? length : Math.min(range.getLastBytePos() + 1, length);
+        if (range != null) {
+            response.setHeader("Content-Range", String.format("bytes %d-%d/%d", start, end - 1, length));
+        }
+        Util.setContentLength(response, end - start);
 
+        ZipOutputStream out = new ZipOutputStream(RangeOutputStream.wrap(response.getOutputStream(), range));
+        out.setMethod(ZipOutputStream.STORED);  // No compression.
+        for (ZipItem item : items) {
+            zip(out, item, status, range);
+        }
         out.close();
         LOG.info("Downloaded '" + zipFileName + "' to " + status.getPlayer());
     }
@@ -261,11 +327,10 @@ public class DownloadController implements LastModified {
     private void copyFileToStream(File file, OutputStream out, TransferStatus status, HttpRange range) throws IOException {
         LOG.info("Downloading '" + FileUtil.getShortPath(file) + "' to " + status.getPlayer());
 
-        final int bufferSize = 16 * 1024; // 16 Kbit
-        InputStream in = new BufferedInputStream(new FileInputStream(file), bufferSize);
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
 
         try {
-            byte[] buf = new byte[bufferSize];
+            byte[] buf = new byte[BUFFER_SIZE];
             long bitrateLimit = 0;
             long lastLimitCheck = 0;
 
@@ -288,22 +353,10 @@ public class DownloadController implements LastModified {
 
                 // Calculate bitrate limit every 5 seconds.
                 if (after - lastLimitCheck > 5000) {
-                    bitrateLimit = 1024L * settingsService.getDownloadBitrateLimit() /
-                            Math.max(1, statusService.getAllDownloadStatuses().size());
+                    bitrateLimit = getBitrateLimit();
                     lastLimitCheck = after;
                 }
-
-                // Sleep for a while to throttle bitrate.
-                if (bitrateLimit != 0) {
-                    long sleepTime = 8L * 1000 * bufferSize / bitrateLimit - (after - before);
-                    if (sleepTime > 0L) {
-                        try {
-                            Thread.sleep(sleepTime);
-                        } catch (Exception x) {
-                            LOG.warn("Failed to sleep.", x);
-                        }
-                    }
-                }
+                throttle(BUFFER_SIZE, after - before, bitrateLimit);
             }
         } finally {
             out.flush();
@@ -312,17 +365,79 @@ public class DownloadController implements LastModified {
     }
 
     /**
-     * Writes a file or a directory structure to a zip output stream. File entries in the zip file are relative
-     * to the given root.
+     * Transfers part of a file to the given output stream using {@link FileChannel#transferTo}, so that it is not
+     * read into buffers on the heap.
      *
-     * @param out    The zip output stream.
-     * @param root   The root of the directory structure.  Used to create path information in the zip file.
-     * @param file   The file or directory to zip.
+     * @param file   The file to transfer.
+     * @param start  The first byte to transfer (inclusive).
+     * @param end    The last byte to transfer (exclusive).
+     * @param out    The output stream to write to.
      * @param status The download status.
-     * @param range  The byte range, may be <code>null</code>.
      * @throws IOException If an I/O error occurs.
      */
-    private void zip(ZipOutputStream out, File root, File file, TransferStatus status, HttpRange range) throws IOException {
+    private void transferFile(File file, long start, long end, OutputStream out, TransferStatus status) throws IOException {
+        WritableByteChannel channel = Channels.newChannel(out);
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long bitrateLimit = getBitrateLimit();
+            long lastLimitCheck = System.currentTimeMillis();
+            long position = start;
+
+            while (position < end) {
+                long before = System.currentTimeMillis();
+                long chunkSize = bitrateLimit == 0 ? TRANSFER_CHUNK_SIZE : BUFFER_SIZE;
+                long n = in.transferTo(position, Math.min(chunkSize, end - position), channel);
+                if (n <= 0) {
+                    // The file was truncated in the meantime.
+                    break;
+                }
+                position += n;
+                status.addBytesTransfered(n);
+                long after = System.currentTimeMillis();
+
+                // Calculate bitrate limit every 5 seconds.
+                if (after - lastLimitCheck > 5000) {
+                    bitrateLimit = getBitrateLimit();
+                    lastLimitCheck = after;
+                }
+                throttle(n, after - before, bitrateLimit);
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Returns the download bitrate limit per download in bits per second, or zero if unlimited.
+     */
+    private long getBitrateLimit() {
+        return 1024L * settingsService.getDownloadBitrateLimit() / Math.max(1, statusService.getAllDownloadStatuses().size());
+    }
+
+    /**
+     * Sleeps for a while after transferring the given number of bytes, to keep within the given bitrate limit.
+     */
+    private void throttle(long bytes, long elapsedMillis, long bitrateLimit) {
+        if (bitrateLimit != 0) {
+            long sleepTime = 8L * 1000 * bytes / bitrateLimit - elapsedMillis;
+            if (sleepTime > 0L) {
+                try {
+                    Thread.sleep(sleepTime);
+                } catch (Exception x) {
+                    LOG.warn("Failed to sleep.", x);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the zip entries for a file or a directory structure. Entry names are relative to the given root.
+     *
+     * @param root  The root of the directory structure.  Used to create path information in the zip file.
+     * @param file  The file or directory to zip.
+     * @param items The list to add the entries to.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void collectZipItems(File root, File file, List<ZipItem> items) throws IOException {
 
         // Exclude all hidden files starting with a "."
         if (file.getName().startsWith(".")) {
@@ -332,31 +447,84 @@ public class DownloadController implements LastModified {
         String zipName = file.getCanonicalPath().substring(root.getCanonicalPath().length() + 1);
 
         if (file.isFile()) {
-            status.setFile(file);
+            items.add(new ZipItem(file, zipName, file.length(), file.lastModified()));
+        } else {
+            items.add(new ZipItem(file, zipName + '/', 0, file.lastModified()));
+            File[] children = FileUtil.listFiles(file);
+            for (File child : children) {
+                collectZipItems(root, child, items);
+            }
+        }
+    }
 
-            ZipEntry zipEntry = new ZipEntry(zipName);
-            zipEntry.setSize(file.length());
-            zipEntry.setCompressedSize(file.length());
-            zipEntry.setCrc(computeCrc(file));
+    /**
+     * Returns the length of the zip file written by {@link ZipOutputStream} for the given stored entries, including
+     * the zip64 records that it adds for large sizes and offsets.
+     *
+     * @param items The zip entries.
+     * @return The length in bytes.
+     */
+    static long getZipLength(List<ZipItem> items) {
+        long offset = 0;
+        long centralDirectorySize = 0;
+        for (ZipItem item : items) {
+            int nameLength = item.name.getBytes(StandardCharsets.UTF_8).length;
+            boolean zip64Size = item.size >= ZIP64_MAGIC;
+            int zip64CentralFields = (zip64Size ? 2 : 0) + (offset >= ZIP64_MAGIC ? 1 : 0);
+
+            offset += LOCAL_HEADER_SIZE + nameLength + (zip64Size ? ZIP64_LOCAL_EXTRA_SIZE : 0) + item.size;
+            centralDirectorySize += CENTRAL_HEADER_SIZE + nameLength + (zip64CentralFields == 0 ? 0 : 4 + 8 * zip64CentralFields);
+        }
 
-            out.putNextEntry(zipEntry);
-            copyFileToStream(file, out, status, range);
-            out.closeEntry();
+        long length = offset + centralDirectorySize + END_SIZE;
+        if (offset >= ZIP64_MAGIC || centralDirectorySize >= ZIP64_MAGIC || items.size() >= ZIP64_MAGIC_COUNT) {
+            length += ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE;
+        }
+        return length;
+    }
 
-        } else {
-            ZipEntry zipEntry = new ZipEntry(zipName + '/');
-            zipEntry.setSize(0);
-            zipEntry.setCompressedSize(0);
-            zipEntry.setCrc(0);
+    /**
+     * Writes a zip entry to a zip output stream.
+     *
+     * @param out    The zip output stream.
+     * @param item   The zip entry.
+     * @param status The download status.
+     * @param range  The byte range, may be <code>null</code>.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void zip(ZipOutputStream out, ZipItem item, TransferStatus status, HttpRange range) throws IOException {
+        File file = item.file;
+        ZipEntry zipEntry = new ZipEntry(item.name);
+        zipEntry.setSize(item.size);
+        zipEntry.setCompressedSize(item.size);
+
+        // Use the modification time of the file rather than the current time, so that the zip file has the same
+        // content each time. Times outside the DOS date range would add an extra field.
+        zipEntry.setTime(Math.max(MIN_ZIP_TIME, Math.min(MAX_ZIP_TIME, item.changed)));
 
+        if (item.name.endsWith("/")) {
+            zipEntry.setCrc(0);
             out.putNextEntry(zipEntry);
             out.closeEntry();
+            return;
+        }
 
-            File[] children = FileUtil.listFiles(file);
-            for (File child : children) {
-                zip(out, root, child, status, range);
+        status.setFile(file);
+        Long crc = fileChecksumDao.getCrc(file.getPath(), item.size, item.changed);
+        if (crc == null) {
+            // Every entry is stored, whether its checksum is known or not, so that the zip file has the same
+            // layout each time. Resumed downloads depend on that. A stored entry needs its checksum before the
+            // data, so the file is read twice the first time. The checksum is remembered for next time.
+            crc = computeCrc(file);
+            if (file.length() == item.size && file.lastModified() == item.changed) {
+                fileChecksumDao.setCrc(file.getPath(), item.size, item.changed, crc);
             }
         }
+        zipEntry.setCrc(crc);
+
+        out.putNextEntry(zipEntry);
+        copyFileToStream(file, out, status, range);
+        out.closeEntry();
     }
 
     /**
@@ -383,4 +551,20 @@ public class DownloadController implements LastModified {
         return crc.getValue();
     }
 
+    /**
+     * A file or directory to add to a zip file, along with its size and modification time when the download started.
+     */
+    static class ZipItem {
+        private final File file;
+        private final String name;
+        private final long size;
+        private final long changed;
+
+        ZipItem(File file, String name, long size, long changed) {
+            this.file = file;
+            this.name = name;
+            this.size = size;
+            this.changed = changed;
+        }
+    }
 }
@@ -138,9 +138,11 @@ public class HomeController {
 
     private List<Album> getHighestRated(int offset, int count, List<MusicFolder> musicFolders) {
         List<Album> result = new ArrayList<>();
-        for (MediaFile mediaFile : ratingService.getHighestRatedAlbums(offset, count, musicFolders)) {
+        List<MediaFile> mediaFiles = ratingService.getHighestRatedAlbums(offset, count, musicFolders);
+        Map<String, Double> averageRatings = ratingService.getAverageRatings(mediaFiles);
+        for (MediaFile mediaFile : mediaFiles) {
             Album album = createAlbum(mediaFile);
-            album.setRating((int) Math.round(ratingService.getAverageRating(mediaFile) * 10.0D));
+            album.setRating((int) Math.round(averageRatings.getOrDefault(mediaFile.getPath(), 0.0D) * 10.0D));
             result.add(album);
         }
         return result;
@@ -19,11 +19,13 @@
  */
 package org.airsonic.player.controller;
 
+import net.sf.ehcache.Statistics;
 import org.airsonic.player.dao.DaoHelper;
 import org.airsonic.player.dao.MediaFileDao;
 import org.airsonic.player.dao.MusicFolderDao;
 import org.airsonic.player.domain.MediaLibraryStatistics;
 import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.service.MediaFileService;
 import org.airsonic.player.service.SecurityService;
 import org.airsonic.player.service.SettingsService;
 import org.airsonic.player.service.TranscodingService;
@@ -198,6 +200,8 @@ public class InternalHelpController {
     @Autowired
     private MediaFileDao mediaFileDao;
     @Autowired
+    private MediaFileService mediaFileService;
+    @Autowired
     private TranscodingService transcodingService;
     @Autowired
     private Environment environment;
@@ -256,6 +260,12 @@ public class InternalHelpController {
             map.put("statTotalDurationSeconds", stats.getTotalDurationInSeconds());
             map.put("statTotalLengthBytes", FileUtils.byteCountToDisplaySize(stats.getTotalLengthInBytes()));
         }
+
+        // Media file cache statistics
+        Statistics cacheStats = mediaFileService.getMemoryCacheStatistics();
+        map.put("statMediaFileCacheSize", cacheStats.getObjectCount());
+        map.put("statMediaFileCacheHits", cacheStats.getCacheHits());
+        map.put("statMediaFileCacheMisses", cacheStats.getCacheMisses());
     }
 
     private void gatherIndexInfo(Map<String, Object> map) {
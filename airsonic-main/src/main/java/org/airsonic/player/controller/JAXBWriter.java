@@ -19,6 +19,7 @@
  */
 package org.airsonic.player.controller;
 
+import org.airsonic.player.service.SettingsService;
 import org.airsonic.player.util.FileUtil;
 import org.airsonic.player.util.StringUtil;
 import org.eclipse.persistence.jaxb.JAXBContext;
@@ -41,10 +42,14 @@ import javax.xml.datatype.XMLGregorianCalendar;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPOutputStream;
 
 import static org.airsonic.player.util.XMLUtil.createSAXBuilder;
 import static org.springframework.web.bind.ServletRequestUtils.getStringParameter;
@@ -57,11 +62,26 @@ public class JAXBWriter {
 
     private static final Logger LOG = LoggerFactory.getLogger(JAXBWriter.class);
 
+    private static final int BUFFER_SIZE = 8192;
+
     private final javax.xml.bind.JAXBContext jaxbContext;
     private final DatatypeFactory datatypeFactory;
     private final String restProtocolVersion;
+    private final SettingsService settingsService;
+
+    // Marshallers are not thread safe, so idle ones are pooled per format.
+    private final Queue<Marshaller> xmlMarshallers = new ConcurrentLinkedQueue<>();
+    private final Queue<Marshaller> jsonMarshallers = new ConcurrentLinkedQueue<>();
 
     public JAXBWriter() {
+        this(null);
+    }
+
+    /**
+     * @param settingsService Provides the gzip and formatting options of responses, or null to use neither.
+     */
+    public JAXBWriter(SettingsService settingsService) {
+        this.settingsService = settingsService;
         try {
             jaxbContext = JAXBContext.newInstance(Response.class);
             datatypeFactory = DatatypeFactory.newInstance();
@@ -76,7 +96,6 @@ public class JAXBWriter {
         try {
             marshaller = jaxbContext.createMarshaller();
             marshaller.setProperty(Marshaller.JAXB_ENCODING, StringUtil.ENCODING_UTF8);
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
             return marshaller;
         } catch (JAXBException e) {
             throw new RuntimeException(e);
@@ -88,7 +107,6 @@ public class JAXBWriter {
             Marshaller marshaller;
             marshaller = jaxbContext.createMarshaller();
             marshaller.setProperty(Marshaller.JAXB_ENCODING, StringUtil.ENCODING_UTF8);
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
             marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, "application/json");
             marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, true);
             return marshaller;
@@ -126,37 +144,59 @@ public class JAXBWriter {
         String jsonpCallback = request.getParameter("callback");
         boolean json = "json".equals(format);
         boolean jsonp = "jsonp".equals(format) && jsonpCallback != null;
-        Marshaller marshaller;
+        Queue<Marshaller> pool = json || jsonp ? jsonMarshallers : xmlMarshallers;
+        Marshaller marshaller = pool.poll();
 
         if (json) {
-            marshaller = createJsonMarshaller();
             httpResponse.setContentType("application/json");
         } else if (jsonp) {
-            marshaller = createJsonMarshaller();
             httpResponse.setContentType("text/javascript");
         } else {
-            marshaller = createXmlMarshaller();
             httpResponse.setContentType("text/xml");
         }
+        if (marshaller == null) {
+            marshaller = json || jsonp ? createJsonMarshaller() : createXmlMarshaller();
+        }
 
         httpResponse.setCharacterEncoding(StringUtil.ENCODING_UTF8);
 
+        // Marshal straight to the response, rather than buffering the whole response in memory first.
         try {
-            StringWriter writer = new StringWriter();
+            OutputStream out = httpResponse.getOutputStream();
+            if (settingsService != null && settingsService.isRestGzipEnabled() && isGzipAccepted(request)) {
+                httpResponse.setHeader("Content-Encoding", "gzip");
+                httpResponse.addHeader("Vary", "Accept-Encoding");
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            }
             if (jsonp) {
-                writer.append(jsonpCallback).append('(');
+                out.write((jsonpCallback + "(").getBytes(StandardCharsets.UTF_8));
             }
-            marshaller.marshal(new ObjectFactory().createSubsonicResponse(jaxbResponse), writer);
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT,
+                                   settingsService != null && settingsService.isRestFormattedOutput());
+            marshaller.marshal(new ObjectFactory().createSubsonicResponse(jaxbResponse), out);
             if (jsonp) {
-                writer.append(");");
+                out.write(");".getBytes(StandardCharsets.UTF_8));
+            }
+            if (out instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) out).finish();
             }
-            httpResponse.getWriter().append(writer.getBuffer());
+            pool.offer(marshaller);
         } catch (JAXBException | IOException x) {
             LOG.error("Failed to marshal JAXB", x);
+            // Nothing may have reached the client yet, in which case RESTFilter can still send an error response
+            // in place of the partial one.
+            if (!httpResponse.isCommitted()) {
+                httpResponse.reset();
+            }
             throw new RuntimeException(x);
         }
     }
 
+    private static boolean isGzipAccepted(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
     public void writeErrorResponse(HttpServletRequest request, HttpServletResponse response,
                                    SubsonicRESTController.ErrorCode code, String message) {
         Response res = createResponse(false);
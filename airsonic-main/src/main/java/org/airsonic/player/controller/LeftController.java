@@ -73,13 +73,18 @@ public class LeftController {
      */
     long getLastModified(HttpServletRequest request) throws Exception {
         saveSelectedMusicFolder(request);
+        return getLastModified(securityService.getCurrentUsername(request));
+    }
 
+    /**
+     * Returns when the content of the left frame last changed for the given user, or -1 while scanning.
+     */
+    private long getLastModified(String username) {
         if (mediaScannerService.isScanning()) {
             return -1L;
         }
 
         long lastModified = LAST_COMPATIBILITY_TIME.getTimeInMillis();
-        String username = securityService.getCurrentUsername(request);
 
         // When was settings last changed?
         lastModified = Math.max(lastModified, settingsService.getSettingsChanged());
@@ -132,7 +137,9 @@ public class LeftController {
         MusicFolder selectedMusicFolder = settingsService.getSelectedMusicFolder(username);
         List<MusicFolder> musicFoldersToUse = selectedMusicFolder == null ? allMusicFolders : Collections.singletonList(selectedMusicFolder);
         UserSettings userSettings = settingsService.getUserSettings(username);
-        MusicFolderContent musicFolderContent = musicIndexService.getMusicFolderContent(musicFoldersToUse, refresh);
+        MusicFolderContent musicFolderContent = refresh
+                ? musicIndexService.getMusicFolderContent(musicFoldersToUse, true)
+                : musicIndexService.getMusicFolderContent(musicFoldersToUse, username, getLastModified(username));
 
         map.put("player", playerService.getPlayer(request, response));
         map.put("scanning", mediaScannerService.isScanning());
@@ -22,9 +22,12 @@ package org.airsonic.player.controller;
 import org.airsonic.player.command.MusicFolderSettingsCommand;
 import org.airsonic.player.dao.AlbumDao;
 import org.airsonic.player.dao.ArtistDao;
+import org.airsonic.player.dao.FileChecksumDao;
 import org.airsonic.player.dao.MediaFileDao;
 import org.airsonic.player.domain.MediaLibraryStatistics;
 import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.service.LibraryWatcherService;
+import org.airsonic.player.service.MediaFileService;
 import org.airsonic.player.service.MediaScannerService;
 import org.airsonic.player.service.SettingsService;
 import org.airsonic.player.service.search.IndexManager;
@@ -60,12 +63,18 @@ public class MusicFolderSettingsController {
     @Autowired
     private MediaScannerService mediaScannerService;
     @Autowired
+    private MediaFileService mediaFileService;
+    @Autowired
+    private LibraryWatcherService libraryWatcherService;
+    @Autowired
     private ArtistDao artistDao;
     @Autowired
     private AlbumDao albumDao;
     @Autowired
     private MediaFileDao mediaFileDao;
     @Autowired
+    private FileChecksumDao fileChecksumDao;
+    @Autowired
     private IndexManager indexManager;
 
     @GetMapping
@@ -90,6 +99,8 @@ public class MusicFolderSettingsController {
         command.setInterval(String.valueOf(settingsService.getIndexCreationInterval()));
         command.setHour(String.valueOf(settingsService.getIndexCreationHour()));
         command.setFastCache(settingsService.isFastCacheEnabled());
+        command.setIncrementalScan(settingsService.isIncrementalScanEnabled());
+        command.setLibraryWatch(settingsService.isLibraryWatchEnabled());
         command.setOrganizeByFolderStructure(settingsService.isOrganizeByFolderStructure());
         command.setScanning(mediaScannerService.isScanning());
         command.setMusicFolders(wrap(settingsService.getAllMusicFolders(true, true)));
@@ -130,6 +141,9 @@ public class MusicFolderSettingsController {
             albumDao.expunge();
             LOG.debug("Deleting non-present media files...");
             mediaFileDao.expunge();
+            mediaFileService.clearMemoryCache();
+            LOG.debug("Deleting checksums of removed files...");
+            fileChecksumDao.expunge();
             LOG.debug("Database cleanup complete.");
             mediaFileDao.checkpoint();
 
@@ -164,6 +178,8 @@ public class MusicFolderSettingsController {
         settingsService.setIndexCreationInterval(Integer.parseInt(command.getInterval()));
         settingsService.setIndexCreationHour(Integer.parseInt(command.getHour()));
         settingsService.setFastCacheEnabled(command.isFastCache());
+        settingsService.setIncrementalScanEnabled(command.isIncrementalScan());
+        settingsService.setLibraryWatchEnabled(command.isLibraryWatch());
         settingsService.setOrganizeByFolderStructure(command.isOrganizeByFolderStructure());
         settingsService.setExcludePatternString(command.getExcludePatternString());
         settingsService.setIgnoreSymLinks(command.getIgnoreSymLinks());
@@ -174,6 +190,7 @@ public class MusicFolderSettingsController {
         redirectAttributes.addFlashAttribute("settings_reload", true);
 
         mediaScannerService.schedule();
+        libraryWatcherService.schedule();
         return "redirect:musicFolderSettings.view";
     }
 
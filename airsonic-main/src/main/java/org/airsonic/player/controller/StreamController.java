@@ -45,8 +45,13 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.awt.*;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -62,6 +67,11 @@ public class StreamController {
 
     private static final Logger LOG = LoggerFactory.getLogger(StreamController.class);
 
+    /**
+     * Maximum number of bytes to transfer at a time when sending files which are streamed as is.
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 256 * 1024;
+
     @Autowired
     private StatusService statusService;
     @Autowired
@@ -129,6 +139,7 @@ public class StreamController {
             boolean isSingleFile = file != null;
             HttpRange range = null;
             Long fileLengthExpected = null;
+            boolean isRangeAllowed = false;
 
             if (isSingleFile) {
 
@@ -188,6 +199,7 @@ public class StreamController {
 
                     response.setIntHeader("ETag", file.getId());
                     Util.setContentLength(response, contentLength);
+                    isRangeAllowed = !isHls;
                 }
 
                 // Set content type of response
@@ -225,44 +237,50 @@ public class StreamController {
 
             status = statusService.createStreamStatus(player);
 
-            try (
-                PlayQueueInputStream in = new PlayQueueInputStream(player, status, maxBitRate, preferredTargetFormat, videoTranscodingSettings,
-                        transcodingService, audioScrobblerService, mediaFileService, searchService);
-                OutputStream out = makeOutputStream(request, response, range, isSingleFile, player, settingsService)
-            ) {
-                final int BUFFER_SIZE = 2048;
-                byte[] buf = new byte[BUFFER_SIZE];
-                long bytesWritten = 0;
-
-                while (!status.terminated()) {
-                    if (player.getPlayQueue().getStatus() == PlayQueue.Status.STOPPED) {
-                        if (isPodcast || isSingleFile) {
-                            break;
-                        } else {
-                            sendDummyDelayed(buf, out);
-                        }
-                    } else {
+            try (PlayQueueInputStream in = new PlayQueueInputStream(player, status, maxBitRate, preferredTargetFormat,
+                    videoTranscodingSettings, transcodingService, audioScrobblerService, mediaFileService, searchService)) {
 
-                        int n = in.read(buf);
-                        if (n == -1) {
-                            if (isPodcast || isSingleFile) {
-                                // Pad the output if needed to avoid content length errors on transcodes
-                                if (fileLengthExpected != null && bytesWritten < fileLengthExpected) {
-                                    sendDummy(buf, out, fileLengthExpected - bytesWritten);
+                // Files streamed as is are sent directly, rather than copied through the play queue input stream.
+                File sourceFile = isRangeAllowed ? in.getSourceFile() : null;
+                if (sourceFile != null && sourceFile.length() == fileLengthExpected) {
+                    sendFile(request, response, sourceFile, range, status);
+                } else {
+                    try (OutputStream out = makeOutputStream(request, response, range, isSingleFile, player, settingsService)) {
+                        final int BUFFER_SIZE = 2048;
+                        byte[] buf = new byte[BUFFER_SIZE];
+                        long bytesWritten = 0;
+
+                        while (!status.terminated()) {
+                            if (player.getPlayQueue().getStatus() == PlayQueue.Status.STOPPED) {
+                                if (isPodcast || isSingleFile) {
+                                    break;
+                                } else {
+                                    sendDummyDelayed(buf, out);
                                 }
-                                break;
                             } else {
-                                sendDummyDelayed(buf, out);
-                            }
-                        } else {
-                            if (fileLengthExpected != null && bytesWritten <= fileLengthExpected
-                                && bytesWritten + n > fileLengthExpected) {
-                                LOG.warn("Stream output exceeded expected length of {}. It is likely that "
-                                    + "the transcoder is not adhering to the bitrate limit or the media "
-                                    + "source is corrupted or has grown larger", fileLengthExpected);
+
+                                int n = in.read(buf);
+                                if (n == -1) {
+                                    if (isPodcast || isSingleFile) {
+                                        // Pad the output if needed to avoid content length errors on transcodes
+                                        if (fileLengthExpected != null && bytesWritten < fileLengthExpected) {
+                                            sendDummy(buf, out, fileLengthExpected - bytesWritten);
+                                        }
+                                        break;
+                                    } else {
+                                        sendDummyDelayed(buf, out);
+                                    }
+                                } else {
+                                    if (fileLengthExpected != null && bytesWritten <= fileLengthExpected
+                                        && bytesWritten + n > fileLengthExpected) {
+                                        LOG.warn("Stream output exceeded expected length of {}. It is likely that "
+                                            + "the transcoder is not adhering to the bitrate limit or the media "
+                                            + "source is corrupted or has grown larger", fileLengthExpected);
+                                    }
+                                    out.write(buf, 0, n);
+                                    bytesWritten += n;
+                                }
                             }
-                            out.write(buf, 0, n);
-                            bytesWritten += n;
                         }
                     }
                 }
@@ -292,6 +310,38 @@ public class StreamController {
         }
     }
 
+    /**
+     * Sends the requested range of a file which is streamed as is, either an original media file or a cached
+     * transcoding of one. If possible, the servlet container sends the file itself. Otherwise it is transferred
+     * using {@link FileChannel#transferTo}, so that it is not read into buffers on the heap.
+     */
+    private void sendFile(HttpServletRequest request, HttpServletResponse response, File file, HttpRange range,
+                          TransferStatus status) throws IOException {
+        long length = file.length();
+        long start = range == null ? 0 : Math.min(range.getFirstBytePos(), length);
+        long end = range == null || !range.isClosed() ? length : Math.min(range.getLastBytePos() + 1, length);
+
+        if (Util.isSendFileSupported(request)) {
+            Util.sendFile(request, file, start, end);
+            status.addBytesTransfered(end - start);
+            return;
+        }
+
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             WritableByteChannel out = Channels.newChannel(response.getOutputStream())) {
+            long position = start;
+            while (position < end && !status.terminated()) {
+                long n = in.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, end - position), out);
+                if (n <= 0) {
+                    // The file was truncated in the meantime.
+                    break;
+                }
+                position += n;
+                status.addBytesTransfered(n);
+            }
+        }
+    }
+
     /**
      * Construct an appropriate output stream based on the request.
      * <p>
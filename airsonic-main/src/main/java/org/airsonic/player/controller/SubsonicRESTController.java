@@ -36,6 +36,7 @@ import org.airsonic.player.service.search.IndexType;
 import org.airsonic.player.util.StringUtil;
 import org.airsonic.player.util.Util;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +51,7 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.subsonic.restapi.*;
 import org.subsonic.restapi.PodcastStatus;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
@@ -138,11 +140,16 @@ public class SubsonicRESTController {
     @Autowired
     private LocaleResolver localeResolver;
 
-    private final JAXBWriter jaxbWriter = new JAXBWriter();
+    private JAXBWriter jaxbWriter;
 
     private static final String NOT_YET_IMPLEMENTED = "Not yet implemented";
     private static final String NO_LONGER_SUPPORTED = "No longer supported";
 
+    @PostConstruct
+    public void init() {
+        jaxbWriter = new JAXBWriter(settingsService);
+    }
+
     @ExceptionHandler(MissingServletRequestParameterException.class)
     public void handleMissingRequestParam(HttpServletRequest request,
                                           HttpServletResponse response,
@@ -229,7 +236,26 @@ public class SubsonicRESTController {
             indexes.getShortcut().add(createJaxbArtist(shortcut, username));
         }
 
-        MusicFolderContent musicFolderContent = musicIndexService.getMusicFolderContent(musicFolders, false);
+        MusicFolderContent musicFolderContent = musicIndexService.getMusicFolderContent(musicFolders, username, lastModified);
+
+        // The stars and ratings are per user, so they are looked up for all artists at once rather than cached.
+        List<MediaFile> artistDirectories = new ArrayList<MediaFile>();
+        List<MediaFile> albumDirectories = new ArrayList<MediaFile>();
+        for (List<MusicIndex.SortableArtistWithMediaFiles> artists : musicFolderContent.getIndexedArtists().values()) {
+            for (MusicIndex.SortableArtistWithMediaFiles artist : artists) {
+                for (MediaFile mediaFile : artist.getMediaFiles()) {
+                    if (mediaFile.isDirectory()) {
+                        artistDirectories.add(mediaFile);
+                        if (mediaFile.isAlbum()) {
+                            albumDirectories.add(mediaFile);
+                        }
+                    }
+                }
+            }
+        }
+        Map<Integer, Date> starredDates = mediaFileService.getMediaFileStarredDates(artistDirectories, username);
+        Map<String, Double> averageRatings = ratingService.getAverageRatings(albumDirectories);
+        Map<String, Integer> userRatings = ratingService.getRatingsForUser(username, albumDirectories);
 
         for (Map.Entry<MusicIndex, List<MusicIndex.SortableArtistWithMediaFiles>> entry : musicFolderContent.getIndexedArtists().entrySet()) {
             Index index = new Index();
@@ -239,16 +265,15 @@ public class SubsonicRESTController {
             for (MusicIndex.SortableArtistWithMediaFiles artist : entry.getValue()) {
                 for (MediaFile mediaFile : artist.getMediaFiles()) {
                     if (mediaFile.isDirectory()) {
-                        Date starredDate = mediaFileDao.getMediaFileStarredDate(mediaFile.getId(), username);
                         org.subsonic.restapi.Artist a = new org.subsonic.restapi.Artist();
                         index.getArtist().add(a);
                         a.setId(String.valueOf(mediaFile.getId()));
                         a.setName(artist.getName());
-                        a.setStarred(jaxbWriter.convertDate(starredDate));
+                        a.setStarred(jaxbWriter.convertDate(starredDates.get(mediaFile.getId())));
 
                         if (mediaFile.isAlbum()) {
-                            a.setAverageRating(ratingService.getAverageRating(mediaFile));
-                            a.setUserRating(ratingService.getRatingForUser(username, mediaFile));
+                            a.setAverageRating(averageRatings.get(mediaFile.getPath()));
+                            a.setUserRating(userRatings.get(mediaFile.getPath()));
                         }
                     }
                 }
@@ -258,9 +283,7 @@ public class SubsonicRESTController {
         // Add children
         Player player = playerService.getPlayer(request, response);
 
-        for (MediaFile singleSong : musicFolderContent.getSingleSongs()) {
-            indexes.getChild().add(createJaxbChild(player, singleSong, username));
-        }
+        indexes.getChild().addAll(createJaxbChildren(player, musicFolderContent.getSingleSongs(), username));
 
         res.setIndexes(indexes);
         jaxbWriter.writeResponse(request, response, res);
@@ -298,9 +321,7 @@ public class SubsonicRESTController {
         Integer musicFolderId = getIntParameter(request, "musicFolderId");
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username, musicFolderId);
 
-        for (MediaFile mediaFile : mediaFileDao.getSongsByGenre(genre, offset, count, musicFolders)) {
-            songs.getSong().add(createJaxbChild(player, mediaFile, username));
-        }
+        songs.getSong().addAll(createJaxbChildren(player, mediaFileDao.getSongsByGenre(genre, offset, count, musicFolders), username));
         Response res = createResponse();
         res.setSongsByGenre(songs);
         jaxbWriter.writeResponse(request, response, res);
@@ -349,9 +370,7 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username);
         List<MediaFile> similarSongs = lastFmService.getSimilarSongs(mediaFile, count, musicFolders);
         Player player = playerService.getPlayer(request, response);
-        for (MediaFile similarSong : similarSongs) {
-            result.getSong().add(createJaxbChild(player, similarSong, username));
-        }
+        result.getSong().addAll(createJaxbChildren(player, similarSongs, username));
 
         Response res = createResponse();
         res.setSimilarSongs(result);
@@ -377,9 +396,7 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username);
         List<MediaFile> similarSongs = lastFmService.getSimilarSongs(artist, count, musicFolders);
         Player player = playerService.getPlayer(request, response);
-        for (MediaFile similarSong : similarSongs) {
-            result.getSong().add(createJaxbChild(player, similarSong, username));
-        }
+        result.getSong().addAll(createJaxbChildren(player, similarSongs, username));
 
         Response res = createResponse();
         res.setSimilarSongs2(result);
@@ -399,9 +416,7 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username);
         List<MediaFile> topSongs = lastFmService.getTopSongs(artist, count, musicFolders);
         Player player = playerService.getPlayer(request, response);
-        for (MediaFile topSong : topSongs) {
-            result.getSong().add(createJaxbChild(player, topSong, username));
-        }
+        result.getSong().addAll(createJaxbChildren(player, topSongs, username));
 
         Response res = createResponse();
         res.setTopSongs(result);
@@ -484,7 +499,7 @@ public class SubsonicRESTController {
     private <T extends ArtistID3> T createJaxbArtist(T jaxbArtist, org.airsonic.player.domain.Artist artist, String username) {
         jaxbArtist.setId(String.valueOf(artist.getId()));
         jaxbArtist.setName(artist.getName());
-        jaxbArtist.setStarred(jaxbWriter.convertDate(mediaFileDao.getMediaFileStarredDate(artist.getId(), username)));
+        jaxbArtist.setStarred(jaxbWriter.convertDate(mediaFileService.getMediaFileStarredDate(artist.getId(), username)));
         jaxbArtist.setAlbumCount(artist.getAlbumCount());
         if (artist.getCoverArtPath() != null) {
             jaxbArtist.setCoverArt(CoverArtController.ARTIST_COVERART_PREFIX + artist.getId());
@@ -496,7 +511,7 @@ public class SubsonicRESTController {
         org.subsonic.restapi.Artist result = new org.subsonic.restapi.Artist();
         result.setId(String.valueOf(artist.getId()));
         result.setName(artist.getArtist());
-        Date starred = mediaFileDao.getMediaFileStarredDate(artist.getId(), username);
+        Date starred = mediaFileService.getMediaFileStarredDate(artist.getId(), username);
         result.setStarred(jaxbWriter.convertDate(starred));
         return result;
     }
@@ -578,9 +593,7 @@ public class SubsonicRESTController {
         }
 
         AlbumWithSongsID3 result = createJaxbAlbum(new AlbumWithSongsID3(), album, username);
-        for (MediaFile mediaFile : mediaFileDao.getSongsForAlbum(album.getArtist(), album.getName())) {
-            result.getSong().add(createJaxbChild(player, mediaFile, username));
-        }
+        result.getSong().addAll(createJaxbChildren(player, mediaFileDao.getSongsForAlbum(album.getArtist(), album.getName()), username));
 
         Response res = createResponse();
         res.setAlbum(result);
@@ -637,7 +650,7 @@ public class SubsonicRESTController {
             // Ignored.
         }
         directory.setName(dir.getName());
-        directory.setStarred(jaxbWriter.convertDate(mediaFileDao.getMediaFileStarredDate(id, username)));
+        directory.setStarred(jaxbWriter.convertDate(mediaFileService.getMediaFileStarredDate(id, username)));
         directory.setPlayCount((long) dir.getPlayCount());
 
         if (dir.isAlbum()) {
@@ -645,9 +658,7 @@ public class SubsonicRESTController {
             directory.setUserRating(ratingService.getRatingForUser(username, dir));
         }
 
-        for (MediaFile child : mediaFileService.getChildrenOf(dir, true, true, true)) {
-            directory.getChild().add(createJaxbChild(player, child, username));
-        }
+        directory.getChild().addAll(createJaxbChildren(player, mediaFileService.getChildrenOf(dir, true, true, true), username));
 
         Response res = createResponse();
         res.setDirectory(directory);
@@ -690,9 +701,7 @@ public class SubsonicRESTController {
         searchResult.setOffset(result.getOffset());
         searchResult.setTotalHits(result.getTotalHits());
 
-        for (MediaFile mediaFile : result.getMediaFiles()) {
-            searchResult.getMatch().add(createJaxbChild(player, mediaFile, username));
-        }
+        searchResult.getMatch().addAll(createJaxbChildren(player, result.getMediaFiles(), username));
         Response res = createResponse();
         res.setSearchResult(searchResult);
         jaxbWriter.writeResponse(request, response, res);
@@ -721,16 +730,12 @@ public class SubsonicRESTController {
         criteria.setCount(getIntParameter(request, "albumCount", 20));
         criteria.setOffset(getIntParameter(request, "albumOffset", 0));
         org.airsonic.player.domain.SearchResult albums = searchService.search(criteria, musicFolders, IndexType.ALBUM);
-        for (MediaFile mediaFile : albums.getMediaFiles()) {
-            searchResult.getAlbum().add(createJaxbChild(player, mediaFile, username));
-        }
+        searchResult.getAlbum().addAll(createJaxbChildren(player, albums.getMediaFiles(), username));
 
         criteria.setCount(getIntParameter(request, "songCount", 20));
         criteria.setOffset(getIntParameter(request, "songOffset", 0));
         org.airsonic.player.domain.SearchResult songs = searchService.search(criteria, musicFolders, IndexType.SONG);
-        for (MediaFile mediaFile : songs.getMediaFiles()) {
-            searchResult.getSong().add(createJaxbChild(player, mediaFile, username));
-        }
+        searchResult.getSong().addAll(createJaxbChildren(player, songs.getMediaFiles(), username));
 
         Response res = createResponse();
         res.setSearchResult2(searchResult);
@@ -767,9 +772,7 @@ public class SubsonicRESTController {
         criteria.setCount(getIntParameter(request, "songCount", 20));
         criteria.setOffset(getIntParameter(request, "songOffset", 0));
         result = searchService.search(criteria, musicFolders, IndexType.SONG);
-        for (MediaFile song : result.getMediaFiles()) {
-            searchResult.getSong().add(createJaxbChild(player, song, username));
-        }
+        searchResult.getSong().addAll(createJaxbChildren(player, result.getMediaFiles(), username));
 
         Response res = createResponse();
         res.setSearchResult3(searchResult);
@@ -820,11 +823,13 @@ public class SubsonicRESTController {
             return;
         }
         PlaylistWithSongs result = createJaxbPlaylist(new PlaylistWithSongs(), playlist);
+        List<MediaFile> files = new ArrayList<>();
         for (MediaFile mediaFile : playlistService.getFilesInPlaylist(id)) {
             if (securityService.isFolderAccessAllowed(mediaFile, username)) {
-                result.getEntry().add(createJaxbChild(player, mediaFile, username));
+                files.add(mediaFile);
             }
         }
+        result.getEntry().addAll(createJaxbChildren(player, files, username));
 
         Response res = createResponse();
         res.setPlaylist(result);
@@ -914,9 +919,7 @@ public class SubsonicRESTController {
             result.setPlaying(playing);
             result.setGain(gain);
             result.setPosition(position);
-            for (MediaFile mediaFile : playQueue.getFiles()) {
-                result.getEntry().add(createJaxbChild(player, mediaFile, username));
-            }
+            result.getEntry().addAll(createJaxbChildren(player, playQueue.getFiles(), username));
         } else {
             JukeboxStatus result = new JukeboxStatus();
             res.setJukeboxStatus(result);
@@ -1104,9 +1107,7 @@ public class SubsonicRESTController {
         }
 
         AlbumList result = new AlbumList();
-        for (MediaFile album : albums) {
-            result.getAlbum().add(createJaxbChild(player, album, username));
-        }
+        result.getAlbum().addAll(createJaxbChildren(player, albums, username));
 
         Response res = createResponse();
         res.setAlbumList(result);
@@ -1173,9 +1174,7 @@ public class SubsonicRESTController {
         RandomSearchCriteria criteria = new RandomSearchCriteria(size, genre, fromYear, toYear, musicFolders);
 
         Songs result = new Songs();
-        for (MediaFile mediaFile : searchService.getRandomSongs(criteria)) {
-            result.getSong().add(createJaxbChild(player, mediaFile, username));
-        }
+        result.getSong().addAll(createJaxbChildren(player, searchService.getRandomSongs(criteria), username));
         Response res = createResponse();
         res.setRandomSongs(result);
         jaxbWriter.writeResponse(request, response, res);
@@ -1192,9 +1191,7 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username);
 
         Videos result = new Videos();
-        for (MediaFile mediaFile : mediaFileDao.getVideos(size, offset, musicFolders)) {
-            result.getVideo().add(createJaxbChild(player, mediaFile, username));
-        }
+        result.getVideo().addAll(createJaxbChildren(player, mediaFileDao.getVideos(size, offset, musicFolders), username));
         Response res = createResponse();
         res.setVideos(result);
         jaxbWriter.writeResponse(request, response, res);
@@ -1235,11 +1232,71 @@ public class SubsonicRESTController {
         jaxbWriter.writeResponse(request, response, res);
     }
 
+    /**
+     * Starred dates, ratings and album and artist IDs of a list of media files.
+     */
+    private static class ChildMetadata {
+        private Map<Integer, Date> starredDates = Collections.emptyMap();
+        private Map<String, Integer> userRatings = Collections.emptyMap();
+        private Map<String, Double> averageRatings = Collections.emptyMap();
+        private final Map<Pair<String, String>, Integer> albumIds = new HashMap<>();
+        private final Map<String, Integer> artistIds = new HashMap<>();
+    }
+
     private Child createJaxbChild(Player player, MediaFile mediaFile, String username) {
         return createJaxbChild(new Child(), player, mediaFile, username);
     }
 
     private <T extends Child> T createJaxbChild(T child, Player player, MediaFile mediaFile, String username) {
+        return createJaxbChild(child, player, mediaFile, loadChildMetadata(Collections.singletonList(mediaFile), username));
+    }
+
+    /**
+     * Creates children for the given media files, loading their starred dates, ratings and album and
+     * artist IDs in bulk rather than once per media file.
+     */
+    private List<Child> createJaxbChildren(Player player, List<MediaFile> mediaFiles, String username) {
+        ChildMetadata metadata = loadChildMetadata(mediaFiles, username);
+        List<Child> result = new ArrayList<>(mediaFiles.size());
+        for (MediaFile mediaFile : mediaFiles) {
+            result.add(createJaxbChild(new Child(), player, mediaFile, metadata));
+        }
+        return result;
+    }
+
+    private ChildMetadata loadChildMetadata(List<MediaFile> mediaFiles, String username) {
+        ChildMetadata metadata = new ChildMetadata();
+        if (mediaFiles.isEmpty()) {
+            return metadata;
+        }
+        metadata.starredDates = mediaFileService.getMediaFileStarredDates(mediaFiles, username);
+        metadata.userRatings = ratingService.getRatingsForUser(username, mediaFiles);
+        metadata.averageRatings = ratingService.getAverageRatings(mediaFiles);
+
+        Set<Pair<String, String>> albumArtistAndNames = new HashSet<>();
+        Set<String> artistNames = new HashSet<>();
+        for (MediaFile mediaFile : mediaFiles) {
+            if (mediaFile.isFile() && mediaFile.getAlbumArtist() != null && mediaFile.getAlbumName() != null) {
+                albumArtistAndNames.add(Pair.of(mediaFile.getAlbumArtist(), mediaFile.getAlbumName()));
+            }
+            if (mediaFile.isFile() && mediaFile.getArtist() != null) {
+                artistNames.add(mediaFile.getArtist());
+            }
+        }
+        if (!albumArtistAndNames.isEmpty()) {
+            for (Album album : albumDao.getAlbums(albumArtistAndNames)) {
+                metadata.albumIds.put(Pair.of(album.getArtist(), album.getName()), album.getId());
+            }
+        }
+        if (!artistNames.isEmpty()) {
+            for (org.airsonic.player.domain.Artist artist : artistDao.getArtists(artistNames)) {
+                metadata.artistIds.putIfAbsent(artist.getName(), artist.getId());
+            }
+        }
+        return metadata;
+    }
+
+    private <T extends Child> T createJaxbChild(T child, Player player, MediaFile mediaFile, ChildMetadata metadata) {
         MediaFile parent = mediaFileService.getParentOf(mediaFile);
         child.setId(String.valueOf(mediaFile.getId()));
         try {
@@ -1257,9 +1314,9 @@ public class SubsonicRESTController {
         child.setYear(mediaFile.getYear());
         child.setGenre(mediaFile.getGenre());
         child.setCreated(jaxbWriter.convertDate(mediaFile.getCreated()));
-        child.setStarred(jaxbWriter.convertDate(mediaFileDao.getMediaFileStarredDate(mediaFile.getId(), username)));
-        child.setUserRating(ratingService.getRatingForUser(username, mediaFile));
-        child.setAverageRating(ratingService.getAverageRating(mediaFile));
+        child.setStarred(jaxbWriter.convertDate(metadata.starredDates.get(mediaFile.getId())));
+        child.setUserRating(metadata.userRatings.get(mediaFile.getPath()));
+        child.setAverageRating(metadata.averageRatings.get(mediaFile.getPath()));
         child.setPlayCount((long) mediaFile.getPlayCount());
 
         if (mediaFile.isFile()) {
@@ -1274,17 +1331,13 @@ public class SubsonicRESTController {
             child.setIsVideo(mediaFile.isVideo());
             child.setPath(getRelativePath(mediaFile, settingsService));
 
-            if (mediaFile.getAlbumArtist() != null && mediaFile.getAlbumName() != null) {
-                Album album = albumDao.getAlbum(mediaFile.getAlbumArtist(), mediaFile.getAlbumName());
-                if (album != null) {
-                    child.setAlbumId(String.valueOf(album.getId()));
-                }
+            Integer albumId = metadata.albumIds.get(Pair.of(mediaFile.getAlbumArtist(), mediaFile.getAlbumName()));
+            if (albumId != null) {
+                child.setAlbumId(String.valueOf(albumId));
             }
-            if (mediaFile.getArtist() != null) {
-                org.airsonic.player.domain.Artist artist = artistDao.getArtist(mediaFile.getArtist());
-                if (artist != null) {
-                    child.setArtistId(String.valueOf(artist.getId()));
-                }
+            Integer artistId = metadata.artistIds.get(mediaFile.getArtist());
+            if (artistId != null) {
+                child.setArtistId(String.valueOf(artistId));
             }
             switch (mediaFile.getMediaType()) {
                 case MUSIC:
@@ -1460,9 +1513,9 @@ public class SubsonicRESTController {
                 return;
             }
             if (star) {
-                mediaFileDao.starMediaFile(id, username);
+                mediaFileService.starMediaFile(id, username);
             } else {
-                mediaFileDao.unstarMediaFile(id, username);
+                mediaFileService.unstarMediaFile(id, username);
             }
         }
         for (int albumId : getIntParameters(request, "albumId")) {
@@ -1505,12 +1558,8 @@ public class SubsonicRESTController {
         for (MediaFile artist : mediaFileDao.getStarredDirectories(0, Integer.MAX_VALUE, username, musicFolders)) {
             result.getArtist().add(createJaxbArtist(artist, username));
         }
-        for (MediaFile album : mediaFileDao.getStarredAlbums(0, Integer.MAX_VALUE, username, musicFolders)) {
-            result.getAlbum().add(createJaxbChild(player, album, username));
-        }
-        for (MediaFile song : mediaFileDao.getStarredFiles(0, Integer.MAX_VALUE, username, musicFolders)) {
-            result.getSong().add(createJaxbChild(player, song, username));
-        }
+        result.getAlbum().addAll(createJaxbChildren(player, mediaFileDao.getStarredAlbums(0, Integer.MAX_VALUE, username, musicFolders), username));
+        result.getSong().addAll(createJaxbChildren(player, mediaFileDao.getStarredFiles(0, Integer.MAX_VALUE, username, musicFolders), username));
         Response res = createResponse();
         res.setStarred(result);
         jaxbWriter.writeResponse(request, response, res);
@@ -1531,9 +1580,7 @@ public class SubsonicRESTController {
         for (Album album : albumDao.getStarredAlbums(0, Integer.MAX_VALUE, username, musicFolders)) {
             result.getAlbum().add(createJaxbAlbum(new AlbumID3(), album, username));
         }
-        for (MediaFile song : mediaFileDao.getStarredFiles(0, Integer.MAX_VALUE, username, musicFolders)) {
-            result.getSong().add(createJaxbChild(player, song, username));
-        }
+        result.getSong().addAll(createJaxbChildren(player, mediaFileDao.getStarredFiles(0, Integer.MAX_VALUE, username, musicFolders), username));
         Response res = createResponse();
         res.setStarred2(result);
         jaxbWriter.writeResponse(request, response, res);
@@ -1824,9 +1871,7 @@ public class SubsonicRESTController {
             org.subsonic.restapi.Share s = createJaxbShare(request, share);
             result.getShare().add(s);
 
-            for (MediaFile mediaFile : shareService.getSharedFiles(share.getId(), musicFolders)) {
-                s.getEntry().add(createJaxbChild(player, mediaFile, username));
-            }
+            s.getEntry().addAll(createJaxbChildren(player, shareService.getSharedFiles(share.getId(), musicFolders), username));
         }
         Response res = createResponse();
         res.setShares(result);
@@ -1867,9 +1912,7 @@ public class SubsonicRESTController {
 
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username);
 
-        for (MediaFile mediaFile : shareService.getSharedFiles(share.getId(), musicFolders)) {
-            s.getEntry().add(createJaxbChild(player, mediaFile, username));
-        }
+        s.getEntry().addAll(createJaxbChildren(player, shareService.getSharedFiles(share.getId(), musicFolders), username));
 
         Response res = createResponse();
         res.setShares(result);
@@ -58,6 +58,7 @@ public class TranscodingSettingsController {
         map.put("transcodings", transcodingService.getAllTranscodings());
         map.put("transcodeDirectory", transcodingService.getTranscodeDirectory());
         map.put("hlsCommand", settingsService.getHlsCommand());
+        map.put("transcodeCacheSize", settingsService.getTranscodeCacheSize());
         map.put("brand", settingsService.getBrand());
 
         model.addAttribute("model", map);
@@ -132,9 +133,15 @@ public class TranscodingSettingsController {
                 return error;
             }
         }
+        String error = null;
         settingsService.setHlsCommand(StringUtils.trim(request.getParameter("hlsCommand")));
+        try {
+            settingsService.setTranscodeCacheSize(Math.max(0L, Long.parseLong(StringUtils.trim(request.getParameter("transcodeCacheSize")))));
+        } catch (NumberFormatException x) {
+            error = "transcodingsettings.invalidcachesize";
+        }
         settingsService.save();
-        return null;
+        return error;
     }
 
     private String getParameter(HttpServletRequest request, String name, Integer id) {
@@ -75,6 +75,7 @@ public class UserChartController extends AbstractChartController {
 
     private CategoryDataset createDataset(String type) {
         DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+        securityService.flushUserByteCounts();
         List<User> users = securityService.getAllUsers();
         for (User user : users) {
             double value;
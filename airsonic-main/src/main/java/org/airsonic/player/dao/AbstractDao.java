@@ -19,6 +19,7 @@
  */
 package org.airsonic.player.dao;
 
+import com.google.common.collect.Iterables;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,8 +28,11 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -41,6 +45,11 @@ import java.util.concurrent.TimeUnit;
 public class AbstractDao {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractDao.class);
 
+    /**
+     * Maximum number of values bound to a single "in" clause by {@link #namedQueryIn}.
+     */
+    private static final int IN_CLAUSE_LIMIT = 1000;
+
     @Autowired
     private DaoHelper daoHelper;
 
@@ -79,6 +88,14 @@ public class AbstractDao {
         return result;
     }
 
+    protected int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+        long t = System.nanoTime();
+        LOG.trace("Executing batch query: [{}] with {} rows", sql, batchArgs.size());
+        int[] result = getJdbcTemplate().batchUpdate(sql, batchArgs);
+        log(sql, t);
+        return result;
+    }
+
     private void log(String sql, long startTimeNano) {
         long millis = (System.nanoTime() - startTimeNano) / 1000000L;
 
@@ -102,6 +119,23 @@ public class AbstractDao {
         return result;
     }
 
+    /**
+     * Executes a named query with an "in" clause over the given values, splitting the values over
+     * several queries if there are too many of them for one.
+     *
+     * @param parameter The name of the parameter that the values are bound to.
+     */
+    protected <T> List<T> namedQueryIn(String sql, RowMapper<T> rowMapper, Map<String, Object> args,
+                                       String parameter, Collection<?> values) {
+        List<T> result = new ArrayList<>();
+        for (List<?> chunk : Iterables.partition(values, IN_CLAUSE_LIMIT)) {
+            Map<String, Object> chunkArgs = new HashMap<>(args);
+            chunkArgs.put(parameter, chunk);
+            result.addAll(namedQuery(sql, rowMapper, chunkArgs));
+        }
+        return result;
+    }
+
     protected List<String> queryForStrings(String sql, Object... args) {
         long t = System.nanoTime();
         List<String> result = getJdbcTemplate().queryForList(sql, args, String.class);
@@ -24,6 +24,7 @@ import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.util.FileUtil;
 import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
@@ -51,6 +52,17 @@ public class AlbumDao extends AbstractDao {
         return queryOne("select " + QUERY_COLUMNS + " from album where id=?", rowMapper, id);
     }
 
+    /**
+     * Returns the albums with the given IDs, in no particular order.
+     *
+     * @param ids The album IDs.
+     * @return The albums found.
+     */
+    public List<Album> getAlbumsById(Collection<Integer> ids) {
+        return namedQueryIn("select " + QUERY_COLUMNS + " from album where id in (:ids)", rowMapper,
+                            Collections.emptyMap(), "ids", ids);
+    }
+
     /**
      * Returns the album with the given artist and album name.
      *
@@ -62,6 +74,21 @@ public class AlbumDao extends AbstractDao {
         return queryOne("select " + QUERY_COLUMNS + " from album where artist=? and name=?", rowMapper, artistName, albumName);
     }
 
+    /**
+     * Returns the albums with any of the given artist and album name combinations.
+     *
+     * @param artistAndNames Pairs of artist and album names.
+     * @return The matching albums.
+     */
+    public List<Album> getAlbums(Collection<Pair<String, String>> artistAndNames) {
+        List<Object[]> tuples = new ArrayList<>(artistAndNames.size());
+        for (Pair<String, String> artistAndName : artistAndNames) {
+            tuples.add(new Object[]{artistAndName.getLeft(), artistAndName.getRight()});
+        }
+        return namedQueryIn("select " + QUERY_COLUMNS + " from album where (artist, name) in (:tuples)", rowMapper,
+                            Collections.emptyMap(), "tuples", tuples);
+    }
+
     /**
      * Returns the album that the given file (most likely) is part of.
      *
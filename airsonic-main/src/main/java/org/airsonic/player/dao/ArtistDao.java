@@ -28,6 +28,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Provides database services for artists.
@@ -51,6 +52,17 @@ public class ArtistDao extends AbstractDao {
         return queryOne("select " + QUERY_COLUMNS + " from artist where name=?", rowMapper, artistName);
     }
 
+    /**
+     * Returns the artists with the given names.
+     *
+     * @param artistNames The artist names.
+     * @return The artists found.
+     */
+    public List<Artist> getArtists(Collection<String> artistNames) {
+        return namedQueryIn("select " + QUERY_COLUMNS + " from artist where name in (:names)", rowMapper,
+                            Collections.emptyMap(), "names", artistNames);
+    }
+
     /**
      * Returns the artist with the given name.
      *
@@ -80,6 +92,17 @@ public class ArtistDao extends AbstractDao {
         return queryOne("select " + QUERY_COLUMNS + " from artist where id=?", rowMapper, id);
     }
 
+    /**
+     * Returns the artists with the given IDs, in no particular order.
+     *
+     * @param ids The artist IDs.
+     * @return The artists found.
+     */
+    public List<Artist> getArtistsById(Collection<Integer> ids) {
+        return namedQueryIn("select " + QUERY_COLUMNS + " from artist where id in (:ids)", rowMapper,
+                            Collections.emptyMap(), "ids", ids);
+    }
+
     /**
      * Creates or updates an artist.
      *
@@ -124,7 +147,22 @@ public class ArtistDao extends AbstractDao {
         args.put("offset", offset);
 
         return namedQuery("select " + QUERY_COLUMNS + " from artist where present and folder_id in (:folders) " +
-                          "order by name limit :count offset :offset", rowMapper, args);
+                          "order by lower(name), name limit :count offset :offset", rowMapper, args);
+    }
+
+    /**
+     * Returns the number of artists in the given folders.
+     *
+     * @param musicFolders Only count artists that have at least one album in these folders.
+     * @return The number of present artists.
+     */
+    public int getArtistCount(final List<MusicFolder> musicFolders) {
+        if (musicFolders.isEmpty()) {
+            return 0;
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("folders", MusicFolder.toIdList(musicFolders));
+        return namedQueryForInt("select count(*) from artist where present and folder_id in (:folders)", 0, args);
     }
 
     /**
@@ -159,6 +197,20 @@ public class ArtistDao extends AbstractDao {
         update("update artist set present=?, last_scanned = ? where name=?", true, lastScanned, artistName);
     }
 
+    /**
+     * Marks the artists with the given names as present, using a single batched statement.
+     *
+     * @param artistNames The artist names.
+     * @param lastScanned The scan date.
+     */
+    public void markPresent(Collection<String> artistNames, Date lastScanned) {
+        if (artistNames.isEmpty()) {
+            return;
+        }
+        batchUpdate("update artist set present=?, last_scanned = ? where name=?",
+                    artistNames.stream().map(name -> new Object[] {true, lastScanned, name}).collect(Collectors.toList()));
+    }
+
     public void markNonPresent(Date lastScanned) {
         int minId = queryForInt("select min(id) from artist where last_scanned < ? and present", 0, lastScanned);
         int maxId = queryForInt("select max(id) from artist where last_scanned < ? and present", 0, lastScanned);
@@ -0,0 +1,68 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.dao;
+
+import org.springframework.stereotype.Repository;
+
+/**
+ * Provides database services for the CRC-32 checksums of files, which are needed to add the files to
+ * uncompressed zip downloads. A checksum is only valid as long as the size and the last modification
+ * time of the file are unchanged.
+ */
+@Repository
+public class FileChecksumDao extends AbstractDao {
+
+    /**
+     * Returns the CRC-32 checksum of the given file.
+     *
+     * @param path    The path of the file.
+     * @param size    The current size of the file, in bytes.
+     * @param changed The current modification time of the file, in milliseconds.
+     * @return The checksum, or <code>null</code> if it is not known for this version of the file.
+     */
+    public Long getCrc(String path, long size, long changed) {
+        return queryForLong("select crc from file_checksum where path=? and file_size=? and changed=?", null,
+                            path, size, changed);
+    }
+
+    /**
+     * Stores the CRC-32 checksum of the given file, replacing the checksum of any previous version.
+     *
+     * @param path    The path of the file.
+     * @param size    The size of the file, in bytes.
+     * @param changed The modification time of the file, in milliseconds.
+     * @param crc     The checksum.
+     */
+    public void setCrc(String path, long size, long changed, long crc) {
+        int n = update("update file_checksum set file_size=?, changed=?, crc=? where path=?", size, changed, crc, path);
+        if (n == 0) {
+            update("insert into file_checksum (path, file_size, changed, crc) values (?, ?, ?, ?)", path, size, changed, crc);
+        }
+    }
+
+    /**
+     * Deletes the checksums of files that are no longer media files or cover art in the media library. Checksums of
+     * other files in downloaded directories are deleted as well, and are computed again when needed.
+     */
+    public void expunge() {
+        update("delete from file_checksum where path not in (select path from media_file where present) " +
+               "and path not in (select cover_art_path from media_file where present and cover_art_path is not null)");
+    }
+}
@@ -35,6 +35,7 @@ import java.io.File;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Provides database services for media files.
@@ -78,6 +79,17 @@ public class MediaFileDao extends AbstractDao {
         return queryOne("select " + QUERY_COLUMNS + " from media_file where id=?", rowMapper, id);
     }
 
+    /**
+     * Returns the media files with the given IDs, in no particular order.
+     *
+     * @param ids The IDs.
+     * @return The media files found.
+     */
+    public List<MediaFile> getMediaFilesById(Collection<Integer> ids) {
+        return namedQueryIn("select " + QUERY_COLUMNS + " from media_file where id in (:ids)", rowMapper,
+                            Collections.emptyMap(), "ids", ids);
+    }
+
     /**
      * Returns the media file that are direct children of the given path.
      *
@@ -88,6 +100,29 @@ public class MediaFileDao extends AbstractDao {
         return query("select " + QUERY_COLUMNS + " from media_file where parent_path=? and present", rowMapper, path);
     }
 
+    /**
+     * Returns a page of the media files that are direct children of the given path, ordered by path ignoring case.
+     *
+     * @param path   The path.
+     * @param offset Number of children to skip.
+     * @param count  Maximum number of children to return.
+     * @return The page of children.
+     */
+    public List<MediaFile> getChildrenOf(String path, int offset, int count) {
+        return query("select " + QUERY_COLUMNS + " from media_file where parent_path=? and present " +
+                     "order by lower(path), path limit ? offset ?", rowMapper, path, count, offset);
+    }
+
+    /**
+     * Returns the number of media files that are direct children of the given path.
+     *
+     * @param path The path.
+     * @return The number of children.
+     */
+    public int getChildCount(String path) {
+        return queryForInt("select count(*) from media_file where parent_path=? and present", 0, path);
+    }
+
     public List<MediaFile> getFilesInPlaylist(int playlistId) {
         return query("select " + prefix(QUERY_COLUMNS, "media_file") + " from playlist_file, media_file where " +
                      "media_file.id = playlist_file.media_file_id and " +
@@ -95,6 +130,33 @@ public class MediaFileDao extends AbstractDao {
                      "order by playlist_file.id", rowMapper, playlistId);
     }
 
+    /**
+     * Returns a page of the present media files in a playlist, in playlist order.
+     *
+     * @param playlistId The playlist ID.
+     * @param offset     Number of files to skip.
+     * @param count      Maximum number of files to return.
+     * @return The page of files.
+     */
+    public List<MediaFile> getPresentFilesInPlaylist(int playlistId, int offset, int count) {
+        return query("select " + prefix(QUERY_COLUMNS, "media_file") + " from playlist_file, media_file where " +
+                     "media_file.id = playlist_file.media_file_id and " +
+                     "playlist_file.playlist_id = ? and media_file.present " +
+                     "order by playlist_file.id limit ? offset ?", rowMapper, playlistId, count, offset);
+    }
+
+    /**
+     * Returns the number of present media files in a playlist.
+     *
+     * @param playlistId The playlist ID.
+     * @return The number of files.
+     */
+    public int getPresentFileCountInPlaylist(int playlistId) {
+        return queryForInt("select count(*) from playlist_file, media_file where " +
+                           "media_file.id = playlist_file.media_file_id and " +
+                           "playlist_file.playlist_id = ? and media_file.present", 0, playlistId);
+    }
+
     public List<MediaFile> getSongsForAlbum(String artist, String album) {
         return query("select " + QUERY_COLUMNS + " from media_file where album_artist=? and album=? and present " +
                      "and type in (?,?,?) order by disc_number, track_number", rowMapper,
@@ -215,9 +277,11 @@ public class MediaFileDao extends AbstractDao {
 
     public void updateGenres(List<Genre> genres) {
         update("delete from genre");
-        for (Genre genre : genres) {
-            update("insert into genre(" + GENRE_COLUMNS + ") values(?, ?, ?)",
-                   genre.getName(), genre.getSongCount(), genre.getAlbumCount());
+        if (!genres.isEmpty()) {
+            batchUpdate("insert into genre(" + GENRE_COLUMNS + ") values(?, ?, ?)",
+                        genres.stream()
+                              .map(genre -> new Object[] {genre.getName(), genre.getSongCount(), genre.getAlbumCount()})
+                              .collect(Collectors.toList()));
         }
     }
 
@@ -389,6 +453,18 @@ public class MediaFileDao extends AbstractDao {
                           rowMapper, args);
     }
 
+    public int getSongCountByGenre(final String genre, final List<MusicFolder> musicFolders) {
+        if (musicFolders.isEmpty()) {
+            return 0;
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("types", Arrays.asList(MediaFile.MediaType.MUSIC.name(), MediaFile.MediaType.PODCAST.name(), MediaFile.MediaType.AUDIOBOOK.name()));
+        args.put("genre", genre);
+        args.put("folders", MusicFolder.toPathList(musicFolders));
+        return namedQueryForInt("select count(*) from media_file where type in (:types) and genre = :genre " +
+                                "and present and folder in (:folders)", 0, args);
+    }
+
     public List<MediaFile> getSongsByArtist(String artist, int offset, int count) {
         return query("select " + QUERY_COLUMNS
                      + " from media_file where type in (?,?,?) and artist=? and present limit ? offset ?",
@@ -710,10 +786,37 @@ public class MediaFileDao extends AbstractDao {
         return queryForDate("select created from starred_media_file where media_file_id=? and username=?", null, id, username);
     }
 
+    /**
+     * Returns the dates at which the given user starred media files.
+     *
+     * @param username The user name.
+     * @return The starred dates, keyed by media file ID.
+     */
+    public Map<Integer, Date> getMediaFileStarredDates(String username) {
+        return query("select media_file_id, created from starred_media_file where username=?",
+                     (rs, rowNum) -> new AbstractMap.SimpleEntry<Integer, Date>(rs.getInt(1), rs.getTimestamp(2)), username)
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a));
+    }
+
     public void markPresent(String path, Date lastScanned) {
         update("update media_file set present=?, last_scanned = ? where path=?", true, lastScanned, path);
     }
 
+    /**
+     * Marks the media files with the given paths as present, using a single batched statement.
+     *
+     * @param paths       The paths of the media files.
+     * @param lastScanned The scan date.
+     */
+    public void markPresent(Collection<String> paths, Date lastScanned) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        batchUpdate("update media_file set present=?, last_scanned = ? where path=?",
+                    paths.stream().map(path -> new Object[] {true, lastScanned, path}).collect(Collectors.toList()));
+    }
+
     public void markNonPresent(Date lastScanned) {
         int minId = queryForInt("select min(id) from media_file where last_scanned < ? and present", 0, lastScanned);
         int maxId = queryForInt("select max(id) from media_file where last_scanned < ? and present", 0, lastScanned);
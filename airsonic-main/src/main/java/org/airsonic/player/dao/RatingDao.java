@@ -24,10 +24,12 @@ import org.airsonic.player.domain.MusicFolder;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Repository;
 
+import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Provides database services for ratings.
@@ -110,6 +112,31 @@ public class RatingDao extends AbstractDao {
         }
     }
 
+    /**
+     * Returns the average ratings of all rated media files.
+     *
+     * @return The average ratings, keyed by path.
+     */
+    public Map<String, Double> getAverageRatings() {
+        return query("select path, avg(rating) from user_rating group by path",
+                     (rs, rowNum) -> new AbstractMap.SimpleEntry<String, Double>(rs.getString(1), rs.getDouble(2)))
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a));
+    }
+
+    /**
+     * Returns all ratings of the given user.
+     *
+     * @param username The user name.
+     * @return The ratings, keyed by path.
+     */
+    public Map<String, Integer> getRatingsForUser(String username) {
+        return query("select path, rating from user_rating where username=?",
+                     (rs, rowNum) -> new AbstractMap.SimpleEntry<String, Integer>(rs.getString(1), rs.getInt(2)), username)
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a));
+    }
+
     public int getRatedAlbumCount(final String username, final List<MusicFolder> musicFolders) {
         if (musicFolders.isEmpty()) {
             return 0;
@@ -0,0 +1,73 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.dao;
+
+import org.airsonic.player.domain.ScanManifestEntry;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Provides database services for the directory manifest recorded by media library scans.
+ */
+@Repository
+public class ScanManifestDao extends AbstractDao {
+
+    private static final String QUERY_COLUMNS = "path, changed, child_count";
+
+    private final RowMapper<ScanManifestEntry> rowMapper = new ScanManifestEntryMapper();
+
+    /**
+     * Returns all entries of the manifest.
+     *
+     * @return Possibly empty list of all manifest entries.
+     */
+    public List<ScanManifestEntry> getEntries() {
+        return query("select " + QUERY_COLUMNS + " from scan_manifest", rowMapper);
+    }
+
+    /**
+     * Replaces the whole manifest with the given entries.
+     *
+     * @param entries The new manifest entries.
+     */
+    @Transactional
+    public void replaceEntries(Collection<ScanManifestEntry> entries) {
+        update("delete from scan_manifest");
+        if (!entries.isEmpty()) {
+            batchUpdate("insert into scan_manifest (" + QUERY_COLUMNS + ") values (" + questionMarks(QUERY_COLUMNS) + ")",
+                        entries.stream()
+                               .map(entry -> new Object[] {entry.getPath(), entry.getChanged(), entry.getChildCount()})
+                               .collect(Collectors.toList()));
+        }
+    }
+
+    private static class ScanManifestEntryMapper implements RowMapper<ScanManifestEntry> {
+        public ScanManifestEntry mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new ScanManifestEntry(rs.getString(1), rs.getLong(2), rs.getInt(3));
+        }
+    }
+}
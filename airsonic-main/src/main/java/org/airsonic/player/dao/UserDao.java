@@ -30,7 +30,9 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Provides user-related database services.
@@ -159,14 +161,26 @@ public class UserDao extends AbstractDao {
      * @param user The user to update.
      */
     public void updateUser(User user) {
-        String sql = "update " + getUserTable() + " set password=?, email=?, ldap_authenticated=?, bytes_streamed=?, bytes_downloaded=?, bytes_uploaded=? " +
-                "where username=?";
+        // The byte counts are only changed by addByteCounts, so that a stale user does not overwrite them.
+        String sql = "update " + getUserTable() + " set password=?, email=?, ldap_authenticated=? where username=?";
         getJdbcTemplate().update(sql, encrypt(user.getPassword()), user.getEmail(), user.isLdapAuthenticated(),
-                user.getBytesStreamed(), user.getBytesDownloaded(), user.getBytesUploaded(),
                 user.getUsername());
         writeRoles(user);
     }
 
+    /**
+     * Adds to the byte counts of users, in one batch.
+     *
+     * @param deltas The bytes streamed, downloaded and uploaded to add, keyed by username.
+     */
+    public void addByteCounts(Map<String, long[]> deltas) {
+        String sql = "update " + getUserTable() + " set bytes_streamed=bytes_streamed+?, bytes_downloaded=bytes_downloaded+?, " +
+                "bytes_uploaded=bytes_uploaded+? where username=?";
+        List<Object[]> batchArgs = new ArrayList<>();
+        deltas.forEach((username, delta) -> batchArgs.add(new Object[]{delta[0], delta[1], delta[2], username}));
+        batchUpdate(sql, batchArgs);
+    }
+
     /**
      * Returns the name of the roles for the given user.
      *
@@ -45,19 +45,19 @@ public class Genre {
         return name;
     }
 
-    public int getSongCount() {
+    public synchronized int getSongCount() {
         return songCount;
     }
 
-    public int getAlbumCount() {
+    public synchronized int getAlbumCount() {
         return albumCount;
     }
 
-    public void incrementAlbumCount() {
+    public synchronized void incrementAlbumCount() {
         albumCount++;
     }
 
-    public void incrementSongCount() {
+    public synchronized void incrementSongCount() {
         songCount++;
     }
 }
\ No newline at end of file
@@ -20,19 +20,19 @@
 package org.airsonic.player.domain;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Represents a list of genres.
+ * Represents a list of genres. Safe for concurrent use by multiple scanner threads.
  *
  * @author Sindre Mehus
  * @version $Revision: 1.2 $ $Date: 2005/12/25 13:48:46 $
  */
 public class Genres {
 
-    private final Map<String, Genre> genres = new HashMap<String, Genre>();
+    private final Map<String, Genre> genres = new ConcurrentHashMap<String, Genre>();
 
     public void incrementAlbumCount(String genreName) {
         Genre genre = getOrCreateGenre(genreName);
@@ -45,12 +45,7 @@ public class Genres {
     }
 
     private Genre getOrCreateGenre(String genreName) {
-        Genre genre = genres.get(genreName);
-        if (genre == null) {
-            genre = new Genre(genreName);
-            genres.put(genreName, genre);
-        }
-        return genre;
+        return genres.computeIfAbsent(genreName, Genre::new);
     }
 
     public List<Genre> getGenres() {
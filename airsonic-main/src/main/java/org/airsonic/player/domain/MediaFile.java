@@ -113,6 +113,19 @@ public class MediaFile {
     public MediaFile() {
     }
 
+    /**
+     * Creates a copy of the given media file, including its starred date.
+     */
+    public MediaFile(MediaFile other) {
+        this(other.id, other.path, other.folder, other.mediaType, other.format, other.title, other.albumName,
+             other.artist, other.albumArtist, other.discNumber, other.trackNumber, other.year, other.genre,
+             other.bitRate, other.variableBitRate, other.durationSeconds, other.fileSize, other.width,
+             other.height, other.coverArtPath, other.parentPath, other.playCount, other.lastPlayed,
+             other.comment, other.created, other.changed, other.lastScanned, other.childrenLastUpdated,
+             other.present, other.version, other.musicBrainzReleaseId, other.musicBrainzRecordingId);
+        this.starredDate = other.starredDate;
+    }
+
     public int getId() {
         return id;
     }
@@ -26,6 +26,7 @@ import java.util.Objects;
 
 /**
  * Contains media libaray statistics, including the number of artists, albums and songs.
+ * The counters may be incremented concurrently by multiple scanner threads.
  *
  * @author Sindre Mehus
  * @version $Revision: 1.1 $ $Date: 2005/11/17 18:29:03 $
@@ -65,43 +66,43 @@ public class MediaLibraryStatistics {
         totalDurationInSeconds = 0L;
     }
 
-    public void incrementArtists(int n) {
+    public synchronized void incrementArtists(int n) {
         artistCount += n;
     }
 
-    public void incrementAlbums(int n) {
+    public synchronized void incrementAlbums(int n) {
         albumCount += n;
     }
 
-    public void incrementSongs(int n) {
+    public synchronized void incrementSongs(int n) {
         songCount += n;
     }
 
-    public void incrementTotalLengthInBytes(long n) {
+    public synchronized void incrementTotalLengthInBytes(long n) {
         totalLengthInBytes += n;
     }
 
-    public void incrementTotalDurationInSeconds(long n) {
+    public synchronized void incrementTotalDurationInSeconds(long n) {
         totalDurationInSeconds += n;
     }
 
-    public Integer getArtistCount() {
+    public synchronized Integer getArtistCount() {
         return artistCount;
     }
 
-    public Integer getAlbumCount() {
+    public synchronized Integer getAlbumCount() {
         return albumCount;
     }
 
-    public Integer getSongCount() {
+    public synchronized Integer getSongCount() {
         return songCount;
     }
 
-    public Long getTotalLengthInBytes() {
+    public synchronized Long getTotalLengthInBytes() {
         return totalLengthInBytes;
     }
 
-    public Long getTotalDurationInSeconds() {
+    public synchronized Long getTotalDurationInSeconds() {
         return totalDurationInSeconds;
     }
 
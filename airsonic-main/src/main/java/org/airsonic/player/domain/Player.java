@@ -46,6 +46,31 @@ public class Player {
     private PlayQueue playQueue;
     private String javaJukeboxMixer;
 
+    public Player() {
+    }
+
+    /**
+     * Creates a copy of the given player. The copy shares the play queue of the given player.
+     *
+     * @param player The player to copy.
+     */
+    public Player(Player player) {
+        id = player.id;
+        name = player.name;
+        technology = player.technology;
+        clientId = player.clientId;
+        type = player.type;
+        username = player.username;
+        ipAddress = player.ipAddress;
+        isDynamicIp = player.isDynamicIp;
+        isAutoControlEnabled = player.isAutoControlEnabled;
+        isM3uBomEnabled = player.isM3uBomEnabled;
+        lastSeen = player.lastSeen;
+        transcodeScheme = player.transcodeScheme;
+        playQueue = player.playQueue;
+        javaJukeboxMixer = player.javaJukeboxMixer;
+    }
+
     /**
      * Returns the player ID.
      *
@@ -0,0 +1,72 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.domain;
+
+import java.util.Objects;
+
+/**
+ * The state of a directory as recorded by the last media library scan. Used to detect
+ * directories that have not changed since, so that incremental scans can skip them.
+ */
+public class ScanManifestEntry {
+
+    private final String path;
+    private final long changed;
+    private final int childCount;
+
+    public ScanManifestEntry(String path, long changed, int childCount) {
+        this.path = path;
+        this.changed = changed;
+        this.childCount = childCount;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the last modification time of the directory, in milliseconds.
+     */
+    public long getChanged() {
+        return changed;
+    }
+
+    /**
+     * Returns the number of entries in the directory, including files that are not media files.
+     */
+    public int getChildCount() {
+        return childCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ScanManifestEntry that = (ScanManifestEntry) o;
+        return changed == that.changed &&
+                childCount == that.childCount &&
+                Objects.equals(path, that.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, changed, childCount);
+    }
+}
@@ -22,9 +22,15 @@ package org.airsonic.player.domain;
 import org.apache.commons.collections4.queue.CircularFifoQueue;
 
 import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Status for a single transfer (stream, download or upload).
+ * <p/>
+ * Byte counts are updated without locking, since they are updated for every buffer that is transferred.
+ * The history of samples is not updated by the transfer itself, but by {@link #sample()}, which is called
+ * periodically for all transfers by {@link org.airsonic.player.service.StatusService}.
  *
  * @author Sindre Mehus
  */
@@ -33,22 +39,26 @@ public class TransferStatus {
     private static final int HISTORY_LENGTH = 200;
     private static final long SAMPLE_INTERVAL_MILLIS = 5000;
 
-    private Player player;
-    private File file;
-    private long bytesTransfered;
-    private long bytesSkipped;
-    private long bytesTotal;
+    private volatile Player player;
+    private volatile File file;
+    private final AtomicLong bytesTransfered = new AtomicLong();
+    private final AtomicLong bytesSkipped = new AtomicLong();
+    private volatile long bytesTotal;
+    private final AtomicBoolean terminated = new AtomicBoolean();
+    private volatile boolean active = true;
+
+    // The history, and the fields below, are guarded by the history.
     private final SampleHistory history = new SampleHistory();
-    private boolean terminated;
-    private boolean active = true;
+    private long lastSampledBytes;
+    private long lastUpdated;
 
     /**
      * Return the number of bytes transferred.
      *
      * @return The number of bytes transferred.
      */
-    public synchronized long getBytesTransfered() {
-        return bytesTransfered;
+    public long getBytesTransfered() {
+        return bytesTransfered.get();
     }
 
     /**
@@ -56,8 +66,8 @@ public class TransferStatus {
      *
      * @param byteCount The byte count.
      */
-    public synchronized void addBytesTransfered(long byteCount) {
-        setBytesTransfered(bytesTransfered + byteCount);
+    public void addBytesTransfered(long byteCount) {
+        bytesTransfered.addAndGet(byteCount);
     }
 
     /**
@@ -65,20 +75,32 @@ public class TransferStatus {
      *
      * @param bytesTransfered The number of bytes transferred.
      */
-    public synchronized void setBytesTransfered(long bytesTransfered) {
-        this.bytesTransfered = bytesTransfered;
-        createSample(bytesTransfered, false);
+    public void setBytesTransfered(long bytesTransfered) {
+        this.bytesTransfered.set(bytesTransfered);
+    }
+
+    /**
+     * Records the number of bytes transferred in the history, if it changed since the last call and
+     * the last sample is older than the sample interval.
+     */
+    public void sample() {
+        sample(false);
     }
 
-    private void createSample(long bytesTransfered, boolean force) {
+    private void sample(boolean force) {
         long now = System.currentTimeMillis();
+        long bytes = getBytesTransfered();
 
-        if (history.isEmpty()) {
-            history.add(new Sample(bytesTransfered, now));
-        } else {
-            Sample lastSample = history.getLast();
-            if (force || now - lastSample.getTimestamp() > TransferStatus.SAMPLE_INTERVAL_MILLIS) {
-                history.add(new Sample(bytesTransfered, now));
+        synchronized (history) {
+            boolean changed = history.isEmpty() || bytes != lastSampledBytes;
+            if (changed) {
+                lastSampledBytes = bytes;
+                lastUpdated = now;
+            }
+            if (history.isEmpty()) {
+                history.add(new Sample(bytes, now));
+            } else if (force || (changed && now - history.getLast().getTimestamp() > SAMPLE_INTERVAL_MILLIS)) {
+                history.add(new Sample(bytes, now));
             }
         }
     }
@@ -88,11 +110,13 @@ public class TransferStatus {
      *
      * @return Number of milliseconds, or <code>0</code> if never updated.
      */
-    public synchronized long getMillisSinceLastUpdate() {
-        if (history.isEmpty()) {
-            return 0L;
+    public long getMillisSinceLastUpdate() {
+        synchronized (history) {
+            if (history.isEmpty()) {
+                return 0L;
+            }
+            return System.currentTimeMillis() - lastUpdated;
         }
-        return System.currentTimeMillis() - history.getLast().timestamp;
     }
 
     /**
@@ -119,8 +143,8 @@ public class TransferStatus {
      *
      * @return The number of skipped bytes.
      */
-    public synchronized long getBytesSkipped() {
-        return bytesSkipped;
+    public long getBytesSkipped() {
+        return bytesSkipped.get();
     }
 
     /**
@@ -129,8 +153,8 @@ public class TransferStatus {
      *
      * @param bytesSkipped The number of skipped bytes.
      */
-    public synchronized void setBytesSkipped(long bytesSkipped) {
-        this.bytesSkipped = bytesSkipped;
+    public void setBytesSkipped(long bytesSkipped) {
+        this.bytesSkipped.set(bytesSkipped);
     }
 
 
@@ -139,8 +163,8 @@ public class TransferStatus {
      *
      * @param byteCount The byte count.
      */
-    public synchronized void addBytesSkipped(long byteCount) {
-        bytesSkipped += byteCount;
+    public void addBytesSkipped(long byteCount) {
+        bytesSkipped.addAndGet(byteCount);
     }
 
     /**
@@ -148,7 +172,7 @@ public class TransferStatus {
      *
      * @return The file that is currently being transferred.
      */
-    public synchronized File getFile() {
+    public File getFile() {
         return file;
     }
 
@@ -157,7 +181,7 @@ public class TransferStatus {
      *
      * @param file The file that is currently being transferred.
      */
-    public synchronized void setFile(File file) {
+    public void setFile(File file) {
         this.file = file;
     }
 
@@ -166,7 +190,7 @@ public class TransferStatus {
      *
      * @return The remote player for the stream.
      */
-    public synchronized Player getPlayer() {
+    public Player getPlayer() {
         return player;
     }
 
@@ -175,7 +199,7 @@ public class TransferStatus {
      *
      * @param player The remote player for the stream.
      */
-    public synchronized void setPlayer(Player player) {
+    public void setPlayer(Player player) {
         this.player = player;
     }
 
@@ -184,8 +208,10 @@ public class TransferStatus {
      *
      * @return A (copy of) the history list of samples.
      */
-    public synchronized SampleHistory getHistory() {
-        return new SampleHistory(history);
+    public SampleHistory getHistory() {
+        synchronized (history) {
+            return new SampleHistory(history);
+        }
     }
 
     /**
@@ -201,7 +227,7 @@ public class TransferStatus {
      * Indicate that the stream should be terminated.
      */
     public void terminate() {
-        terminated = true;
+        terminated.set(true);
     }
 
     /**
@@ -211,9 +237,7 @@ public class TransferStatus {
      * @return Whether this stream has been terminated.
      */
     public boolean terminated() {
-        boolean result = terminated;
-        terminated = false;
-        return result;
+        return terminated.getAndSet(false);
     }
 
     /**
@@ -230,15 +254,16 @@ public class TransferStatus {
      *
      * @param active Whether this transfer is active.
      */
-    public synchronized void setActive(boolean active) {
+    public void setActive(boolean active) {
         this.active = active;
 
         if (active) {
-            bytesSkipped = 0L;
+            bytesSkipped.set(0L);
             bytesTotal = 0L;
             setBytesTransfered(0L);
+            sample(false);
         } else {
-            createSample(getBytesTransfered(), true);
+            sample(true);
         }
     }
 
@@ -282,7 +307,7 @@ public class TransferStatus {
     @Override
     public String toString() {
         return "TransferStatus-" + hashCode() + " [player: " + player.getId() + ", file: " +
-                file + ", terminated: " + terminated + ", active: " + active + "]";
+                file + ", terminated: " + terminated.get() + ", active: " + active + "]";
     }
 
     /**
@@ -63,6 +63,27 @@ public class User {
         this(username, password, email, false, 0, 0, 0);
     }
 
+    /**
+     * Creates a copy of the given user.
+     *
+     * @param user The user to copy.
+     */
+    public User(User user) {
+        this(user.username, user.password, user.email, user.ldapAuthenticated,
+             user.bytesStreamed, user.bytesDownloaded, user.bytesUploaded);
+        isAdminRole = user.isAdminRole;
+        isSettingsRole = user.isSettingsRole;
+        isDownloadRole = user.isDownloadRole;
+        isUploadRole = user.isUploadRole;
+        isPlaylistRole = user.isPlaylistRole;
+        isCoverArtRole = user.isCoverArtRole;
+        isCommentRole = user.isCommentRole;
+        isPodcastRole = user.isPodcastRole;
+        isStreamRole = user.isStreamRole;
+        isJukeboxRole = user.isJukeboxRole;
+        isShareRole = user.isShareRole;
+    }
+
     public String getUsername() {
         return username;
     }
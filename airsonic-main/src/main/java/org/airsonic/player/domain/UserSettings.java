@@ -63,6 +63,43 @@ public class UserSettings {
         this.username = username;
     }
 
+    /**
+     * Creates a copy of the given settings.
+     *
+     * @param settings The settings to copy.
+     */
+    public UserSettings(UserSettings settings) {
+        username = settings.username;
+        locale = settings.locale;
+        themeId = settings.themeId;
+        showNowPlayingEnabled = settings.showNowPlayingEnabled;
+        showArtistInfoEnabled = settings.showArtistInfoEnabled;
+        finalVersionNotificationEnabled = settings.finalVersionNotificationEnabled;
+        betaVersionNotificationEnabled = settings.betaVersionNotificationEnabled;
+        songNotificationEnabled = settings.songNotificationEnabled;
+        keyboardShortcutsEnabled = settings.keyboardShortcutsEnabled;
+        autoHidePlayQueue = settings.autoHidePlayQueue;
+        showSideBar = settings.showSideBar;
+        viewAsList = settings.viewAsList;
+        queueFollowingSongs = settings.queueFollowingSongs;
+        defaultAlbumList = settings.defaultAlbumList;
+        mainVisibility = new Visibility(settings.mainVisibility);
+        playlistVisibility = new Visibility(settings.playlistVisibility);
+        lastFmEnabled = settings.lastFmEnabled;
+        listenBrainzEnabled = settings.listenBrainzEnabled;
+        lastFmUsername = settings.lastFmUsername;
+        lastFmPassword = settings.lastFmPassword;
+        listenBrainzToken = settings.listenBrainzToken;
+        transcodeScheme = settings.transcodeScheme;
+        selectedMusicFolderId = settings.selectedMusicFolderId;
+        partyModeEnabled = settings.partyModeEnabled;
+        nowPlayingAllowed = settings.nowPlayingAllowed;
+        avatarScheme = settings.avatarScheme;
+        systemAvatarId = settings.systemAvatarId;
+        changed = settings.changed;
+        paginationSize = settings.paginationSize;
+    }
+
     public String getUsername() {
         return username;
     }
@@ -335,6 +372,12 @@ public class UserSettings {
             isFileSizeVisible = fileSizeVisible;
         }
 
+        public Visibility(Visibility visibility) {
+            this(visibility.isTrackNumberVisible, visibility.isArtistVisible, visibility.isAlbumVisible,
+                 visibility.isGenreVisible, visibility.isYearVisible, visibility.isBitRateVisible,
+                 visibility.isDurationVisible, visibility.isFormatVisible, visibility.isFileSizeVisible);
+        }
+
         public boolean isTrackNumberVisible() {
             return isTrackNumberVisible;
         }
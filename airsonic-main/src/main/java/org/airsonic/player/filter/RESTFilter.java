@@ -63,7 +63,14 @@ public class RESTFilter implements Filter {
         String msg = getErrorMessage(x);
         LOG.warn("Error in REST API: " + msg, x);
 
+        // Part of a streamed response has already been sent, so an error response would only corrupt it further.
+        if (response.isCommitted()) {
+            return;
+        }
+
         try {
+            // The response may have been reset, dropping the header set above.
+            response.setHeader("Access-Control-Allow-Origin", "*");
             jaxbWriter.writeErrorResponse(request, response, code, msg);
         } catch (Exception e) {
             LOG.error("Failed to write error response.", e);
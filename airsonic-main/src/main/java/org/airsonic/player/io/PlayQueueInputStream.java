@@ -29,6 +29,7 @@ import org.airsonic.player.util.FileUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
@@ -100,6 +101,19 @@ public class PlayQueueInputStream extends InputStream {
         return n;
     }
 
+    /**
+     * Returns the file the current media file is streamed from, if it is streamed as is: either the original file,
+     * or a previously transcoded copy of it. Callers may then send that file directly instead of reading this
+     * stream, in which case they must update the transfer status themselves.
+     *
+     * @return The file, or {@code null} if there is no current media file or if it is being transcoded.
+     * @throws IOException If an I/O error occurs.
+     */
+    public File getSourceFile() throws IOException {
+        prepare();
+        return currentInputStream instanceof FileSourceInputStream ? ((FileSourceInputStream) currentInputStream).getFile() : null;
+    }
+
     private void prepare() throws IOException {
         PlayQueue playQueue = player.getPlayQueue();
 
@@ -28,6 +28,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Subclass of {@link InputStream} which provides on-the-fly transcoding.
@@ -44,6 +45,7 @@ public class TranscodeInputStream extends InputStream {
     private OutputStream processOutputStream;
     private Process process;
     private final File tmpFile;
+    private final InputStream in;
 
     /**
      * Creates a transcoded input stream by executing an external process. If <code>in</code> is not null,
@@ -56,6 +58,7 @@ public class TranscodeInputStream extends InputStream {
      */
     public TranscodeInputStream(ProcessBuilder processBuilder, final InputStream in, File tmpFile) throws IOException {
         this.tmpFile = tmpFile;
+        this.in = in;
 
         StringBuilder buf = new StringBuilder("Starting transcoder: ");
         for (String s : processBuilder.command()) {
@@ -109,6 +112,24 @@ public class TranscodeInputStream extends InputStream {
         return processInputStream.read(b, off, len);
     }
 
+    /**
+     * Returns whether the external process, and any transcoder feeding it, exited normally. This is meant to be
+     * called once all output has been read, and waits a few seconds for the processes to exit.
+     *
+     * @return Whether the transcoding succeeded.
+     */
+    public boolean isSuccessful() {
+        try {
+            if (!process.waitFor(5, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                return false;
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !(in instanceof TranscodeInputStream) || ((TranscodeInputStream) in).isSuccessful();
+    }
+
     /**
      * @see InputStream#close()
      */
@@ -149,6 +149,17 @@ public class RESTRequestParameterProcessingFilter implements Filter {
         }
 
         if (salt != null && token != null) {
+
+            // Clients may send the same salt and token with many requests.
+            Authentication cachedAuth = securityService.getRestAuthentication(username, salt, token);
+            if (cachedAuth != null) {
+                UsernamePasswordAuthenticationToken authResult = new UsernamePasswordAuthenticationToken(
+                        cachedAuth.getPrincipal(), cachedAuth.getCredentials(), cachedAuth.getAuthorities());
+                authResult.setDetails(authenticationDetailsSource.buildDetails(httpRequest));
+                SecurityContextHolder.getContext().setAuthentication(authResult);
+                return null;
+            }
+
             User user = securityService.getUserByName(username);
             if (user == null) {
                 return SubsonicRESTController.ErrorCode.NOT_AUTHENTICATED;
@@ -167,6 +178,9 @@ public class RESTRequestParameterProcessingFilter implements Filter {
             try {
                 Authentication authResult = authenticationManager.authenticate(authRequest);
                 SecurityContextHolder.getContext().setAuthentication(authResult);
+                if (salt != null && token != null) {
+                    securityService.putRestAuthentication(username, salt, token, password, authResult);
+                }
                 return null;
             } catch (AuthenticationException x) {
                 eventPublisher.publishEvent(new AuthenticationFailureBadCredentialsEvent(authRequest, x));
@@ -0,0 +1,266 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.service;
+
+import org.airsonic.player.domain.MusicFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the music folders and the Podcast folder for changes, and applies them to the media library
+ * between scheduled scans. Events are coalesced per directory, and each directory is applied once no further
+ * changes to it have been seen for a few seconds.
+ * <p/>
+ * If the folders cannot be watched, for instance because the operating system limit on the number of
+ * watches is exhausted, the watcher is stopped and changes are picked up by the scheduled scans only.
+ *
+ * @see MediaScannerService#updateDirectories(Collection)
+ */
+@Service
+public class LibraryWatcherService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LibraryWatcherService.class);
+
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private MediaScannerService mediaScannerService;
+
+    private WatchService watchService;
+    private ScheduledExecutorService scheduler;
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<WatchKey, Path>();
+
+    // Changed directories not yet applied, and when the last change to each was seen. Guarded by itself.
+    private final Map<File, Long> changedDirectories = new HashMap<File, Long>();
+
+    @PostConstruct
+    public void init() {
+        schedule();
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        stop();
+    }
+
+    /**
+     * Starts watching the media folders, or stops watching them if disabled in the settings.
+     */
+    public synchronized void schedule() {
+        stop();
+
+        if (!settingsService.isLibraryWatchEnabled()) {
+            LOG.info("Media library watching disabled.");
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (MusicFolder musicFolder : settingsService.getAllMusicFolders()) {
+                watchAll(musicFolder.getPath().toPath());
+            }
+            Path podcastFolder = Paths.get(settingsService.getPodcastFolder());
+            if (Files.isDirectory(podcastFolder)) {
+                watchAll(podcastFolder);
+            }
+        } catch (IOException | UnsupportedOperationException x) {
+            LOG.warn("Failed to watch media library, relying on scheduled scans instead.", x);
+            stop();
+            return;
+        }
+
+        WatchService service = watchService;
+        Thread thread = new Thread(() -> watch(service), "LibraryWatcher");
+        thread.setDaemon(true);
+        thread.start();
+
+        int delay = settingsService.getLibraryWatchDelay();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread schedulerThread = new Thread(r, "LibraryWatcherUpdater");
+            schedulerThread.setDaemon(true);
+            return schedulerThread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> applyChanges(delay), 1, 1, TimeUnit.SECONDS);
+
+        LOG.info("Watching {} media library directories for changes.", watchedDirectories.size());
+    }
+
+    private void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException x) {
+                LOG.warn("Failed to close media library watcher.", x);
+            }
+            watchService = null;
+        }
+        watchedDirectories.clear();
+        synchronized (changedDirectories) {
+            changedDirectories.clear();
+        }
+    }
+
+    /**
+     * Watches the given directory and all its subdirectories.
+     *
+     * @return The directories now being watched.
+     */
+    private List<Path> watchAll(Path root) throws IOException {
+        List<Path> result = new ArrayList<Path>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                watchedDirectories.put(key, dir);
+                result.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException x) {
+                LOG.debug("Failed to watch {}", file, x);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return result;
+    }
+
+    private void watch(WatchService service) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException x) {
+                return;
+            }
+
+            Path dir = watchedDirectories.get(key);
+            if (dir != null) {
+                handleEvents(dir, key.pollEvents());
+            }
+
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Marks the given watched directory as changed by the given events. If events were lost, the whole media
+     * library is scanned instead.
+     */
+    void handleEvents(Path dir, List<WatchEvent<?>> events) {
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == OVERFLOW) {
+                LOG.info("Too many changes to the media library to keep track of. Scanning it now.");
+                mediaScannerService.scanLibrary();
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            changed(dir);
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                watchCreated(child);
+            }
+        }
+    }
+
+    /**
+     * Watches a new directory. Files added to it before the watch was registered produce no events,
+     * so the directory and all its subdirectories are marked as changed.
+     */
+    private synchronized void watchCreated(Path dir) {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchAll(dir).forEach(this::changed);
+        } catch (ClosedWatchServiceException x) {
+            // Watching was stopped in the meantime.
+        } catch (IOException x) {
+            LOG.warn("Failed to watch " + dir + ", relying on scheduled scans instead.", x);
+            stop();
+        }
+    }
+
+    void changed(Path dir) {
+        synchronized (changedDirectories) {
+            changedDirectories.put(dir.toFile(), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Applies the changes to the directories that have not changed for the given number of seconds, all at once.
+     */
+    void applyChanges(int delaySeconds) {
+        // Sorted by path, so that parents come before children.
+        SortedMap<File, Long> directories = new TreeMap<File, Long>();
+        long quietSince = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(delaySeconds);
+        synchronized (changedDirectories) {
+            Iterator<Map.Entry<File, Long>> iterator = changedDirectories.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<File, Long> entry = iterator.next();
+                if (entry.getValue() <= quietSince) {
+                    directories.put(entry.getKey(), entry.getValue());
+                    iterator.remove();
+                }
+            }
+        }
+        if (directories.isEmpty()) {
+            return;
+        }
+
+        LOG.debug("Applying changes to {} media library directories.", directories.size());
+        if (!mediaScannerService.updateDirectories(directories.keySet())) {
+            // A scan is in progress, so try again later. Directories changed again since keep their newer time.
+            synchronized (changedDirectories) {
+                directories.forEach(changedDirectories::putIfAbsent);
+            }
+        }
+    }
+
+    public void setSettingsService(SettingsService settingsService) {
+        this.settingsService = settingsService;
+    }
+
+    public void setMediaScannerService(MediaScannerService mediaScannerService) {
+        this.mediaScannerService = mediaScannerService;
+    }
+}
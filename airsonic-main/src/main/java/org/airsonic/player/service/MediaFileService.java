@@ -21,13 +21,17 @@ package org.airsonic.player.service;
 
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.Statistics;
 import org.airsonic.player.dao.AlbumDao;
 import org.airsonic.player.dao.MediaFileDao;
 import org.airsonic.player.domain.*;
 import org.airsonic.player.service.metadata.JaudiotaggerParser;
 import org.airsonic.player.service.metadata.MetaData;
+import org.airsonic.player.service.metadata.MetaDataCache;
 import org.airsonic.player.service.metadata.MetaDataParser;
 import org.airsonic.player.service.metadata.MetaDataParserFactory;
+import org.airsonic.player.service.metadata.MetaDataParserPool;
+import org.airsonic.player.service.search.IndexManager;
 import org.airsonic.player.util.FileUtil;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
@@ -39,6 +43,8 @@ import org.springframework.stereotype.Service;
 import java.io.File;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 /**
  * Provides services for instantiating and caching media files and cover art.
@@ -53,6 +59,8 @@ public class MediaFileService {
     @Autowired
     private Ehcache mediaFileMemoryCache;
     @Autowired
+    private Ehcache upnpItemCache;
+    @Autowired
     private SecurityService securityService;
     @Autowired
     private SettingsService settingsService;
@@ -64,7 +72,14 @@ public class MediaFileService {
     private JaudiotaggerParser parser;
     @Autowired
     private MetaDataParserFactory metaDataParserFactory;
-    private boolean memoryCacheEnabled = true;
+    @Autowired
+    private MetaDataParserPool metaDataParserPool;
+    @Autowired
+    private MetaDataCache metaDataCache;
+    @Autowired
+    private IndexManager indexManager;
+    @Autowired
+    private StarRatingCache starRatingCache;
 
     /**
      * Returns a media file instance for the given file.  If possible, a cached value is returned.
@@ -86,10 +101,10 @@ public class MediaFileService {
      */
     public MediaFile getMediaFile(File file, boolean useFastCache) {
 
-        // Look in fast memory cache first.
+        // Look in memory cache first.
         MediaFile result = getFromMemoryCache(file);
         if (result != null) {
-            return result;
+            return checkLastModified(result, useFastCache);
         }
 
         if (!securityService.isReadAllowed(file)) {
@@ -99,9 +114,8 @@ public class MediaFileService {
         // Secondly, look in database.
         result = mediaFileDao.getMediaFile(file.getPath());
         if (result != null) {
-            result = checkLastModified(result, useFastCache);
-            putInMemoryCache(file, result);
-            return result;
+            putInMemoryCache(result);
+            return checkLastModified(result, useFastCache);
         }
 
         if (!FileUtil.exists(file)) {
@@ -109,10 +123,7 @@ public class MediaFileService {
         }
         // Not found in database, must read from disk.
         result = createMediaFile(file);
-
-        // Put in cache and database.
-        putInMemoryCache(file, result);
-        mediaFileDao.createOrUpdateMediaFile(result);
+        updateMediaFile(result);
 
         return result;
     }
@@ -128,11 +139,14 @@ public class MediaFileService {
         return getMediaFile(new File(pathName));
     }
 
-    // TODO: Optimize with memory caching.
     public MediaFile getMediaFile(int id) {
-        MediaFile mediaFile = mediaFileDao.getMediaFile(id);
+        MediaFile mediaFile = getFromMemoryCache(id);
         if (mediaFile == null) {
-            return null;
+            mediaFile = mediaFileDao.getMediaFile(id);
+            if (mediaFile == null) {
+                return null;
+            }
+            putInMemoryCache(mediaFile);
         }
 
         if (!securityService.isReadAllowed(mediaFile.getFile())) {
@@ -142,6 +156,46 @@ public class MediaFileService {
         return checkLastModified(mediaFile, settingsService.isFastCacheEnabled());
     }
 
+    /**
+     * Returns the media files with the given IDs, in the same order. Media files that are not cached
+     * are read from the database with as few queries as possible. IDs of media files that do not
+     * exist are skipped.
+     *
+     * @param ids The media file IDs.
+     * @return The media files.
+     * @throws SecurityException If access is denied to any of the media files.
+     */
+    public List<MediaFile> getMediaFiles(List<Integer> ids) {
+        Map<Integer, MediaFile> mediaFiles = new HashMap<>();
+        List<Integer> uncachedIds = new ArrayList<>();
+        for (Integer id : ids) {
+            MediaFile mediaFile = getFromMemoryCache(id);
+            if (mediaFile == null) {
+                uncachedIds.add(id);
+            } else {
+                mediaFiles.put(id, mediaFile);
+            }
+        }
+        for (MediaFile mediaFile : mediaFileDao.getMediaFilesById(uncachedIds)) {
+            putInMemoryCache(mediaFile);
+            mediaFiles.put(mediaFile.getId(), mediaFile);
+        }
+
+        boolean useFastCache = settingsService.isFastCacheEnabled();
+        List<MediaFile> result = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            MediaFile mediaFile = mediaFiles.get(id);
+            if (mediaFile == null) {
+                continue;
+            }
+            if (!securityService.isReadAllowed(mediaFile.getFile())) {
+                throw new SecurityException("Access denied to file " + mediaFile);
+            }
+            result.add(checkLastModified(mediaFile, useFastCache));
+        }
+        return result;
+    }
+
     public MediaFile getParentOf(MediaFile mediaFile) {
         if (mediaFile.getParentPath() == null) {
             return null;
@@ -150,18 +204,22 @@ public class MediaFileService {
     }
 
     private MediaFile checkLastModified(MediaFile mediaFile, boolean useFastCache) {
-        if (useFastCache || (mediaFile.getVersion() >= MediaFileDao.VERSION
-                && !settingsService.isIgnoreFileTimestamps()
-                && mediaFile.getChanged().getTime() >= FileUtil.lastModified(mediaFile.getFile()))) {
+        if (isUpToDate(mediaFile, useFastCache)) {
             LOG.debug("Detected unmodified file (id {}, path {})", mediaFile.getId(), mediaFile.getPath());
             return mediaFile;
         }
         LOG.debug("Updating database file from disk (id {}, path {})", mediaFile.getId(), mediaFile.getPath());
         mediaFile = createMediaFile(mediaFile.getFile());
-        mediaFileDao.createOrUpdateMediaFile(mediaFile);
+        updateMediaFile(mediaFile);
         return mediaFile;
     }
 
+    private boolean isUpToDate(MediaFile mediaFile, boolean useFastCache) {
+        return useFastCache || (mediaFile.getVersion() >= MediaFileDao.VERSION
+                && !settingsService.isIgnoreFileTimestamps()
+                && mediaFile.getChanged().getTime() >= FileUtil.lastModified(mediaFile.getFile()));
+    }
+
     /**
      * Returns all media files that are children of a given media file.
      *
@@ -193,9 +251,13 @@ public class MediaFileService {
             updateChildren(parent);
         }
 
+        List<MediaFile> children = mediaFileDao.getChildrenOf(parent.getPath());
+        Map<String, MediaFile> refreshed = useFastCache ? Collections.emptyMap() : refreshModifiedFiles(children);
+
         List<MediaFile> result = new ArrayList<MediaFile>();
-        for (MediaFile child : mediaFileDao.getChildrenOf(parent.getPath())) {
-            child = checkLastModified(child, useFastCache);
+        for (MediaFile child : children) {
+            MediaFile refreshedChild = refreshed.get(child.getPath());
+            child = refreshedChild != null ? refreshedChild : checkLastModified(child, useFastCache);
             if (child.isDirectory() && includeDirectories && includeMediaFile(child)) {
                 result.add(child);
             }
@@ -216,6 +278,16 @@ public class MediaFileService {
         return result;
     }
 
+    /**
+     * Makes sure the children of the given directory are stored and up-to-date in the database, like
+     * {@link #getChildrenOf} does, for callers that then page through them in the database.
+     */
+    public void refreshChildren(MediaFile parent) {
+        if (parent.isDirectory() && !settingsService.isFastCacheEnabled()) {
+            updateChildren(parent);
+        }
+    }
+
     /**
      * Returns whether the given file is the root of a media folder.
      *
@@ -363,18 +435,43 @@ public class MediaFileService {
     }
 
     public Date getMediaFileStarredDate(int id, String username) {
-        return mediaFileDao.getMediaFileStarredDate(id, username);
+        return starRatingCache.getStarredDates(username).get(id);
+    }
+
+    /**
+     * Returns the dates at which the given user starred the given media files.
+     *
+     * @return The starred dates, keyed by media file ID. Media files that are not starred are not included.
+     */
+    public Map<Integer, Date> getMediaFileStarredDates(List<MediaFile> mediaFiles, String username) {
+        Map<Integer, Date> starredDates = starRatingCache.getStarredDates(username);
+        Map<Integer, Date> result = new HashMap<>();
+        for (MediaFile mediaFile : mediaFiles) {
+            Date starredDate = starredDates.get(mediaFile.getId());
+            if (starredDate != null) {
+                result.put(mediaFile.getId(), starredDate);
+            }
+        }
+        return result;
+    }
+
+    public void starMediaFile(int id, String username) {
+        starRatingCache.star(id, username);
+    }
+
+    public void unstarMediaFile(int id, String username) {
+        starRatingCache.unstar(id, username);
     }
 
     public void populateStarredDate(List<MediaFile> mediaFiles, String username) {
+        Map<Integer, Date> starredDates = getMediaFileStarredDates(mediaFiles, username);
         for (MediaFile mediaFile : mediaFiles) {
-            populateStarredDate(mediaFile, username);
+            mediaFile.setStarredDate(starredDates.get(mediaFile.getId()));
         }
     }
 
     public void populateStarredDate(MediaFile mediaFile, String username) {
-        Date starredDate = mediaFileDao.getMediaFileStarredDate(mediaFile.getId(), username);
-        mediaFile.setStarredDate(starredDate);
+        mediaFile.setStarredDate(getMediaFileStarredDate(mediaFile.getId(), username));
     }
 
     private void updateChildren(MediaFile parent) {
@@ -390,23 +487,63 @@ public class MediaFileService {
             storedChildrenMap.put(child.getPath(), child);
         }
 
+        // Add children that are not already stored.
         List<File> children = filterMediaFiles(FileUtil.listFiles(parent.getFile()));
-        for (File child : children) {
-            if (storedChildrenMap.remove(child.getPath()) == null) {
-                // Add children that are not already stored.
-                mediaFileDao.createOrUpdateMediaFile(createMediaFile(child));
-            }
-        }
+        List<File> newChildren = children.stream()
+                .filter(child -> storedChildrenMap.remove(child.getPath()) == null)
+                .collect(Collectors.toList());
+        createMediaFiles(newChildren);
 
         // Delete children that no longer exist on disk.
-        for (String path : storedChildrenMap.keySet()) {
-            mediaFileDao.deleteMediaFile(path);
+        for (MediaFile child : storedChildrenMap.values()) {
+            deleteMediaFile(child);
         }
 
         // Update timestamp in parent.
         parent.setChildrenLastUpdated(parent.getChanged());
         parent.setPresent(true);
-        mediaFileDao.createOrUpdateMediaFile(parent);
+        updateMediaFile(parent);
+    }
+
+    /**
+     * Re-reads those of the given children that have been modified on disk, parsing their meta data in
+     * parallel. Does nothing if fewer than two files are modified.
+     *
+     * @return The re-read children, keyed by path.
+     */
+    private Map<String, MediaFile> refreshModifiedFiles(List<MediaFile> children) {
+        List<File> modified = children.stream()
+                .filter(child -> child.isFile() && !isUpToDate(child, false))
+                .map(MediaFile::getFile)
+                .collect(Collectors.toList());
+        if (modified.size() < 2) {
+            return Collections.emptyMap();
+        }
+        LOG.debug("Updating {} modified files in database from disk", modified.size());
+        return createMediaFiles(modified).stream().collect(Collectors.toMap(MediaFile::getPath, mediaFile -> mediaFile));
+    }
+
+    /**
+     * Creates and stores media files for the given files. The meta data of audio and video files is parsed
+     * in the background, while the media files are created and stored in order as it becomes available.
+     */
+    private List<MediaFile> createMediaFiles(List<File> files) {
+        List<File> parsed = files.stream().filter(FileUtil::isFile).collect(Collectors.toList());
+        List<Future<MetaData>> parsedMetaData = metaDataParserPool.parse(parsed);
+        Map<File, Future<MetaData>> metaData = new HashMap<File, Future<MetaData>>();
+        for (int i = 0; i < parsed.size(); i++) {
+            metaData.put(parsed.get(i), parsedMetaData.get(i));
+        }
+
+        List<MediaFile> result = new ArrayList<MediaFile>(files.size());
+        for (File file : files) {
+            Future<MetaData> fileMetaData = metaData.get(file);
+            MediaFile mediaFile = fileMetaData == null ? createMediaFile(file)
+                    : createMediaFile(file, metaDataParserPool.get(fileMetaData, file));
+            updateMediaFile(mediaFile);
+            result.add(mediaFile);
+        }
+        return result;
     }
 
     public boolean includeMediaFile(MediaFile candidate) {
@@ -471,6 +608,22 @@ public class MediaFileService {
     }
 
     private MediaFile createMediaFile(File file) {
+        MetaData metaData = null;
+        if (file.isFile()) {
+            MetaDataParser parser = metaDataParserFactory.getParser(file);
+            if (parser != null) {
+                metaData = metaDataCache.getMetaData(parser, file);
+            }
+        }
+        return createMediaFile(file, metaData);
+    }
+
+    /**
+     * Creates a media file for the given file.
+     *
+     * @param metaData The meta data of the file, if it is a file, or <code>null</code> if it has no applicable parser.
+     */
+    private MediaFile createMediaFile(File file, MetaData metaData) {
 
         MediaFile existingFile = mediaFileDao.getMediaFile(file.getPath());
 
@@ -491,9 +644,7 @@ public class MediaFileService {
 
         if (file.isFile()) {
 
-            MetaDataParser parser = metaDataParserFactory.getParser(file);
-            if (parser != null) {
-                MetaData metaData = parser.getMetaData(file);
+            if (metaData != null) {
                 mediaFile.setArtist(metaData.getArtist());
                 mediaFile.setAlbumArtist(metaData.getAlbumArtist());
                 mediaFile.setAlbumName(metaData.getAlbumName());
@@ -534,11 +685,11 @@ public class MediaFileService {
                     // Guess artist/album name, year and genre.
                     MetaDataParser parser = metaDataParserFactory.getParser(firstChild);
                     if (parser != null) {
-                        MetaData metaData = parser.getMetaData(firstChild);
-                        mediaFile.setArtist(metaData.getAlbumArtist());
-                        mediaFile.setAlbumName(metaData.getAlbumName());
-                        mediaFile.setYear(metaData.getYear());
-                        mediaFile.setGenre(metaData.getGenre());
+                        MetaData firstChildMetaData = metaDataCache.getMetaData(parser, firstChild);
+                        mediaFile.setArtist(firstChildMetaData.getAlbumArtist());
+                        mediaFile.setAlbumName(firstChildMetaData.getAlbumName());
+                        mediaFile.setYear(firstChildMetaData.getYear());
+                        mediaFile.setGenre(firstChildMetaData.getGenre());
                     }
 
                     // Look for cover art.
@@ -572,30 +723,37 @@ public class MediaFileService {
     }
 
     public void refreshMediaFile(MediaFile mediaFile) {
-        mediaFile = createMediaFile(mediaFile.getFile());
-        mediaFileDao.createOrUpdateMediaFile(mediaFile);
-        mediaFileMemoryCache.remove(mediaFile.getFile());
+        removeFromMemoryCache(mediaFile);
+        updateMediaFile(createMediaFile(mediaFile.getFile()));
     }
 
-    private void putInMemoryCache(File file, MediaFile mediaFile) {
-        if (memoryCacheEnabled) {
-            mediaFileMemoryCache.put(new Element(file, mediaFile));
-        }
+    /**
+     * Caches the given media file, as read from the database, by both path and id. Cached media
+     * files are kept until they are updated through this service or evicted. The cache holds its own
+     * copy, and hands out copies, since callers populate per-user state such as the starred date.
+     */
+    private void putInMemoryCache(MediaFile mediaFile) {
+        MediaFile copy = new MediaFile(mediaFile);
+        copy.setStarredDate(null);
+        mediaFileMemoryCache.put(new Element(copy.getFile(), copy));
+        mediaFileMemoryCache.put(new Element(copy.getId(), copy));
     }
 
-    private MediaFile getFromMemoryCache(File file) {
-        if (!memoryCacheEnabled) {
-            return null;
-        }
-        Element element = mediaFileMemoryCache.get(file);
-        return element == null ? null : (MediaFile) element.getObjectValue();
+    private MediaFile getFromMemoryCache(Object key) {
+        Element element = mediaFileMemoryCache.get(key);
+        return element == null ? null : new MediaFile((MediaFile) element.getObjectValue());
     }
 
-    public void setMemoryCacheEnabled(boolean memoryCacheEnabled) {
-        this.memoryCacheEnabled = memoryCacheEnabled;
-        if (!memoryCacheEnabled) {
-            mediaFileMemoryCache.removeAll();
-        }
+    private void removeFromMemoryCache(MediaFile mediaFile) {
+        mediaFileMemoryCache.remove(mediaFile.getFile());
+        mediaFileMemoryCache.remove(mediaFile.getId());
+    }
+
+    /**
+     * Returns hit and miss counts for the media file memory cache.
+     */
+    public Statistics getMemoryCacheStatistics() {
+        return mediaFileMemoryCache.getStatistics();
     }
 
     /**
@@ -642,6 +800,10 @@ public class MediaFileService {
         this.mediaFileMemoryCache = mediaFileMemoryCache;
     }
 
+    public void setUpnpItemCache(Ehcache upnpItemCache) {
+        this.upnpItemCache = upnpItemCache;
+    }
+
     public void setMediaFileDao(MediaFileDao mediaFileDao) {
         this.mediaFileDao = mediaFileDao;
     }
@@ -675,8 +837,51 @@ public class MediaFileService {
         this.metaDataParserFactory = metaDataParserFactory;
     }
 
+    public void setMetaDataParserPool(MetaDataParserPool metaDataParserPool) {
+        this.metaDataParserPool = metaDataParserPool;
+    }
+
+    public void setMetaDataCache(MetaDataCache metaDataCache) {
+        this.metaDataCache = metaDataCache;
+    }
+
+    public void setIndexManager(IndexManager indexManager) {
+        this.indexManager = indexManager;
+    }
+
+    public void setStarRatingCache(StarRatingCache starRatingCache) {
+        this.starRatingCache = starRatingCache;
+    }
+
+    /**
+     * Stores the given media file, and updates it in the search index and the UPnP item cache.
+     */
     public void updateMediaFile(MediaFile mediaFile) {
+        storeMediaFile(mediaFile);
+        upnpItemCache.remove(mediaFile.getId());
+        indexManager.update(mediaFile);
+    }
+
+    private void storeMediaFile(MediaFile mediaFile) {
         mediaFileDao.createOrUpdateMediaFile(mediaFile);
+        removeFromMemoryCache(mediaFile);
+    }
+
+    /**
+     * Marks the media file of the given file as no longer present, for instance because the file
+     * was deleted, and removes it from the search index.
+     */
+    public void deleteMediaFile(File file) {
+        MediaFile mediaFile = mediaFileDao.getMediaFile(file.getPath());
+        if (mediaFile != null) {
+            deleteMediaFile(mediaFile);
+        }
+    }
+
+    private void deleteMediaFile(MediaFile mediaFile) {
+        mediaFileDao.deleteMediaFile(mediaFile.getPath());
+        removeFromMemoryCache(mediaFile);
+        indexManager.delete(mediaFile);
     }
 
     /**
@@ -687,13 +892,14 @@ public class MediaFileService {
         Date now = new Date();
         file.setLastPlayed(now);
         file.setPlayCount(file.getPlayCount() + 1);
-        updateMediaFile(file);
+        // Play statistics are not in the search index, so it need not be updated.
+        storeMediaFile(file);
 
         MediaFile parent = getParentOf(file);
         if (!isRoot(parent)) {
             parent.setLastPlayed(now);
             parent.setPlayCount(parent.getPlayCount() + 1);
-            updateMediaFile(parent);
+            storeMediaFile(parent);
         }
 
         Album album = albumDao.getAlbum(file.getAlbumArtist(), file.getAlbumName());
@@ -19,11 +19,14 @@
  */
 package org.airsonic.player.service;
 
+import com.google.common.util.concurrent.Striped;
 import org.airsonic.player.dao.AlbumDao;
 import org.airsonic.player.dao.ArtistDao;
 import org.airsonic.player.dao.MediaFileDao;
+import org.airsonic.player.dao.ScanManifestDao;
 import org.airsonic.player.domain.*;
 import org.airsonic.player.service.search.IndexManager;
+import org.airsonic.player.util.FileUtil;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.slf4j.Logger;
@@ -37,9 +40,18 @@ import java.io.File;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 /**
  * Provides services for scanning the music library.
@@ -51,7 +63,18 @@ public class MediaScannerService {
 
     private static final Logger LOG = LoggerFactory.getLogger(MediaScannerService.class);
 
-    private boolean scanning;
+    /**
+     * Number of media files or artists to collect before marking them present in one batched update.
+     */
+    private static final int PRESENCE_BATCH_SIZE = 1000;
+
+    private volatile boolean scanning;
+
+    // Held while a scan or updateDirectories changes the media library, so that they don't run at the same time.
+    private final Lock updateLock = new ReentrantLock();
+
+    // When the media library was last changed by a scan or by updateDirectories.
+    private volatile long lastUpdated;
 
     private ScheduledExecutorService scheduler;
 
@@ -69,7 +92,13 @@ public class MediaScannerService {
     private ArtistDao artistDao;
     @Autowired
     private AlbumDao albumDao;
-    private int scanCount;
+    @Autowired
+    private ScanManifestDao scanManifestDao;
+    private final AtomicInteger scanCount = new AtomicInteger();
+
+    // Serializes album and artist updates when scanning in parallel. Keyed by album and artist name, respectively.
+    private final Striped<Lock> albumLocks = Striped.lock(64);
+    private final Striped<Lock> artistLocks = Striped.lock(64);
 
     @PostConstruct
     public void init() {
@@ -124,15 +153,23 @@ public class MediaScannerService {
     /**
      * Returns whether the media library is currently being scanned.
      */
-    public synchronized boolean isScanning() {
+    public boolean isScanning() {
         return scanning;
     }
 
+    /**
+     * Returns when the media library was last changed by a scan or by {@link #updateDirectories}, or zero
+     * if it hasn't been changed since startup.
+     */
+    public long getLastUpdated() {
+        return lastUpdated;
+    }
+
     /**
      * Returns the number of files scanned so far.
      */
     public int getScanCount() {
-        return scanCount;
+        return scanCount.get();
     }
 
     /**
@@ -148,7 +185,12 @@ public class MediaScannerService {
         Thread thread = new Thread("MediaLibraryScanner") {
             @Override
             public void run() {
-                doScanLibrary();
+                updateLock.lock();
+                try {
+                    doScanLibrary();
+                } finally {
+                    updateLock.unlock();
+                }
                 playlistService.importPlaylists();
                 mediaFileDao.checkpoint();
             }
@@ -158,6 +200,119 @@ public class MediaScannerService {
         thread.start();
     }
 
+    /**
+     * Applies changes to the given directories to the media library, without scanning the whole library.
+     * New and modified files are stored and indexed, deleted files are marked non-present, and the albums
+     * and artists of the files in the directories are updated. Changes deeper down are not picked up, so
+     * new subdirectories must be included explicitly.
+     *
+     * @param directories The changed directories, parents before children.
+     * @return Whether the changes were applied, or false if a scan is in progress and they must be retried later.
+     */
+    public boolean updateDirectories(Collection<File> directories) {
+        if (scanning || !updateLock.tryLock()) {
+            return false;
+        }
+        try {
+            return doUpdateDirectories(directories);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    private boolean doUpdateDirectories(Collection<File> directories) {
+        MediaLibraryStatistics statistics = indexManager.getStatistics();
+        if (statistics == null) {
+            LOG.debug("Media library never scanned. Ignoring changes to {} directories.", directories.size());
+            return true;
+        }
+
+        Date lastScanned = DateUtils.truncate(new Date(), Calendar.SECOND);
+        indexManager.startIndexing();
+        try {
+            for (File directory : directories) {
+                updateDirectory(directory, lastScanned);
+            }
+            indexManager.expunge();
+        } catch (Throwable x) {
+            LOG.error("Failed to update media library.", x);
+        } finally {
+            indexManager.stopIndexing(statistics);
+            lastUpdated = System.currentTimeMillis();
+        }
+        return true;
+    }
+
+    private void updateDirectory(File directory, Date lastScanned) {
+        MusicFolder musicFolder = null;
+        boolean isPodcast = false;
+        for (MusicFolder candidate : settingsService.getAllMusicFolders()) {
+            if (directory.toPath().startsWith(candidate.getPath().toPath())) {
+                musicFolder = candidate;
+            }
+        }
+        File podcastFolder = new File(settingsService.getPodcastFolder());
+        if (musicFolder == null && directory.toPath().startsWith(podcastFolder.toPath())) {
+            musicFolder = new MusicFolder(podcastFolder, null, true, null);
+            isPodcast = true;
+        }
+        if (musicFolder == null) {
+            LOG.debug("Ignoring changes to {}, which is not in a music folder.", directory);
+            return;
+        }
+
+        // If the directory itself was deleted, update its nearest existing ancestor.
+        while (!FileUtil.exists(directory) && !directory.equals(musicFolder.getPath())) {
+            directory = directory.getParentFile();
+        }
+
+        MediaFile parent = mediaFileService.getMediaFile(directory, false);
+        if (parent == null || !parent.isDirectory()) {
+            return;
+        }
+        LOG.debug("Updating media library directory {}", parent.getPath());
+
+        // Re-read the directory, in case a stale copy was cached before it changed.
+        mediaFileService.refreshMediaFile(parent);
+        parent = mediaFileService.getMediaFile(directory, false);
+        updateFolder(parent, musicFolder);
+        indexManager.index(parent);
+
+        List<MediaFile> files = mediaFileService.getChildrenOf(parent, true, false, false, false);
+        for (MediaFile file : files) {
+            updateFolder(file, musicFolder);
+            indexManager.index(file);
+        }
+        if (isPodcast) {
+            return;
+        }
+
+        // The albums are recounted from the files in the directory.
+        Map<String, Integer> albumCount = new HashMap<String, Integer>();
+        for (List<MediaFile> tracks : groupByAlbum(files)) {
+            updateAlbum(tracks, musicFolder, lastScanned, albumCount);
+        }
+
+        List<MusicFolder> musicFolders = settingsService.getAllMusicFolders();
+        for (MediaFile file : getFirstFilePerArtist(files)) {
+            albumCount.put(file.getAlbumArtist(), albumDao.getAlbumsForArtist(file.getAlbumArtist(), musicFolders).size());
+            updateArtist(file, musicFolder, lastScanned, albumCount);
+        }
+    }
+
+    /**
+     * Returns whether the next scan may skip directories that are unchanged since the previous scan.
+     * A full scan is done if the library was never scanned, or if the settings have changed since the
+     * previous scan (for instance the music file types or the exclude pattern).
+     */
+    private boolean isIncrementalScanPossible() {
+        if (!settingsService.isIncrementalScanEnabled() || settingsService.isIgnoreFileTimestamps()) {
+            return false;
+        }
+        MediaLibraryStatistics previousScan = indexManager.getStatistics();
+        return previousScan != null && settingsService.getSettingsChanged() < previousScan.getScanDate().getTime();
+    }
+
     private void doScanLibrary() {
         LOG.info("Starting to scan media library.");
         MediaLibraryStatistics statistics = new MediaLibraryStatistics(
@@ -166,31 +321,37 @@ public class MediaScannerService {
 
         try {
 
-            // Maps from artist name to album count.
-            Map<String, Integer> albumCount = new HashMap<String, Integer>();
-            Genres genres = new Genres();
+            Map<String, ScanManifestEntry> previousManifest = new HashMap<String, ScanManifestEntry>();
+            if (isIncrementalScanPossible()) {
+                LOG.info("Scanning media library incrementally.");
+                scanManifestDao.getEntries().forEach(entry -> previousManifest.put(entry.getPath(), entry));
+            }
+            ScanContext context = new ScanContext(statistics, previousManifest);
 
-            scanCount = 0;
+            scanCount.set(0);
 
-            mediaFileService.setMemoryCacheEnabled(false);
             indexManager.startIndexing();
 
-            mediaFileService.clearMemoryCache();
-
-            // Recurse through all files on disk.
-            for (MusicFolder musicFolder : settingsService.getAllMusicFolders()) {
-                MediaFile root = mediaFileService.getMediaFile(musicFolder.getPath(), false);
-                scanFile(root, musicFolder, statistics, albumCount, genres, false);
-            }
-
-            // Scan podcast folder.
-            File podcastFolder = new File(settingsService.getPodcastFolder());
-            if (podcastFolder.exists()) {
-                scanFile(mediaFileService.getMediaFile(podcastFolder), new MusicFolder(podcastFolder, null, true, null),
-                         statistics, albumCount, genres, true);
+            int parallelism = settingsService.getScanParallelism();
+            if (parallelism > 1) {
+                LOG.info("Scanning media library using {} threads.", parallelism);
+                ForkJoinPool pool = new ForkJoinPool(parallelism, MediaScannerService::createScanThread, null, false);
+                try {
+                    pool.invoke(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            scanAllFolders(context);
+                        }
+                    });
+                } finally {
+                    pool.shutdown();
+                }
+            } else {
+                scanAllFolders(context);
             }
+            context.flushPresent();
 
-            LOG.info("Scanned media library with " + scanCount + " entries.");
+            LOG.info("Scanned media library with " + scanCount.get() + " entries.");
 
             LOG.info("Marking non-present files.");
             mediaFileDao.markNonPresent(statistics.getScanDate());
@@ -200,66 +361,198 @@ public class MediaScannerService {
             albumDao.markNonPresent(statistics.getScanDate());
 
             // Update statistics
-            statistics.incrementArtists(albumCount.size());
-            for (Integer albums : albumCount.values()) {
+            statistics.incrementArtists(context.albumCount.size());
+            for (Integer albums : context.albumCount.values()) {
                 statistics.incrementAlbums(albums);
             }
 
             // Update genres
-            mediaFileDao.updateGenres(genres.getGenres());
+            mediaFileDao.updateGenres(context.genres.getGenres());
+
+            // Update the manifest used by the next incremental scan.
+            scanManifestDao.replaceEntries(context.manifest.values());
 
             LOG.info("Completed media library scan.");
 
         } catch (Throwable x) {
             LOG.error("Failed to scan media library.", x);
         } finally {
-            mediaFileService.setMemoryCacheEnabled(true);
             indexManager.stopIndexing(statistics);
+            // The presence of media files was updated in bulk, bypassing the memory cache.
+            mediaFileService.clearMemoryCache();
+            lastUpdated = System.currentTimeMillis();
             scanning = false;
         }
     }
 
-    private void scanFile(MediaFile file, MusicFolder musicFolder, MediaLibraryStatistics statistics,
-                          Map<String, Integer> albumCount, Genres genres, boolean isPodcast) {
-        scanCount++;
-        if (scanCount % 250 == 0) {
-            LOG.info("Scanned media library with " + scanCount + " entries.");
+    private static ForkJoinWorkerThread createScanThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("MediaLibraryScanner-" + thread.getPoolIndex());
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }
+
+    private void scanAllFolders(ScanContext context) {
+
+        // Recurse through all files on disk.
+        for (MusicFolder musicFolder : settingsService.getAllMusicFolders()) {
+            MediaFile root = mediaFileService.getMediaFile(musicFolder.getPath(), false);
+            scanFile(root, musicFolder, context, false);
+        }
+
+        // Scan podcast folder.
+        File podcastFolder = new File(settingsService.getPodcastFolder());
+        if (podcastFolder.exists()) {
+            scanFile(mediaFileService.getMediaFile(podcastFolder), new MusicFolder(podcastFolder, null, true, null),
+                     context, true);
         }
+    }
+
+    private void scanFile(MediaFile file, MusicFolder musicFolder, ScanContext context, boolean isPodcast) {
+        incrementScanCount();
 
         LOG.trace("Scanning file {}", file.getPath());
 
-        // Update the root folder if it has changed.
-        if (!musicFolder.getPath().getPath().equals(file.getFolder())) {
-            file.setFolder(musicFolder.getPath().getPath());
-            mediaFileDao.createOrUpdateMediaFile(file);
-        }
+        updateFolder(file, musicFolder);
 
         indexManager.index(file);
 
         if (file.isDirectory()) {
-            for (MediaFile child : mediaFileService.getChildrenOf(file, true, false, false, false)) {
-                scanFile(child, musicFolder, statistics, albumCount, genres, isPodcast);
-            }
-            for (MediaFile child : mediaFileService.getChildrenOf(file, false, true, false, false)) {
-                scanFile(child, musicFolder, statistics, albumCount, genres, isPodcast);
+            scanDirectory(file, musicFolder, context, isPodcast);
+        } else if (!isPodcast) {
+            updateAlbum(file, musicFolder, context.getScanDate(), context.albumCount);
+            updateArtist(file, musicFolder, context.getScanDate(), context.albumCount);
+        }
+
+        addToStatistics(file, context);
+    }
+
+    private void scanDirectory(MediaFile directory, MusicFolder musicFolder, ScanContext context, boolean isPodcast) {
+        File dir = directory.getFile();
+        ScanManifestEntry manifestEntry = new ScanManifestEntry(directory.getPath(), FileUtil.lastModified(dir),
+                                                                FileUtil.listFiles(dir).length);
+
+        List<MediaFile> storedChildren = null;
+        if (manifestEntry.equals(context.previousManifest.get(directory.getPath()))) {
+            storedChildren = mediaFileDao.getChildrenOf(directory.getPath());
+        }
+
+        List<MediaFile> directories;
+        if (storedChildren != null && storedChildren.stream().allMatch(child -> child.getVersion() >= MediaFileDao.VERSION)) {
+            // Unchanged since the previous scan, so use the children from the database rather than from disk.
+            // Subdirectories are still visited, since changes deeper down do not affect this directory.
+            LOG.trace("Skipping unchanged directory {}", directory.getPath());
+            scanUnchangedFiles(storedChildren.stream().filter(MediaFile::isFile).collect(Collectors.toList()),
+                               musicFolder, context, isPodcast);
+            directories = storedChildren.stream()
+                    .filter(MediaFile::isDirectory)
+                    .map(child -> mediaFileService.getMediaFile(child.getFile(), false))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        } else {
+            for (MediaFile child : mediaFileService.getChildrenOf(directory, true, false, false, false)) {
+                scanFile(child, musicFolder, context, isPodcast);
             }
+            directories = mediaFileService.getChildrenOf(directory, false, true, false, false);
+        }
+
+        if (ForkJoinTask.inForkJoinPool()) {
+            // Parallel scan: fan the subdirectories out to the scan pool and wait for them to complete.
+            ForkJoinTask.invokeAll(directories.stream()
+                    .map(child -> new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            scanFile(child, musicFolder, context, isPodcast);
+                        }
+                    })
+                    .collect(Collectors.toList()));
         } else {
-            if (!isPodcast) {
-                updateAlbum(file, musicFolder, statistics.getScanDate(), albumCount);
-                updateArtist(file, musicFolder, statistics.getScanDate(), albumCount);
+            for (MediaFile child : directories) {
+                scanFile(child, musicFolder, context, isPodcast);
+            }
+        }
+
+        context.manifest.put(directory.getPath(), manifestEntry);
+    }
+
+    /**
+     * Accounts for the files of a directory that is unchanged since the previous scan, without reading
+     * them from disk or re-indexing them. Albums and artists are updated once per directory rather than
+     * once per file.
+     */
+    private void scanUnchangedFiles(List<MediaFile> files, MusicFolder musicFolder, ScanContext context, boolean isPodcast) {
+        if (!isPodcast) {
+            for (List<MediaFile> tracks : groupByAlbum(files)) {
+                updateAlbum(tracks, musicFolder, context.getScanDate(), context.albumCount);
             }
-            statistics.incrementSongs(1);
+
+            for (MediaFile file : getFirstFilePerArtist(files)) {
+                updateArtist(file, musicFolder, context.getScanDate(), context.albumCount);
+            }
+        }
+
+        for (MediaFile file : files) {
+            incrementScanCount();
+            updateFolder(file, musicFolder);
+            addToStatistics(file, context);
+        }
+    }
+
+    /**
+     * Groups the album tracks among the given files by album, as expected by
+     * {@link #updateAlbum(List, MusicFolder, Date, Map)}.
+     */
+    private Collection<List<MediaFile>> groupByAlbum(List<MediaFile> files) {
+        return files.stream()
+                .filter(this::isAlbumTrack)
+                .collect(Collectors.groupingBy(file -> Arrays.asList(file.getAlbumName(), getAlbumArtist(file), file.getArtist()),
+                                               LinkedHashMap::new, Collectors.toList()))
+                .values();
+    }
+
+    /**
+     * Returns the first audio file of each album artist among the given files.
+     */
+    private static Collection<MediaFile> getFirstFilePerArtist(List<MediaFile> files) {
+        Map<String, MediaFile> artists = new LinkedHashMap<String, MediaFile>();
+        for (MediaFile file : files) {
+            if (file.getAlbumArtist() != null && file.isAudio()) {
+                artists.putIfAbsent(file.getAlbumArtist(), file);
+            }
+        }
+        return artists.values();
+    }
+
+    private void incrementScanCount() {
+        int count = scanCount.incrementAndGet();
+        if (count % 250 == 0) {
+            LOG.info("Scanned media library with " + count + " entries.");
+        }
+    }
+
+    /**
+     * Updates the root folder of the given file if it has changed.
+     */
+    private void updateFolder(MediaFile file, MusicFolder musicFolder) {
+        if (!musicFolder.getPath().getPath().equals(file.getFolder())) {
+            file.setFolder(musicFolder.getPath().getPath());
+            mediaFileService.updateMediaFile(file);
+        }
+    }
+
+    private void addToStatistics(MediaFile file, ScanContext context) {
+        if (file.isFile()) {
+            context.statistics.incrementSongs(1);
         }
 
-        updateGenres(file, genres);
-        mediaFileDao.markPresent(file.getPath(), statistics.getScanDate());
-        artistDao.markPresent(file.getAlbumArtist(), statistics.getScanDate());
+        updateGenres(file, context.genres);
+        context.markPresent(file);
 
         if (file.getDurationSeconds() != null) {
-            statistics.incrementTotalDurationInSeconds(file.getDurationSeconds());
+            context.statistics.incrementTotalDurationInSeconds(file.getDurationSeconds());
         }
         if (file.getFileSize() != null) {
-            statistics.incrementTotalLengthInBytes(file.getFileSize());
+            context.statistics.incrementTotalLengthInBytes(file.getFileSize());
         }
     }
 
@@ -276,58 +569,85 @@ public class MediaScannerService {
     }
 
     private void updateAlbum(MediaFile file, MusicFolder musicFolder, Date lastScanned, Map<String, Integer> albumCount) {
-        String artist = file.getAlbumArtist() != null ? file.getAlbumArtist() : file.getArtist();
-        if (file.getAlbumName() == null || artist == null || file.getParentPath() == null || !file.isAudio()) {
-            return;
+        if (isAlbumTrack(file)) {
+            updateAlbum(Collections.singletonList(file), musicFolder, lastScanned, albumCount);
         }
+    }
 
-        Album album = albumDao.getAlbumForFile(file);
-        if (album == null) {
-            album = new Album();
-            album.setPath(file.getParentPath());
-            album.setName(file.getAlbumName());
-            album.setArtist(artist);
-            album.setCreated(file.getChanged());
-        }
-        if (file.getMusicBrainzReleaseId() != null) {
-            album.setMusicBrainzReleaseId(file.getMusicBrainzReleaseId());
-        }
-        if (file.getYear() != null) {
-            album.setYear(file.getYear());
-        }
-        if (file.getGenre() != null) {
-            album.setGenre(file.getGenre());
-        }
-        MediaFile parent = mediaFileService.getParentOf(file);
-        if (parent != null && parent.getCoverArtPath() != null) {
-            album.setCoverArtPath(parent.getCoverArtPath());
-        }
+    private boolean isAlbumTrack(MediaFile file) {
+        return file.getAlbumName() != null && getAlbumArtist(file) != null && file.getParentPath() != null && file.isAudio();
+    }
 
-        boolean firstEncounter = !lastScanned.equals(album.getLastScanned());
-        if (firstEncounter) {
-            album.setFolderId(musicFolder.getId());
-            album.setDurationSeconds(0);
-            album.setSongCount(0);
-            Integer n = albumCount.get(artist);
-            albumCount.put(artist, n == null ? 1 : n + 1);
-        }
-        if (file.getDurationSeconds() != null) {
-            album.setDurationSeconds(album.getDurationSeconds() + file.getDurationSeconds());
-        }
-        if (file.isAudio()) {
-            album.setSongCount(album.getSongCount() + 1);
-        }
-        album.setLastScanned(lastScanned);
-        album.setPresent(true);
-        albumDao.createOrUpdateAlbum(album);
-        if (firstEncounter) {
-            indexManager.index(album);
-        }
+    private static String getAlbumArtist(MediaFile file) {
+        return file.getAlbumArtist() != null ? file.getAlbumArtist() : file.getArtist();
+    }
 
-        // Update the file's album artist, if necessary.
-        if (!ObjectUtils.equals(album.getArtist(), file.getAlbumArtist())) {
-            file.setAlbumArtist(album.getArtist());
-            mediaFileDao.createOrUpdateMediaFile(file);
+    /**
+     * Updates the album of the given files, which must all be in the same directory, and have the
+     * same album name, album artist and artist.
+     */
+    private void updateAlbum(List<MediaFile> files, MusicFolder musicFolder, Date lastScanned, Map<String, Integer> albumCount) {
+        MediaFile file = files.get(0);
+        String artist = getAlbumArtist(file);
+
+        Lock lock = albumLocks.get(file.getAlbumName());
+        lock.lock();
+        try {
+            Album album = albumDao.getAlbumForFile(file);
+            if (album == null) {
+                album = new Album();
+                album.setPath(file.getParentPath());
+                album.setName(file.getAlbumName());
+                album.setArtist(artist);
+                album.setCreated(file.getChanged());
+            }
+            for (MediaFile track : files) {
+                if (track.getMusicBrainzReleaseId() != null) {
+                    album.setMusicBrainzReleaseId(track.getMusicBrainzReleaseId());
+                }
+                if (track.getYear() != null) {
+                    album.setYear(track.getYear());
+                }
+                if (track.getGenre() != null) {
+                    album.setGenre(track.getGenre());
+                }
+            }
+            MediaFile parent = mediaFileService.getParentOf(file);
+            if (parent != null && parent.getCoverArtPath() != null) {
+                album.setCoverArtPath(parent.getCoverArtPath());
+            }
+
+            boolean firstEncounter = !lastScanned.equals(album.getLastScanned());
+            if (firstEncounter) {
+                album.setFolderId(musicFolder.getId());
+                album.setDurationSeconds(0);
+                album.setSongCount(0);
+                albumCount.merge(artist, 1, Integer::sum);
+            }
+            for (MediaFile track : files) {
+                if (track.getDurationSeconds() != null) {
+                    album.setDurationSeconds(album.getDurationSeconds() + track.getDurationSeconds());
+                }
+                if (track.isAudio()) {
+                    album.setSongCount(album.getSongCount() + 1);
+                }
+            }
+            album.setLastScanned(lastScanned);
+            album.setPresent(true);
+            albumDao.createOrUpdateAlbum(album);
+            if (firstEncounter) {
+                indexManager.index(album);
+            }
+
+            // Update the files' album artist, if necessary.
+            for (MediaFile track : files) {
+                if (!ObjectUtils.equals(album.getArtist(), track.getAlbumArtist())) {
+                    track.setAlbumArtist(album.getArtist());
+                    mediaFileService.updateMediaFile(track);
+                }
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -336,31 +656,84 @@ public class MediaScannerService {
             return;
         }
 
-        Artist artist = artistDao.getArtist(file.getAlbumArtist());
-        if (artist == null) {
-            artist = new Artist();
-            artist.setName(file.getAlbumArtist());
-        }
-        if (artist.getCoverArtPath() == null) {
-            MediaFile parent = mediaFileService.getParentOf(file);
-            if (parent != null) {
-                artist.setCoverArtPath(parent.getCoverArtPath());
+        // The album count must be read and written under the same lock, so that the last update wins.
+        Lock lock = artistLocks.get(file.getAlbumArtist());
+        lock.lock();
+        try {
+            Artist artist = artistDao.getArtist(file.getAlbumArtist());
+            if (artist == null) {
+                artist = new Artist();
+                artist.setName(file.getAlbumArtist());
+            }
+            if (artist.getCoverArtPath() == null) {
+                MediaFile parent = mediaFileService.getParentOf(file);
+                if (parent != null) {
+                    artist.setCoverArtPath(parent.getCoverArtPath());
+                }
+            }
+            boolean firstEncounter = !lastScanned.equals(artist.getLastScanned());
+
+            if (firstEncounter) {
+                artist.setFolderId(musicFolder.getId());
             }
+            Integer n = albumCount.get(artist.getName());
+            artist.setAlbumCount(n == null ? 0 : n);
+
+            artist.setLastScanned(lastScanned);
+            artist.setPresent(true);
+            artistDao.createOrUpdateArtist(artist);
+
+            if (firstEncounter) {
+                indexManager.index(artist, musicFolder);
+            }
+        } finally {
+            lock.unlock();
         }
-        boolean firstEncounter = !lastScanned.equals(artist.getLastScanned());
+    }
 
-        if (firstEncounter) {
-            artist.setFolderId(musicFolder.getId());
+    /**
+     * State shared by all threads taking part in one media library scan.
+     */
+    private class ScanContext {
+
+        private final MediaLibraryStatistics statistics;
+
+        // Maps from artist name to album count.
+        private final Map<String, Integer> albumCount = new ConcurrentHashMap<String, Integer>();
+        private final Genres genres = new Genres();
+
+        // The directory manifest of the previous scan (empty unless scanning incrementally), and of this scan.
+        private final Map<String, ScanManifestEntry> previousManifest;
+        private final Map<String, ScanManifestEntry> manifest = new ConcurrentHashMap<String, ScanManifestEntry>();
+
+        // Media files and artists to mark present in the next batch.
+        private final Set<String> presentPaths = new HashSet<String>();
+        private final Set<String> presentArtists = new HashSet<String>();
+
+        ScanContext(MediaLibraryStatistics statistics, Map<String, ScanManifestEntry> previousManifest) {
+            this.statistics = statistics;
+            this.previousManifest = previousManifest;
         }
-        Integer n = albumCount.get(artist.getName());
-        artist.setAlbumCount(n == null ? 0 : n);
 
-        artist.setLastScanned(lastScanned);
-        artist.setPresent(true);
-        artistDao.createOrUpdateArtist(artist);
+        Date getScanDate() {
+            return statistics.getScanDate();
+        }
+
+        synchronized void markPresent(MediaFile file) {
+            presentPaths.add(file.getPath());
+            if (file.getAlbumArtist() != null) {
+                presentArtists.add(file.getAlbumArtist());
+            }
+            if (presentPaths.size() >= PRESENCE_BATCH_SIZE || presentArtists.size() >= PRESENCE_BATCH_SIZE) {
+                flushPresent();
+            }
+        }
 
-        if (firstEncounter) {
-            indexManager.index(artist, musicFolder);
+        synchronized void flushPresent() {
+            mediaFileDao.markPresent(presentPaths, getScanDate());
+            artistDao.markPresent(presentArtists, getScanDate());
+            presentPaths.clear();
+            presentArtists.clear();
         }
     }
 
@@ -29,6 +29,8 @@ import java.io.File;
 import java.io.Serializable;
 import java.text.Collator;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * Provides services for grouping artists by index.
@@ -42,6 +44,11 @@ public class MusicIndexService {
     private SettingsService settingsService;
     @Autowired
     private MediaFileService mediaFileService;
+    @Autowired
+    private MediaScannerService mediaScannerService;
+
+    // Music folder content per user and set of music folders, see getMusicFolderContent(List, String, long).
+    private final Map<String, CachedMusicFolderContent> musicFolderContentCache = new ConcurrentHashMap<String, CachedMusicFolderContent>();
 
     /**
      * Returns a map from music indexes to sorted lists of artists that are direct children of the given music folders.
@@ -66,6 +73,34 @@ public class MusicIndexService {
         return new MusicFolderContent(indexedArtists, singleSongs);
     }
 
+    /**
+     * Returns the content of the given music folders, as seen by the given user. The content is built once and
+     * then reused until the media library is scanned or the given last-modified time changes, so callers must not
+     * modify it.
+     *
+     * @param musicFoldersToUse The music folders.
+     * @param username          The user, used to tell apart the cached content of different users.
+     * @param lastModified      When the music folders or the settings affecting the content were last changed,
+     *                          or a negative value to bypass the cache (for instance while scanning).
+     * @return The music folder content.
+     */
+    public MusicFolderContent getMusicFolderContent(List<MusicFolder> musicFoldersToUse, String username, long lastModified) {
+        if (lastModified < 0) {
+            return getMusicFolderContent(musicFoldersToUse, false);
+        }
+
+        String key = username + ":" + musicFoldersToUse.stream().map(folder -> String.valueOf(folder.getId())).collect(Collectors.joining(","));
+        long lastUpdated = mediaScannerService.getLastUpdated();
+        CachedMusicFolderContent cached = musicFolderContentCache.get(key);
+        if (cached != null && cached.lastModified == lastModified && cached.lastUpdated == lastUpdated) {
+            return cached.content;
+        }
+
+        MusicFolderContent content = getMusicFolderContent(musicFoldersToUse, false);
+        musicFolderContentCache.put(key, new CachedMusicFolderContent(content, lastModified, lastUpdated));
+        return content;
+    }
+
     private List<MediaFile> getSingleSongs(List<MusicFolder> folders, boolean refresh) {
         List<MediaFile> result = new ArrayList<MediaFile>();
         for (MusicFolder folder : folders) {
@@ -240,6 +275,23 @@ public class MusicIndexService {
         this.mediaFileService = mediaFileService;
     }
 
+    public void setMediaScannerService(MediaScannerService mediaScannerService) {
+        this.mediaScannerService = mediaScannerService;
+    }
+
+    private static class CachedMusicFolderContent {
+
+        private final MusicFolderContent content;
+        private final long lastModified;
+        private final long lastUpdated;
+
+        CachedMusicFolderContent(MusicFolderContent content, long lastModified, long lastUpdated) {
+            this.content = content;
+            this.lastModified = lastModified;
+            this.lastUpdated = lastUpdated;
+        }
+    }
+
     private static class MusicIndexComparator implements Comparator<MusicIndex>, Serializable {
 
         private List<MusicIndex> indexes;
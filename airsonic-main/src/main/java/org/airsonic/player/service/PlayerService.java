@@ -19,6 +19,7 @@
  */
 package org.airsonic.player.service;
 
+import com.google.common.util.concurrent.Striped;
 import org.airsonic.player.dao.PlayerDao;
 import org.airsonic.player.domain.Player;
 import org.airsonic.player.domain.Transcoding;
@@ -27,22 +28,36 @@ import org.airsonic.player.domain.User;
 import org.airsonic.player.util.StringUtil;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.ServletRequestUtils;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
 
 /**
  * Provides services for maintaining the set of players.
+ * <p/>
+ * All players are kept in memory, indexed by ID, by IP address and by username and client ID, so that
+ * the player of a request is found without querying the database. The players in memory are never modified,
+ * but replaced with modified copies, and callers are only given copies of them. The IP address, user agent
+ * and time last seen, which are updated by most requests, are written to the database periodically. Other
+ * changes are written immediately.
  *
  * @author Sindre Mehus
  * @see Player
@@ -51,8 +66,11 @@ import java.util.List;
 @DependsOn("liquibase")
 public class PlayerService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(PlayerService.class);
+
     private static final String COOKIE_NAME = "player";
     private static final int COOKIE_EXPIRY = 365 * 24 * 3600; // One year
+    private static final long FLUSH_INTERVAL_SECONDS = 30;
 
     @Autowired
     private PlayerDao playerDao;
@@ -63,9 +81,40 @@ public class PlayerService {
     @Autowired
     private TranscodingService transcodingService;
 
+    // All players, keyed by ID.
+    private final ConcurrentMap<Integer, Player> players = new ConcurrentHashMap<>();
+
+    // IDs of non-REST players keyed by IP address, and of all players keyed by username and client ID.
+    private final ConcurrentMap<String, Set<Integer>> nonRestPlayersByIpAddress = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<String>, Set<Integer>> playersByUserAndClientId = new ConcurrentHashMap<>();
+
+    // Serializes the lookup and creation of players per IP address.
+    private final Striped<Lock> ipAddressLocks = Striped.lock(64);
+
+    // IDs of players with changes not yet written to the database.
+    private final Set<Integer> dirtyPlayers = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService flusher;
+
     @PostConstruct
     public void init() {
         playerDao.deleteOldPlayers(60);
+        playerDao.getAllPlayers().forEach(this::register);
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "PlayerFlusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushPlayers, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flushPlayers();
     }
 
     /**
@@ -85,24 +134,24 @@ public class PlayerService {
      * @param isStreamRequest      Whether the HTTP request is a request for streaming data.
      * @return The player associated with the given HTTP request.
      */
-    public synchronized Player getPlayer(HttpServletRequest request, HttpServletResponse response,
-                                         boolean remoteControlEnabled, boolean isStreamRequest) throws Exception {
+    public Player getPlayer(HttpServletRequest request, HttpServletResponse response,
+                            boolean remoteControlEnabled, boolean isStreamRequest) throws Exception {
 
         // Find by 'player' request parameter.
-        Player player = getPlayerById(ServletRequestUtils.getIntParameter(request, "player"));
+        Player player = getRegisteredPlayer(ServletRequestUtils.getIntParameter(request, "player"));
 
         // Find in session context.
         if (player == null && remoteControlEnabled) {
             Integer playerId = (Integer) request.getSession().getAttribute("player");
             if (playerId != null) {
-                player = getPlayerById(playerId);
+                player = getRegisteredPlayer(playerId);
             }
         }
 
         // Find by cookie.
         String username = securityService.getCurrentUsername(request);
         if (player == null && remoteControlEnabled) {
-            player = getPlayerById(getPlayerIdFromCookie(request, username));
+            player = getRegisteredPlayer(getPlayerIdFromCookie(request, username));
         }
 
         // Make sure we're not hijacking the player of another user.
@@ -110,40 +159,56 @@ public class PlayerService {
             player = null;
         }
 
-        // Look for player with same IP address and user name.
+        String ipAddress = request.getRemoteAddr();
+        String userAgent = request.getHeader("user-agent");
         if (player == null) {
-            player = getNonRestPlayerByIpAddressAndUsername(request.getRemoteAddr(), username);
-        }
 
-        // If no player was found, create it.
-        if (player == null) {
-            player = new Player();
-            createPlayer(player);
-//            LOG.debug("Created player " + player.getId() + " (remoteControlEnabled: " + remoteControlEnabled +
-//                      ", isStreamRequest: " + isStreamRequest + ", username: " + username +
-//                      ", ip: " + request.getRemoteAddr() + ").");
+            // Look for player with same IP address and user name, or else create it. Concurrent requests from
+            // the same address must not create a player each.
+            Lock lock = ipAddressLocks.get(String.valueOf(ipAddress));
+            lock.lock();
+            try {
+                player = getNonRestPlayerByIpAddressAndUsername(ipAddress, username);
+                if (player == null) {
+                    player = new Player();
+                    player.setUsername(username);
+                    player.setIpAddress(ipAddress);
+                    if (isStreamRequest) {
+                        player.setType(userAgent);
+                        player.setLastSeen(new Date());
+                    }
+                    createPlayer(player);
+                    player = getRegisteredPlayer(player.getId());
+                }
+            } finally {
+                lock.unlock();
+            }
         }
 
         // Update player data.
-        boolean isUpdate = false;
-        if (username != null && player.getUsername() == null) {
-            player.setUsername(username);
-            isUpdate = true;
-        }
-        if (player.getIpAddress() == null || isStreamRequest ||
-            (!isPlayerConnected(player) && player.isDynamicIp() && !request.getRemoteAddr().equals(player.getIpAddress()))) {
-            player.setIpAddress(request.getRemoteAddr());
-            isUpdate = true;
-        }
-        String userAgent = request.getHeader("user-agent");
-        if (isStreamRequest) {
-            player.setType(userAgent);
-            player.setLastSeen(new Date());
-            isUpdate = true;
-        }
-
-        if (isUpdate) {
-            updatePlayer(player);
+        boolean isUsernameUpdate = username != null && player.getUsername() == null;
+        boolean isIpAddressUpdate = player.getIpAddress() == null || isStreamRequest ||
+            (!isPlayerConnected(player) && player.isDynamicIp() && !ipAddress.equals(player.getIpAddress()));
+        if (isUsernameUpdate || isIpAddressUpdate) {
+            Player updated = players.computeIfPresent(player.getId(), (id, current) -> {
+                Player copy = new Player(current);
+                if (isUsernameUpdate) {
+                    copy.setUsername(username);
+                }
+                if (isIpAddressUpdate) {
+                    copy.setIpAddress(ipAddress);
+                }
+                if (isStreamRequest) {
+                    copy.setType(userAgent);
+                    copy.setLastSeen(new Date());
+                }
+                reindex(current, copy);
+                return copy;
+            });
+            if (updated != null) {
+                dirtyPlayers.add(updated.getId());
+                player = updated;
+            }
         }
 
         // Set cookie in response.
@@ -165,7 +230,7 @@ public class PlayerService {
             request.getSession().setAttribute("player", player.getId());
         }
 
-        return player;
+        return new Player(player);
     }
 
     /**
@@ -173,8 +238,14 @@ public class PlayerService {
      *
      * @param player The player to update.
      */
-    public void updatePlayer(Player player) {
+    public synchronized void updatePlayer(Player player) {
         playerDao.updatePlayer(player);
+        players.computeIfPresent(player.getId(), (id, current) -> {
+            Player copy = new Player(player);
+            copy.setPlayQueue(current.getPlayQueue());
+            reindex(current, copy);
+            return copy;
+        });
     }
 
     /**
@@ -184,11 +255,12 @@ public class PlayerService {
      * @return The player with the given ID, or <code>null</code> if no such player exists.
      */
     public Player getPlayerById(Integer id) {
-        if (id == null) {
-            return null;
-        } else {
-            return playerDao.getPlayerById(id);
-        }
+        Player player = getRegisteredPlayer(id);
+        return player == null ? null : new Player(player);
+    }
+
+    private Player getRegisteredPlayer(Integer id) {
+        return id == null ? null : players.get(id);
     }
 
     /**
@@ -218,7 +290,7 @@ public class PlayerService {
         if (ipAddress == null) {
             return null;
         }
-        for (Player player : getAllPlayers()) {
+        for (Player player : getRegisteredPlayers(nonRestPlayersByIpAddress.get(ipAddress))) {
             boolean isRest = player.getClientId() != null;
             boolean ipMatches = ipAddress.equals(player.getIpAddress());
             boolean userMatches = username == null || username.equals(player.getUsername());
@@ -263,7 +335,10 @@ public class PlayerService {
      * @return All relevant players.
      */
     public List<Player> getPlayersForUserAndClientId(String username, String clientId) {
-        return playerDao.getPlayersForUserAndClientId(username, clientId);
+        return getRegisteredPlayers(playersByUserAndClientId.get(Arrays.asList(username, clientId))).stream()
+                .filter(player -> Objects.equals(username, player.getUsername()) && Objects.equals(clientId, player.getClientId()))
+                .map(Player::new)
+                .collect(Collectors.toList());
     }
 
     /**
@@ -272,7 +347,21 @@ public class PlayerService {
      * @return All currently registered players.
      */
     public List<Player> getAllPlayers() {
-        return playerDao.getAllPlayers();
+        return getRegisteredPlayers(players.keySet()).stream().map(Player::new).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the registered players with the given IDs, ordered by ID.
+     */
+    private List<Player> getRegisteredPlayers(Collection<Integer> ids) {
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        return ids.stream()
+                .map(players::get)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(Player::getId))
+                .collect(Collectors.toList());
     }
 
     /**
@@ -282,6 +371,18 @@ public class PlayerService {
      */
     public synchronized void removePlayerById(int id) {
         playerDao.deletePlayer(id);
+        unregister(id);
+    }
+
+    /**
+     * Forgets the players of the given user, after they are deleted along with the user.
+     *
+     * @param username The name of the deleted user.
+     */
+    public void evictPlayersOfUser(String username) {
+        players.values().stream()
+                .filter(player -> username.equals(player.getUsername()))
+                .forEach(player -> unregister(player.getId()));
     }
 
     /**
@@ -305,8 +406,9 @@ public class PlayerService {
      *
      * @param player The player to create.
      */
-    public void createPlayer(Player player) {
+    public synchronized void createPlayer(Player player) {
         playerDao.createPlayer(player);
+        register(player);
 
         List<Transcoding> transcodings = transcodingService.getAllTranscodings();
         List<Transcoding> defaultActiveTranscodings = new ArrayList<Transcoding>();
@@ -350,6 +452,74 @@ public class PlayerService {
         return player;
     }
 
+    /**
+     * Writes the players with changes made by {@link #getPlayer} to the database.
+     */
+    private synchronized void flushPlayers() {
+        for (Integer id : dirtyPlayers) {
+            dirtyPlayers.remove(id);
+            Player player = players.get(id);
+            if (player != null) {
+                try {
+                    playerDao.updatePlayer(player);
+                } catch (RuntimeException x) {
+                    dirtyPlayers.add(id);
+                    LOG.warn("Failed to update player " + id + ".", x);
+                }
+            }
+        }
+    }
+
+    private void register(Player player) {
+        Player copy = new Player(player);
+        players.compute(copy.getId(), (id, current) -> {
+            reindex(current, copy);
+            return copy;
+        });
+    }
+
+    private void unregister(int id) {
+        dirtyPlayers.remove(id);
+        players.computeIfPresent(id, (key, current) -> {
+            reindex(current, null);
+            return null;
+        });
+    }
+
+    /**
+     * Replaces the given previous version of a player with the given new version in the indexes.
+     * Either may be <code>null</code>.
+     */
+    private void reindex(Player previous, Player player) {
+        if (previous != null) {
+            if (previous.getClientId() == null && previous.getIpAddress() != null) {
+                removeFromIndex(nonRestPlayersByIpAddress, previous.getIpAddress(), previous.getId());
+            }
+            removeFromIndex(playersByUserAndClientId, Arrays.asList(previous.getUsername(), previous.getClientId()), previous.getId());
+        }
+        if (player != null) {
+            if (player.getClientId() == null && player.getIpAddress() != null) {
+                addToIndex(nonRestPlayersByIpAddress, player.getIpAddress(), player.getId());
+            }
+            addToIndex(playersByUserAndClientId, Arrays.asList(player.getUsername(), player.getClientId()), player.getId());
+        }
+    }
+
+    private static <K> void addToIndex(ConcurrentMap<K, Set<Integer>> index, K key, Integer id) {
+        index.compute(key, (k, ids) -> {
+            Set<Integer> result = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+            result.add(id);
+            return result;
+        });
+    }
+
+    private static <K> void removeFromIndex(ConcurrentMap<K, Set<Integer>> index, K key, Integer id) {
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
     public void setStatusService(StatusService statusService) {
         this.statusService = statusService;
     }
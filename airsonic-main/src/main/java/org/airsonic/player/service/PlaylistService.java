@@ -44,6 +44,7 @@ import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Provides services for loading and saving playlists to and from persistent storage.
@@ -68,6 +69,8 @@ public class PlaylistService {
     @Autowired
     private List<PlaylistImportHandler> importHandlers;
 
+    private final AtomicLong modificationCount = new AtomicLong();
+
     public PlaylistService(
             MediaFileDao mediaFileDao,
             PlaylistDao playlistDao,
@@ -139,20 +142,46 @@ public class PlaylistService {
         return presentFiles;
     }
 
+    /**
+     * Returns a page of the present files in a playlist, for clients that browse large playlists in pages.
+     */
+    public List<MediaFile> getFilesInPlaylist(int id, int offset, int count) {
+        return mediaFileDao.getPresentFilesInPlaylist(id, offset, count);
+    }
+
+    /**
+     * Returns the number of present files in a playlist.
+     */
+    public int getFileCountInPlaylist(int id) {
+        return mediaFileDao.getPresentFileCountInPlaylist(id);
+    }
+
     public void setFilesInPlaylist(int id, List<MediaFile> files) {
         playlistDao.setFilesInPlaylist(id, files);
+        modificationCount.incrementAndGet();
     }
 
     public void createPlaylist(Playlist playlist) {
         playlistDao.createPlaylist(playlist);
+        modificationCount.incrementAndGet();
     }
 
     public void addPlaylistUser(int playlistId, String username) {
         playlistDao.addPlaylistUser(playlistId, username);
+        modificationCount.incrementAndGet();
     }
 
     public void deletePlaylistUser(int playlistId, String username) {
         playlistDao.deletePlaylistUser(playlistId, username);
+        modificationCount.incrementAndGet();
+    }
+
+    /**
+     * Returns a number that changes whenever a playlist is created, changed, shared or deleted, so that
+     * callers can tell whether content derived from playlists is still current.
+     */
+    public long getModificationCount() {
+        return modificationCount.get();
     }
 
     public boolean isReadAllowed(Playlist playlist, String username) {
@@ -171,10 +200,12 @@ public class PlaylistService {
 
     public void deletePlaylist(int id) {
         playlistDao.deletePlaylist(id);
+        modificationCount.incrementAndGet();
     }
 
     public void updatePlaylist(Playlist playlist) {
         playlistDao.updatePlaylist(playlist);
+        modificationCount.incrementAndGet();
     }
 
     public Playlist importPlaylist(
@@ -732,6 +732,7 @@ public class PodcastService {
             File file = new File(episode.getPath());
             if (file.exists()) {
                 file.delete();
+                mediaFileService.deleteMediaFile(file);
                 // TODO: Delete directory if empty?
             }
         }
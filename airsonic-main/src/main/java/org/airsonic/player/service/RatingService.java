@@ -28,7 +28,9 @@ import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Provides services for user ratings.
@@ -44,6 +46,8 @@ public class RatingService {
     private SecurityService securityService;
     @Autowired
     private MediaFileService mediaFileService;
+    @Autowired
+    private StarRatingCache starRatingCache;
 
     /**
      * Returns the highest rated albums.
@@ -76,7 +80,7 @@ public class RatingService {
      * @param rating    The rating between 1 and 5, or <code>null</code> to remove the rating.
      */
     public void setRatingForUser(String username, MediaFile mediaFile, Integer rating) {
-        ratingDao.setRatingForUser(username, mediaFile, rating);
+        starRatingCache.setRating(username, mediaFile, rating);
     }
 
     /**
@@ -86,7 +90,7 @@ public class RatingService {
      * @return The average rating, or <code>null</code> if no ratings are set.
      */
     public Double getAverageRating(MediaFile mediaFile) {
-        return ratingDao.getAverageRating(mediaFile);
+        return starRatingCache.getAverageRatings().get(mediaFile.getPath());
     }
 
     /**
@@ -97,7 +101,39 @@ public class RatingService {
      * @return The rating, or <code>null</code> if no rating is set.
      */
     public Integer getRatingForUser(String username, MediaFile mediaFile) {
-        return ratingDao.getRatingForUser(username, mediaFile);
+        return starRatingCache.getRatings(username).get(mediaFile.getPath());
+    }
+
+    /**
+     * Returns the average ratings for the given music files.
+     *
+     * @return The average ratings, keyed by path. Music files without ratings are not included.
+     */
+    public Map<String, Double> getAverageRatings(List<MediaFile> mediaFiles) {
+        return filter(starRatingCache.getAverageRatings(), mediaFiles);
+    }
+
+    /**
+     * Returns the ratings for the given user and music files.
+     *
+     * @return The ratings, keyed by path. Music files without a rating are not included.
+     */
+    public Map<String, Integer> getRatingsForUser(String username, List<MediaFile> mediaFiles) {
+        return filter(starRatingCache.getRatings(username), mediaFiles);
+    }
+
+    /**
+     * Returns the entries of the given map, keyed by path, that belong to the given music files.
+     */
+    private static <T> Map<String, T> filter(Map<String, T> valuesByPath, List<MediaFile> mediaFiles) {
+        Map<String, T> result = new HashMap<>();
+        for (MediaFile mediaFile : mediaFiles) {
+            T value = valuesByPath.get(mediaFile.getPath());
+            if (value != null) {
+                result.put(mediaFile.getPath(), value);
+            }
+        }
+        return result;
     }
 
     public int getRatedAlbumCount(String username, List<MusicFolder> musicFolders) {
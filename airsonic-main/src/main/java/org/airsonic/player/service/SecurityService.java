@@ -19,7 +19,9 @@
  */
 package org.airsonic.player.service;
 
+import com.google.common.util.concurrent.Striped;
 import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
 import org.airsonic.player.dao.UserDao;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
@@ -28,7 +30,9 @@ import org.airsonic.player.util.FileUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.dao.DataAccessException;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -37,11 +41,25 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.servletapi.SecurityContextHolderAwareRequestWrapper;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Provides security-related services for authentication and authorization.
@@ -53,12 +71,48 @@ public class SecurityService implements UserDetailsService {
 
     private static final Logger LOG = LoggerFactory.getLogger(SecurityService.class);
 
+    private static final long BYTE_COUNT_FLUSH_INTERVAL_SECONDS = 30;
+
     @Autowired
     private UserDao userDao;
     @Autowired
     private SettingsService settingsService;
     @Autowired
     private Ehcache userCache;
+    @Autowired
+    private Ehcache restAuthenticationCache;
+    @Autowired
+    private StarRatingCache starRatingCache;
+    @Autowired
+    @Lazy // used to deal with circular dependencies between PlayerService and SecurityService
+    private PlayerService playerService;
+
+    // Serializes loading users into the cache with changing them, so that no outdated user is cached.
+    private final Striped<Lock> userLocks = Striped.lock(64);
+
+    // Bytes transferred by each user that are not written to the database yet.
+    private final ConcurrentMap<String, ByteCounts> pendingByteCounts = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService byteCountFlusher;
+
+    @PostConstruct
+    public void init() {
+        byteCountFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "UserByteCountFlusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        byteCountFlusher.scheduleWithFixedDelay(this::flushUserByteCounts, BYTE_COUNT_FLUSH_INTERVAL_SECONDS,
+                                                BYTE_COUNT_FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (byteCountFlusher != null) {
+            byteCountFlusher.shutdown();
+        }
+        flushUserByteCounts();
+    }
 
     /**
      * Locates the user based on the username.
@@ -92,6 +146,11 @@ public class SecurityService implements UserDetailsService {
     }
 
     public List<GrantedAuthority> getGrantedAuthorities(String username) {
+        CachedUser cachedUser = getCachedUser(username);
+        return cachedUser == null ? createGrantedAuthorities(username) : cachedUser.authorities;
+    }
+
+    private List<GrantedAuthority> createGrantedAuthorities(String username) {
         String[] roles = userDao.getRolesForUser(username);
         List<GrantedAuthority> authorities = new ArrayList<>();
         authorities.add(new SimpleGrantedAuthority("IS_AUTHENTICATED_ANONYMOUSLY"));
@@ -99,7 +158,7 @@ public class SecurityService implements UserDetailsService {
         for (String role : roles) {
             authorities.add(new SimpleGrantedAuthority("ROLE_" + role.toUpperCase()));
         }
-        return authorities;
+        return Collections.unmodifiableList(authorities);
     }
 
     /**
@@ -140,7 +199,110 @@ public class SecurityService implements UserDetailsService {
      * @return The corresponding User
      */
     public User getUserByName(String username, boolean caseSensitive) {
-        return userDao.getUserByName(username, caseSensitive);
+        if (!caseSensitive) {
+            return userDao.getUserByName(username, false);
+        }
+        CachedUser cachedUser = getCachedUser(username);
+        return cachedUser == null ? null : new User(cachedUser.user);
+    }
+
+    /**
+     * Returns the user with the given username and its granted authorities from the user cache, reading them
+     * from the database if necessary. Users that do not exist are not cached.
+     */
+    private CachedUser getCachedUser(String username) {
+        if (username == null) {
+            return null;
+        }
+        Element element = userCache.get(username);
+        if (element != null) {
+            return (CachedUser) element.getObjectValue();
+        }
+
+        Lock lock = userLocks.get(username);
+        lock.lock();
+        try {
+            element = userCache.get(username);
+            if (element != null) {
+                return (CachedUser) element.getObjectValue();
+            }
+            User user = userDao.getUserByName(username, true);
+            if (user == null) {
+                return null;
+            }
+            CachedUser cachedUser = new CachedUser(user, createGrantedAuthorities(username));
+            userCache.put(new Element(username, cachedUser));
+            return cachedUser;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the given database update of a user, and removes the user from the user cache along with its
+     * cached REST authentications.
+     */
+    private void changeUser(String username, Runnable update) {
+        Lock lock = userLocks.get(username);
+        lock.lock();
+        try {
+            update.run();
+            userCache.remove(username);
+            for (Object key : restAuthenticationCache.getKeys()) {
+                if (username.equals(((List<?>) key).get(0))) {
+                    restAuthenticationCache.remove(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evictCachedUser(String username) {
+        Lock lock = userLocks.get(username);
+        lock.lock();
+        try {
+            userCache.remove(username);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the authentication of an earlier REST request by the given user, with the same salt and token,
+     * provided that the password of the user has not changed since.
+     *
+     * @param username The username.
+     * @param salt     The salt of the request.
+     * @param token    The authentication token of the request, computed from the password and the salt.
+     * @return The authentication, or <code>null</code> if not found.
+     */
+    public Authentication getRestAuthentication(String username, String salt, String token) {
+        Element element = restAuthenticationCache.get(Arrays.asList(username, salt, token));
+        if (element == null) {
+            return null;
+        }
+        CachedRestAuthentication cached = (CachedRestAuthentication) element.getObjectValue();
+        CachedUser cachedUser = getCachedUser(username);
+        if (cachedUser == null || !Objects.equals(cachedUser.user.getPassword(), cached.password)) {
+            return null;
+        }
+        return cached.authentication;
+    }
+
+    /**
+     * Remembers the authentication of a REST request, so that it can be reused by later requests with the
+     * same credentials for a while.
+     *
+     * @param username       The username.
+     * @param salt           The salt of the request.
+     * @param token          The authentication token of the request.
+     * @param password       The password that the token was verified with.
+     * @param authentication The successful authentication.
+     */
+    public void putRestAuthentication(String username, String salt, String token, String password, Authentication authentication) {
+        restAuthenticationCache.put(new Element(Arrays.asList(username, salt, token),
+                                                new CachedRestAuthentication(password, authentication)));
     }
 
     /**
@@ -190,7 +352,7 @@ public class SecurityService implements UserDetailsService {
      * @param user The user to create.
      */
     public void createUser(User user) {
-        userDao.createUser(user);
+        changeUser(user.getUsername(), () -> userDao.createUser(user));
         settingsService.setMusicFoldersForUser(user.getUsername(), MusicFolder.toIdList(settingsService.getAllMusicFolders()));
         LOG.info("Created user " + user.getUsername());
     }
@@ -201,9 +363,12 @@ public class SecurityService implements UserDetailsService {
      * @param username The username.
      */
     public void deleteUser(String username) {
-        userDao.deleteUser(username);
+        changeUser(username, () -> userDao.deleteUser(username));
         LOG.info("Deleted user " + username);
-        userCache.remove(username);
+        starRatingCache.evict(username);
+        settingsService.evictUserSettings(username);
+        playerService.evictPlayersOfUser(username);
+        pendingByteCounts.remove(username);
     }
 
     /**
@@ -212,12 +377,12 @@ public class SecurityService implements UserDetailsService {
      * @param user The user to update.
      */
     public void updateUser(User user) {
-        userDao.updateUser(user);
-        userCache.remove(user.getUsername());
+        changeUser(user.getUsername(), () -> userDao.updateUser(user));
     }
 
     /**
-     * Updates the byte counts for given user.
+     * Updates the byte counts for given user. The counts are accumulated in memory, and written to the
+     * database by {@link #flushUserByteCounts()}.
      *
      * @param user                 The user to update, may be <code>null</code>.
      * @param bytesStreamedDelta   Increment bytes streamed count with this value.
@@ -229,11 +394,41 @@ public class SecurityService implements UserDetailsService {
             return;
         }
 
-        user.setBytesStreamed(user.getBytesStreamed() + bytesStreamedDelta);
-        user.setBytesDownloaded(user.getBytesDownloaded() + bytesDownloadedDelta);
-        user.setBytesUploaded(user.getBytesUploaded() + bytesUploadedDelta);
+        ByteCounts byteCounts = pendingByteCounts.computeIfAbsent(user.getUsername(), u -> new ByteCounts());
+        byteCounts.streamed.add(bytesStreamedDelta);
+        byteCounts.downloaded.add(bytesDownloadedDelta);
+        byteCounts.uploaded.add(bytesUploadedDelta);
+    }
 
-        userDao.updateUser(user);
+    /**
+     * Writes the byte counts accumulated by {@link #updateUserByteCounts} to the database, in one batch.
+     * This is done periodically and on shutdown, and may be done before reading the byte counts of users.
+     */
+    public synchronized void flushUserByteCounts() {
+        Map<String, long[]> deltas = new HashMap<>();
+        for (Map.Entry<String, ByteCounts> entry : pendingByteCounts.entrySet()) {
+            long[] delta = entry.getValue().drain();
+            if (delta[0] != 0 || delta[1] != 0 || delta[2] != 0) {
+                deltas.put(entry.getKey(), delta);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            userDao.addByteCounts(deltas);
+
+            // The byte counts of the cached users are outdated now.
+            deltas.keySet().forEach(this::evictCachedUser);
+        } catch (Exception x) {
+            LOG.warn("Failed to update byte counts of users, will try again later.", x);
+            deltas.forEach((username, delta) -> {
+                ByteCounts byteCounts = pendingByteCounts.computeIfAbsent(username, u -> new ByteCounts());
+                byteCounts.streamed.add(delta[0]);
+                byteCounts.downloaded.add(delta[1]);
+                byteCounts.uploaded.add(delta[2]);
+            });
+        }
     }
 
     /**
@@ -358,4 +553,55 @@ public class SecurityService implements UserDetailsService {
     public void setUserCache(Ehcache userCache) {
         this.userCache = userCache;
     }
-}
\ No newline at end of file
+
+    public void setRestAuthenticationCache(Ehcache restAuthenticationCache) {
+        this.restAuthenticationCache = restAuthenticationCache;
+    }
+
+    /**
+     * A user along with its granted authorities, as kept in the user cache.
+     */
+    private static class CachedUser {
+        private final User user;
+        private final List<GrantedAuthority> authorities;
+
+        private CachedUser(User user, List<GrantedAuthority> authorities) {
+            this.user = user;
+            this.authorities = authorities;
+        }
+    }
+
+    /**
+     * A successful REST authentication, along with the password it was verified with.
+     */
+    private static class CachedRestAuthentication {
+        private final String password;
+        private final Authentication authentication;
+
+        private CachedRestAuthentication(String password, Authentication authentication) {
+            this.password = password;
+            this.authentication = authentication;
+        }
+    }
+
+    /**
+     * Bytes streamed, downloaded and uploaded by a user. Counters are striped, since many transfers
+     * of the same user may end at the same time.
+     */
+    private static class ByteCounts {
+        private final LongAdder streamed = new LongAdder();
+        private final LongAdder downloaded = new LongAdder();
+        private final LongAdder uploaded = new LongAdder();
+
+        /**
+         * Returns the counts and subtracts them, keeping any bytes that are added concurrently.
+         */
+        long[] drain() {
+            long[] counts = {streamed.sum(), downloaded.sum(), uploaded.sum()};
+            streamed.add(-counts[0]);
+            downloaded.add(-counts[1]);
+            uploaded.add(-counts[2]);
+            return counts;
+        }
+    }
+}
@@ -76,6 +76,12 @@ public class SettingsService {
     private static final String KEY_THEME_ID = "Theme";
     private static final String KEY_INDEX_CREATION_INTERVAL = "IndexCreationInterval";
     private static final String KEY_INDEX_CREATION_HOUR = "IndexCreationHour";
+    private static final String KEY_SCAN_PARALLELISM = "ScanParallelism";
+    private static final String KEY_METADATA_PARSER_THREADS = "MetaDataParserThreads";
+    private static final String KEY_FFPROBE_THREADS = "FFprobeThreads";
+    private static final String KEY_INCREMENTAL_SCAN_ENABLED = "IncrementalScanEnabled";
+    private static final String KEY_LIBRARY_WATCH_ENABLED = "LibraryWatchEnabled";
+    private static final String KEY_LIBRARY_WATCH_DELAY = "LibraryWatchDelay";
     private static final String KEY_FAST_CACHE_ENABLED = "FastCacheEnabled";
     private static final String KEY_IGNORE_FILE_TIMESTAMPS = "IgnoreFileTimestamps";
     private static final String KEY_PODCAST_UPDATE_INTERVAL = "PodcastUpdateInterval";
@@ -85,6 +91,7 @@ public class SettingsService {
     private static final String KEY_DOWNLOAD_BITRATE_LIMIT = "DownloadBitrateLimit";
     private static final String KEY_UPLOAD_BITRATE_LIMIT = "UploadBitrateLimit";
     private static final String KEY_HLS_COMMAND = "HlsCommand3";
+    private static final String KEY_TRANSCODE_CACHE_SIZE = "TranscodeCacheSize";
     private static final String KEY_JUKEBOX_COMMAND = "JukeboxCommand2";
     private static final String KEY_VIDEO_IMAGE_COMMAND = "VideoImageCommand";
     private static final String KEY_LDAP_ENABLED = "LdapEnabled";
@@ -115,6 +122,8 @@ public class SettingsService {
     private static final String KEY_EXPORT_PLAYLIST_FORMAT = "PlaylistExportFormat";
     private static final String KEY_IGNORE_SYMLINKS = "IgnoreSymLinks";
     private static final String KEY_EXCLUDE_PATTERN_STRING = "ExcludePattern";
+    private static final String KEY_REST_GZIP_ENABLED = "RestGzipEnabled";
+    private static final String KEY_REST_FORMATTED_OUTPUT = "RestFormattedOutput";
 
     private static final String KEY_CAPTCHA_ENABLED = "CaptchaEnabled";
     private static final String KEY_RECAPTCHA_SITE_KEY = "ReCaptchaSiteKey";
@@ -159,6 +168,12 @@ public class SettingsService {
     private static final String DEFAULT_THEME_ID = "default";
     private static final int DEFAULT_INDEX_CREATION_INTERVAL = 1;
     private static final int DEFAULT_INDEX_CREATION_HOUR = 3;
+    private static final int DEFAULT_SCAN_PARALLELISM = 1;
+    private static final int DEFAULT_METADATA_PARSER_THREADS = 0;
+    private static final int DEFAULT_FFPROBE_THREADS = 0;
+    private static final boolean DEFAULT_INCREMENTAL_SCAN_ENABLED = false;
+    private static final boolean DEFAULT_LIBRARY_WATCH_ENABLED = false;
+    private static final int DEFAULT_LIBRARY_WATCH_DELAY = 5;
     private static final boolean DEFAULT_FAST_CACHE_ENABLED = false;
     private static final boolean DEFAULT_IGNORE_FILE_TIMESTAMPS = false;
     private static final int DEFAULT_PODCAST_UPDATE_INTERVAL = 24;
@@ -168,6 +183,7 @@ public class SettingsService {
     private static final long DEFAULT_DOWNLOAD_BITRATE_LIMIT = 0;
     private static final long DEFAULT_UPLOAD_BITRATE_LIMIT = 0;
     private static final String DEFAULT_HLS_COMMAND = "ffmpeg -ss %o -t %d -i %s -async 1 -b:v %bk -s %wx%h -ar 44100 -ac 2 -v 0 -f mpegts -c:v libx264 -preset superfast -c:a libmp3lame -threads 0 -";
+    private static final long DEFAULT_TRANSCODE_CACHE_SIZE = 0;
     private static final String DEFAULT_JUKEBOX_COMMAND = "ffmpeg -ss %o -i %s -map 0:0 -v 0 -ar 44100 -ac 2 -f s16be -";
     private static final String DEFAULT_VIDEO_IMAGE_COMMAND = "ffmpeg -r 1 -ss %o -t 1 -i %s -s %wx%h -v 0 -f mjpeg -";
     private static final boolean DEFAULT_LDAP_ENABLED = false;
@@ -189,6 +205,8 @@ public class SettingsService {
     private static final String DEFAULT_EXPORT_PLAYLIST_FORMAT = "m3u";
     private static final boolean DEFAULT_IGNORE_SYMLINKS = false;
     private static final String DEFAULT_EXCLUDE_PATTERN_STRING = null;
+    private static final boolean DEFAULT_REST_GZIP_ENABLED = false;
+    private static final boolean DEFAULT_REST_FORMATTED_OUTPUT = false;
 
     private static final String DEFAULT_SMTP_SERVER = null;
     private static final String DEFAULT_SMTP_ENCRYPTION = "None";
@@ -249,6 +267,9 @@ public class SettingsService {
     private List<MusicFolder> cachedMusicFolders;
     private final ConcurrentMap<String, List<MusicFolder>> cachedMusicFoldersPerUser = new ConcurrentHashMap<>();
 
+    // Callers are given copies of these, since they modify the settings before updating them.
+    private final ConcurrentMap<String, UserSettings> cachedUserSettings = new ConcurrentHashMap<>();
+
     private Pattern excludePattern;
 
     private void removeObsoleteProperties() {
@@ -546,6 +567,87 @@ public class SettingsService {
         setInt(KEY_INDEX_CREATION_HOUR, hour);
     }
 
+    /**
+     * Returns the number of threads used when scanning the media library. A value of 1 (the default)
+     * scans serially, while higher values scan directory subtrees in parallel.
+     */
+    public int getScanParallelism() {
+        return Math.max(1, getInt(KEY_SCAN_PARALLELISM, DEFAULT_SCAN_PARALLELISM));
+    }
+
+    /**
+     * Sets the number of threads used when scanning the media library.
+     */
+    public void setScanParallelism(int parallelism) {
+        setInt(KEY_SCAN_PARALLELISM, parallelism);
+    }
+
+    /**
+     * Returns the number of threads that parse the tags of new and modified files during scans. Defaults to
+     * one per processor.
+     */
+    public int getMetaDataParserThreads() {
+        int threads = getInt(KEY_METADATA_PARSER_THREADS, DEFAULT_METADATA_PARSER_THREADS);
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Sets the number of threads that parse tags during scans, or 0 for one per processor.
+     */
+    public void setMetaDataParserThreads(int threads) {
+        setInt(KEY_METADATA_PARSER_THREADS, threads);
+    }
+
+    /**
+     * Returns the number of <code>ffprobe</code> processes that may probe video files at once during scans.
+     * Defaults to one per two processors.
+     */
+    public int getFFprobeThreads() {
+        int threads = getInt(KEY_FFPROBE_THREADS, DEFAULT_FFPROBE_THREADS);
+        return threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    /**
+     * Sets the number of <code>ffprobe</code> processes that may run at once during scans, or 0 for one per
+     * two processors.
+     */
+    public void setFFprobeThreads(int threads) {
+        setInt(KEY_FFPROBE_THREADS, threads);
+    }
+
+    /**
+     * Returns whether media library scans may skip directories that are unchanged since the previous scan.
+     */
+    public boolean isIncrementalScanEnabled() {
+        return getBoolean(KEY_INCREMENTAL_SCAN_ENABLED, DEFAULT_INCREMENTAL_SCAN_ENABLED);
+    }
+
+    public void setIncrementalScanEnabled(boolean enabled) {
+        setBoolean(KEY_INCREMENTAL_SCAN_ENABLED, enabled);
+    }
+
+    /**
+     * Returns whether the music folders are watched for changes between scheduled scans.
+     */
+    public boolean isLibraryWatchEnabled() {
+        return getBoolean(KEY_LIBRARY_WATCH_ENABLED, DEFAULT_LIBRARY_WATCH_ENABLED);
+    }
+
+    public void setLibraryWatchEnabled(boolean enabled) {
+        setBoolean(KEY_LIBRARY_WATCH_ENABLED, enabled);
+    }
+
+    /**
+     * Returns the number of seconds without further changes to wait before applying watched changes.
+     */
+    public int getLibraryWatchDelay() {
+        return Math.max(1, getInt(KEY_LIBRARY_WATCH_DELAY, DEFAULT_LIBRARY_WATCH_DELAY));
+    }
+
+    public void setLibraryWatchDelay(int seconds) {
+        setInt(KEY_LIBRARY_WATCH_DELAY, seconds);
+    }
+
     public boolean isFastCacheEnabled() {
         return getBoolean(KEY_FAST_CACHE_ENABLED, DEFAULT_FAST_CACHE_ENABLED);
     }
@@ -656,6 +758,20 @@ public class SettingsService {
         setProperty(KEY_HLS_COMMAND, command);
     }
 
+    /**
+     * @return The maximum size of the transcode cache in MB. Zero if disabled.
+     */
+    public long getTranscodeCacheSize() {
+        return getLong(KEY_TRANSCODE_CACHE_SIZE, DEFAULT_TRANSCODE_CACHE_SIZE);
+    }
+
+    /**
+     * @param size The maximum size of the transcode cache in MB. Zero if disabled.
+     */
+    public void setTranscodeCacheSize(long size) {
+        setLong(KEY_TRANSCODE_CACHE_SIZE, size);
+    }
+
     String getJukeboxCommand() {
         return getProperty(KEY_JUKEBOX_COMMAND, DEFAULT_JUKEBOX_COMMAND);
     }
@@ -782,6 +898,28 @@ public class SettingsService {
         return excludePattern;
     }
 
+    /**
+     * Returns whether REST API responses are gzipped for clients that accept it.
+     */
+    public boolean isRestGzipEnabled() {
+        return getBoolean(KEY_REST_GZIP_ENABLED, DEFAULT_REST_GZIP_ENABLED);
+    }
+
+    public void setRestGzipEnabled(boolean enabled) {
+        setBoolean(KEY_REST_GZIP_ENABLED, enabled);
+    }
+
+    /**
+     * Returns whether REST API responses are indented, for instance when debugging.
+     */
+    public boolean isRestFormattedOutput() {
+        return getBoolean(KEY_REST_FORMATTED_OUTPUT, DEFAULT_REST_FORMATTED_OUTPUT);
+    }
+
+    public void setRestFormattedOutput(boolean formattedOutput) {
+        setBoolean(KEY_REST_FORMATTED_OUTPUT, formattedOutput);
+    }
+
     /**
      * Returns whether we are running in Development mode.
      *
@@ -1096,8 +1234,10 @@ public class SettingsService {
      * @return User-specific settings. Never <code>null</code>.
      */
     public UserSettings getUserSettings(String username) {
-        UserSettings settings = userDao.getUserSettings(username);
-        return settings == null ? createDefaultUserSettings(username) : settings;
+        return new UserSettings(cachedUserSettings.computeIfAbsent(username, u -> {
+            UserSettings settings = userDao.getUserSettings(u);
+            return settings == null ? createDefaultUserSettings(u) : settings;
+        }));
     }
 
     private UserSettings createDefaultUserSettings(String username) {
@@ -1146,7 +1286,20 @@ public class SettingsService {
      * @param settings The user-specific settings.
      */
     public void updateUserSettings(UserSettings settings) {
-        userDao.updateUserSettings(settings);
+        cachedUserSettings.compute(settings.getUsername(), (username, previous) -> {
+            userDao.updateUserSettings(settings);
+            return new UserSettings(settings);
+        });
+    }
+
+    /**
+     * Forgets the cached settings and music folders of the given user, for instance because it was deleted.
+     *
+     * @param username The username.
+     */
+    public void evictUserSettings(String username) {
+        cachedUserSettings.remove(username);
+        cachedMusicFoldersPerUser.remove(username);
     }
 
     /**
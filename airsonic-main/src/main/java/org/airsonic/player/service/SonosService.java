@@ -22,8 +22,11 @@ package org.airsonic.player.service;
 import com.sonos.services._1.*;
 import com.sonos.services._1_1.CustomFault;
 import com.sonos.services._1_1.SonosSoap;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
 import org.airsonic.player.domain.AlbumListType;
 import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.Playlist;
 import org.airsonic.player.domain.User;
 import org.airsonic.player.service.search.IndexType;
@@ -56,6 +59,7 @@ import javax.xml.ws.handler.MessageContext;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
 
 /**
  * For manual testing of this service:
@@ -109,6 +113,10 @@ public class SonosService implements SonosSoap {
     private PlaylistService playlistService;
     @Autowired
     private UPnPService upnpService;
+    @Autowired
+    private MediaScannerService mediaScannerService;
+    @Autowired
+    private Ehcache sonosMediaCache;
 
     /**
      * The context for the request. This is used to get the Auth information
@@ -159,71 +167,13 @@ public class SonosService implements SonosSoap {
 
         LOG.debug(String.format("getMetadata: id=%s index=%s count=%s recursive=%s", id, index, count, parameters.isRecursive()));
 
-        List<? extends AbstractMedia> media = null;
-        MediaList mediaList = null;
-
-        if (ID_ROOT.equals(id)) {
-            media = sonosHelper.forRoot();
+        MediaList mediaList;
+        if (id.startsWith(ID_ALBUMLIST_PREFIX)) {
+            AlbumListType albumListType = AlbumListType.fromId(id.replace(ID_ALBUMLIST_PREFIX, ""));
+            mediaList = sonosHelper.forAlbumList(albumListType, index, count, username, request);
         } else {
-            if (ID_SHUFFLE.equals(id)) {
-                media = sonosHelper.forShuffle(count, username, request);
-            } else if (ID_LIBRARY.equals(id)) {
-                media = sonosHelper.forLibrary(username, request);
-            } else if (ID_PLAYLISTS.equals(id)) {
-                media = sonosHelper.forPlaylists(username, request);
-            } else if (ID_ALBUMLISTS.equals(id)) {
-                media = sonosHelper.forAlbumLists();
-            } else if (ID_PODCASTS.equals(id)) {
-                media = sonosHelper.forPodcastChannels();
-            } else if (ID_STARRED.equals(id)) {
-                media = sonosHelper.forStarred();
-            } else if (ID_STARRED_ARTISTS.equals(id)) {
-                media = sonosHelper.forStarredArtists(username, request);
-            } else if (ID_STARRED_ALBUMS.equals(id)) {
-                media = sonosHelper.forStarredAlbums(username, request);
-            } else if (ID_STARRED_SONGS.equals(id)) {
-                media = sonosHelper.forStarredSongs(username, request);
-            } else if (ID_SEARCH.equals(id)) {
-                media = sonosHelper.forSearchCategories();
-            } else if (id.startsWith(ID_PLAYLIST_PREFIX)) {
-                int playlistId = Integer.parseInt(id.replace(ID_PLAYLIST_PREFIX, ""));
-                media = sonosHelper.forPlaylist(playlistId, username, request);
-            } else if (id.startsWith(ID_DECADE_PREFIX)) {
-                int decade = Integer.parseInt(id.replace(ID_DECADE_PREFIX, ""));
-                media = sonosHelper.forDecade(decade, username, request);
-            } else if (id.startsWith(ID_GENRE_PREFIX)) {
-                int genre = Integer.parseInt(id.replace(ID_GENRE_PREFIX, ""));
-                media = sonosHelper.forGenre(genre, username, request);
-            } else if (id.startsWith(ID_ALBUMLIST_PREFIX)) {
-                AlbumListType albumListType = AlbumListType.fromId(id.replace(ID_ALBUMLIST_PREFIX, ""));
-                mediaList = sonosHelper.forAlbumList(albumListType, index, count, username, request);
-            } else if (id.startsWith(ID_PODCAST_CHANNEL_PREFIX)) {
-                int channelId = Integer.parseInt(id.replace(ID_PODCAST_CHANNEL_PREFIX, ""));
-                media = sonosHelper.forPodcastChannel(channelId, username, request);
-            } else if (id.startsWith(ID_MUSICFOLDER_PREFIX)) {
-                int musicFolderId = Integer.parseInt(id.replace(ID_MUSICFOLDER_PREFIX, ""));
-                media = sonosHelper.forMusicFolder(musicFolderId, username, request);
-            } else if (id.startsWith(ID_SHUFFLE_MUSICFOLDER_PREFIX)) {
-                int musicFolderId = Integer.parseInt(id.replace(ID_SHUFFLE_MUSICFOLDER_PREFIX, ""));
-                media = sonosHelper.forShuffleMusicFolder(musicFolderId, count, username, request);
-            } else if (id.startsWith(ID_SHUFFLE_ARTIST_PREFIX)) {
-                int mediaFileId = Integer.parseInt(id.replace(ID_SHUFFLE_ARTIST_PREFIX, ""));
-                media = sonosHelper.forShuffleArtist(mediaFileId, count, username, request);
-            } else if (id.startsWith(ID_SHUFFLE_ALBUMLIST_PREFIX)) {
-                AlbumListType albumListType = AlbumListType.fromId(id.replace(ID_SHUFFLE_ALBUMLIST_PREFIX, ""));
-                media = sonosHelper.forShuffleAlbumList(albumListType, count, username, request);
-            } else if (id.startsWith(ID_RADIO_ARTIST_PREFIX)) {
-                int mediaFileId = Integer.parseInt(id.replace(ID_RADIO_ARTIST_PREFIX, ""));
-                media = sonosHelper.forRadioArtist(mediaFileId, count, username, request);
-            } else if (id.startsWith(ID_SIMILAR_ARTISTS_PREFIX)) {
-                int mediaFileId = Integer.parseInt(id.replace(ID_SIMILAR_ARTISTS_PREFIX, ""));
-                media = sonosHelper.forSimilarArtists(mediaFileId, username, request);
-            } else {
-                media = sonosHelper.forDirectoryContent(Integer.parseInt(id), username, request);
-            }
-        }
-
-        if (mediaList == null) {
+            CachedMedia cached = getCachedMedia(id, username, request);
+            List<? extends AbstractMedia> media = cached != null ? cached.media : getMedia(id, count, username, request);
             mediaList = SonosHelper.createSubList(index, count, media);
         }
 
@@ -235,6 +185,113 @@ public class SonosService implements SonosSoap {
         return response;
     }
 
+    /**
+     * Returns the content of the given container.
+     */
+    private List<? extends AbstractMedia> getMedia(String id, int count, String username, HttpServletRequest request) {
+        if (ID_ROOT.equals(id)) {
+            return sonosHelper.forRoot();
+        } else if (ID_SHUFFLE.equals(id)) {
+            return sonosHelper.forShuffle(count, username, request);
+        } else if (ID_LIBRARY.equals(id)) {
+            return sonosHelper.forLibrary(username, request);
+        } else if (ID_PLAYLISTS.equals(id)) {
+            return sonosHelper.forPlaylists(username, request);
+        } else if (ID_ALBUMLISTS.equals(id)) {
+            return sonosHelper.forAlbumLists();
+        } else if (ID_PODCASTS.equals(id)) {
+            return sonosHelper.forPodcastChannels();
+        } else if (ID_STARRED.equals(id)) {
+            return sonosHelper.forStarred();
+        } else if (ID_STARRED_ARTISTS.equals(id)) {
+            return sonosHelper.forStarredArtists(username, request);
+        } else if (ID_STARRED_ALBUMS.equals(id)) {
+            return sonosHelper.forStarredAlbums(username, request);
+        } else if (ID_STARRED_SONGS.equals(id)) {
+            return sonosHelper.forStarredSongs(username, request);
+        } else if (ID_SEARCH.equals(id)) {
+            return sonosHelper.forSearchCategories();
+        } else if (id.startsWith(ID_PLAYLIST_PREFIX)) {
+            int playlistId = Integer.parseInt(id.replace(ID_PLAYLIST_PREFIX, ""));
+            return sonosHelper.forPlaylist(playlistId, username, request);
+        } else if (id.startsWith(ID_DECADE_PREFIX)) {
+            int decade = Integer.parseInt(id.replace(ID_DECADE_PREFIX, ""));
+            return sonosHelper.forDecade(decade, username, request);
+        } else if (id.startsWith(ID_GENRE_PREFIX)) {
+            int genre = Integer.parseInt(id.replace(ID_GENRE_PREFIX, ""));
+            return sonosHelper.forGenre(genre, username, request);
+        } else if (id.startsWith(ID_PODCAST_CHANNEL_PREFIX)) {
+            int channelId = Integer.parseInt(id.replace(ID_PODCAST_CHANNEL_PREFIX, ""));
+            return sonosHelper.forPodcastChannel(channelId, username, request);
+        } else if (id.startsWith(ID_MUSICFOLDER_PREFIX)) {
+            int musicFolderId = Integer.parseInt(id.replace(ID_MUSICFOLDER_PREFIX, ""));
+            return sonosHelper.forMusicFolder(musicFolderId, username, request);
+        } else if (id.startsWith(ID_SHUFFLE_MUSICFOLDER_PREFIX)) {
+            int musicFolderId = Integer.parseInt(id.replace(ID_SHUFFLE_MUSICFOLDER_PREFIX, ""));
+            return sonosHelper.forShuffleMusicFolder(musicFolderId, count, username, request);
+        } else if (id.startsWith(ID_SHUFFLE_ARTIST_PREFIX)) {
+            int mediaFileId = Integer.parseInt(id.replace(ID_SHUFFLE_ARTIST_PREFIX, ""));
+            return sonosHelper.forShuffleArtist(mediaFileId, count, username, request);
+        } else if (id.startsWith(ID_SHUFFLE_ALBUMLIST_PREFIX)) {
+            AlbumListType albumListType = AlbumListType.fromId(id.replace(ID_SHUFFLE_ALBUMLIST_PREFIX, ""));
+            return sonosHelper.forShuffleAlbumList(albumListType, count, username, request);
+        } else if (id.startsWith(ID_RADIO_ARTIST_PREFIX)) {
+            int mediaFileId = Integer.parseInt(id.replace(ID_RADIO_ARTIST_PREFIX, ""));
+            return sonosHelper.forRadioArtist(mediaFileId, count, username, request);
+        } else if (id.startsWith(ID_SIMILAR_ARTISTS_PREFIX)) {
+            int mediaFileId = Integer.parseInt(id.replace(ID_SIMILAR_ARTISTS_PREFIX, ""));
+            return sonosHelper.forSimilarArtists(mediaFileId, username, request);
+        } else {
+            return sonosHelper.forDirectoryContent(Integer.parseInt(id), username, request);
+        }
+    }
+
+    /**
+     * Returns the cached content of the given container, creating it if it's not cached or is out of date. Only the
+     * containers that are browsed page by page and don't change on their own are cached; for the others, or if there
+     * is no user, null is returned.
+     */
+    private CachedMedia getCachedMedia(String id, String username, HttpServletRequest request) {
+        if (username == null || !isCacheable(id)) {
+            return null;
+        }
+        // The content depends on which music folders the user may access, and its URLs on the request.
+        List<Integer> musicFolderIds = settingsService.getMusicFoldersForUser(username).stream()
+                .map(MusicFolder::getId)
+                .collect(Collectors.toList());
+        List<Object> key = Arrays.asList(username, id, musicFolderIds, NetworkService.getBaseUrl(request));
+        long lastUpdated = mediaScannerService.getLastUpdated();
+        long playlistModificationCount = playlistService.getModificationCount();
+        Element element = sonosMediaCache.get(key);
+        CachedMedia cached = element == null ? null : (CachedMedia) element.getObjectValue();
+        if (cached != null && cached.lastUpdated == lastUpdated && cached.playlistModificationCount == playlistModificationCount) {
+            return cached;
+        }
+
+        List<? extends AbstractMedia> media = getMedia(id, Integer.MAX_VALUE, username, request);
+        String scrollIndices = SonosHelper.createScrollIndices(media, settingsService.getIgnoredArticlesAsArray());
+        cached = new CachedMedia(media, scrollIndices, lastUpdated, playlistModificationCount);
+        sonosMediaCache.put(new Element(key, cached));
+        return cached;
+    }
+
+    private static boolean isCacheable(String id) {
+        return ID_LIBRARY.equals(id) || ID_PLAYLISTS.equals(id) || id.startsWith(ID_MUSICFOLDER_PREFIX)
+                || id.startsWith(ID_PLAYLIST_PREFIX) || id.startsWith(ID_DECADE_PREFIX) || id.startsWith(ID_GENRE_PREFIX)
+                || StringUtils.isNumeric(id);
+    }
+
+    /**
+     * Drops the cached content of the given user, for instance since it shows which items are starred.
+     */
+    private void evictCachedMedia(String username) {
+        for (Object key : sonosMediaCache.getKeys()) {
+            if (((List<?>) key).get(0).equals(username)) {
+                sonosMediaCache.remove(key);
+            }
+        }
+    }
+
     @Override
     public GetExtendedMetadataResponse getExtendedMetadata(GetExtendedMetadata parameters) throws CustomFault {
         LOG.debug("getExtendedMetadata: " + parameters.getId());
@@ -487,14 +544,18 @@ public class SonosService implements SonosSoap {
     @Override
     public String createItem(String favorite) throws CustomFault {
         int id = Integer.parseInt(favorite);
-        sonosHelper.star(id, getUsername());
+        String username = getUsername();
+        sonosHelper.star(id, username);
+        evictCachedMedia(username);
         return favorite;
     }
 
     @Override
     public void deleteItem(String favorite) throws CustomFault {
         int id = Integer.parseInt(favorite);
-        sonosHelper.unstar(id, getUsername());
+        String username = getUsername();
+        sonosHelper.unstar(id, username);
+        evictCachedMedia(username);
     }
 
     private HttpServletRequest getRequest() {
@@ -604,7 +665,12 @@ public class SonosService implements SonosSoap {
 
     @Override
     public String getScrollIndices(String id) throws CustomFault {
-        return null;
+        CachedMedia cached = getCachedMedia(id, getUsername(), getRequest());
+        if (cached == null) {
+            return null;
+        }
+        LOG.debug("getScrollIndices: " + id + " -> " + cached.scrollIndices);
+        return cached.scrollIndices;
     }
 
     @Override
@@ -635,4 +701,31 @@ public class SonosService implements SonosSoap {
     public void setPlaylistService(PlaylistService playlistService) {
         this.playlistService = playlistService;
     }
+
+    public void setMediaScannerService(MediaScannerService mediaScannerService) {
+        this.mediaScannerService = mediaScannerService;
+    }
+
+    public void setSonosMediaCache(Ehcache sonosMediaCache) {
+        this.sonosMediaCache = sonosMediaCache;
+    }
+
+    /**
+     * The content of a container and its scroll indices, along with when the media library and the playlists
+     * were last changed.
+     */
+    private static class CachedMedia {
+
+        private final List<? extends AbstractMedia> media;
+        private final String scrollIndices;
+        private final long lastUpdated;
+        private final long playlistModificationCount;
+
+        private CachedMedia(List<? extends AbstractMedia> media, String scrollIndices, long lastUpdated, long playlistModificationCount) {
+            this.media = media;
+            this.scrollIndices = scrollIndices;
+            this.lastUpdated = lastUpdated;
+            this.playlistModificationCount = playlistModificationCount;
+        }
+    }
 }
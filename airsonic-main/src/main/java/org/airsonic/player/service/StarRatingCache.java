@@ -0,0 +1,153 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.service;
+
+import org.airsonic.player.dao.MediaFileDao;
+import org.airsonic.player.dao.RatingDao;
+import org.airsonic.player.domain.MediaFile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the starred media files and ratings of each user in memory, so that lists of media files can be
+ * annotated without querying the database for each of them. The starred dates and ratings of a user are
+ * read with one query each when first needed, and the average ratings with one query for all media files.
+ * Changes are written through to the database.
+ *
+ * @see MediaFileService#starMediaFile(int, String)
+ * @see RatingService#setRatingForUser(String, MediaFile, Integer)
+ */
+@Component
+public class StarRatingCache {
+
+    @Autowired
+    private MediaFileDao mediaFileDao;
+    @Autowired
+    private RatingDao ratingDao;
+
+    // Starred dates keyed by media file ID, per user.
+    private final Map<String, Map<Integer, Date>> starredDates = new ConcurrentHashMap<>();
+
+    // Ratings keyed by path, per user.
+    private final Map<String, Map<String, Integer>> ratings = new ConcurrentHashMap<>();
+
+    // Average ratings keyed by path, or null if not read yet.
+    private volatile Map<String, Double> averageRatings;
+
+    /**
+     * Returns the dates at which the given user starred media files, keyed by media file ID.
+     */
+    public Map<Integer, Date> getStarredDates(String username) {
+        return Collections.unmodifiableMap(starredDates.computeIfAbsent(username,
+                u -> new ConcurrentHashMap<>(mediaFileDao.getMediaFileStarredDates(u))));
+    }
+
+    public void star(int id, String username) {
+        mediaFileDao.starMediaFile(id, username);
+        Date created = mediaFileDao.getMediaFileStarredDate(id, username);
+        starredDates.computeIfPresent(username, (u, dates) -> {
+            if (created != null) {
+                dates.put(id, created);
+            }
+            return dates;
+        });
+    }
+
+    public void unstar(int id, String username) {
+        mediaFileDao.unstarMediaFile(id, username);
+        starredDates.computeIfPresent(username, (u, dates) -> {
+            dates.remove(id);
+            return dates;
+        });
+    }
+
+    /**
+     * Returns the ratings of the given user, keyed by path.
+     */
+    public Map<String, Integer> getRatings(String username) {
+        return Collections.unmodifiableMap(ratings.computeIfAbsent(username,
+                u -> new ConcurrentHashMap<>(ratingDao.getRatingsForUser(u))));
+    }
+
+    /**
+     * Returns the average ratings of all rated media files, keyed by path.
+     */
+    public Map<String, Double> getAverageRatings() {
+        Map<String, Double> result = averageRatings;
+        if (result == null) {
+            synchronized (this) {
+                result = averageRatings;
+                if (result == null) {
+                    result = new ConcurrentHashMap<>(ratingDao.getAverageRatings());
+                    averageRatings = result;
+                }
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Sets the rating of the given user for a media file.
+     *
+     * @param rating The rating between 1 and 5, or <code>null</code> to remove the rating.
+     */
+    public void setRating(String username, MediaFile mediaFile, Integer rating) {
+        if (rating != null && (rating < 1 || rating > 5)) {
+            return;
+        }
+        String path = mediaFile.getPath();
+        ratingDao.setRatingForUser(username, mediaFile, rating);
+        ratings.computeIfPresent(username, (u, userRatings) -> {
+            if (rating == null) {
+                userRatings.remove(path);
+            } else {
+                userRatings.put(path, rating);
+            }
+            return userRatings;
+        });
+        synchronized (this) {
+            Map<String, Double> averages = averageRatings;
+            if (averages != null) {
+                Double average = ratingDao.getAverageRating(mediaFile);
+                if (average == null) {
+                    averages.remove(path);
+                } else {
+                    averages.put(path, average);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the starred media files and ratings of the given user, for instance because the user was deleted.
+     */
+    public void evict(String username) {
+        starredDates.remove(username);
+        ratings.remove(username);
+        synchronized (this) {
+            averageRatings = null;
+        }
+    }
+}
@@ -26,13 +26,27 @@ import org.airsonic.player.domain.TransferStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * Provides services for maintaining the list of stream, download and upload statuses.
  * <p/>
  * Note that for stream statuses, the last inactive status is also stored.
+ * <p/>
+ * The statuses are kept in concurrent collections, so that transfers never wait for each other or for the
+ * status pages. Stream statuses are kept per player, in the order they were created. The byte counts of all
+ * transfers are sampled by a single background task.
  *
  * @author Sindre Mehus
  * @see TransferStatus
@@ -40,104 +54,152 @@ import java.util.*;
 @Service
 public class StatusService {
 
+    private static final long SAMPLE_INTERVAL_SECONDS = 1;
+
     @Autowired
     private MediaFileService mediaFileService;
 
-    private final List<TransferStatus> streamStatuses = new ArrayList<TransferStatus>();
-    private final List<TransferStatus> downloadStatuses = new ArrayList<TransferStatus>();
-    private final List<TransferStatus> uploadStatuses = new ArrayList<TransferStatus>();
-    private final List<PlayStatus> remotePlays = new ArrayList<PlayStatus>();
+    // Maps from player ID to active stream statuses.
+    private final ConcurrentMap<Integer, List<TransferStatus>> streamStatuses = new ConcurrentHashMap<>();
+    private final List<TransferStatus> downloadStatuses = new CopyOnWriteArrayList<>();
+    private final List<TransferStatus> uploadStatuses = new CopyOnWriteArrayList<>();
+
+    // Maps from player ID to latest remote play.
+    private final ConcurrentMap<Integer, PlayStatus> remotePlays = new ConcurrentHashMap<>();
 
     // Maps from player ID to latest inactive stream status.
-    private final Map<Integer, TransferStatus> inactiveStreamStatuses = new LinkedHashMap<Integer, TransferStatus>();
+    private final ConcurrentMap<Integer, TransferStatus> inactiveStreamStatuses = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService sampler;
+
+    @PostConstruct
+    public void init() {
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "TransferStatusSampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(this::sampleStatuses, SAMPLE_INTERVAL_SECONDS, SAMPLE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sampler != null) {
+            sampler.shutdown();
+        }
+    }
+
+    /**
+     * Samples the byte counts of all transfers.
+     */
+    void sampleStatuses() {
+        Stream.of(streamStatuses.values().stream().flatMap(List::stream), downloadStatuses.stream(), uploadStatuses.stream())
+                .flatMap(statuses -> statuses)
+                .forEach(TransferStatus::sample);
+    }
 
-    public synchronized TransferStatus createStreamStatus(Player player) {
+    public TransferStatus createStreamStatus(Player player) {
         // Reuse existing status, if possible.
         TransferStatus status = inactiveStreamStatuses.get(player.getId());
         if (status != null) {
             status.setActive(true);
         } else {
-            status = createStatus(player, streamStatuses);
+            status = createStatus(player);
         }
+
+        // Add within compute, so that the list cannot be dropped by removeStreamStatus in the meantime.
+        TransferStatus activeStatus = status;
+        streamStatuses.compute(player.getId(), (id, statuses) -> {
+            List<TransferStatus> result = statuses == null ? new CopyOnWriteArrayList<>() : statuses;
+            if (!result.contains(activeStatus)) {
+                result.add(activeStatus);
+            }
+            return result;
+        });
         return status;
     }
 
-    public synchronized void removeStreamStatus(TransferStatus status) {
+    public void removeStreamStatus(TransferStatus status) {
         // Move it to the map of inactive statuses.
         status.setActive(false);
-        inactiveStreamStatuses.put(status.getPlayer().getId(), status);
-        streamStatuses.remove(status);
+        Integer playerId = status.getPlayer().getId();
+        inactiveStreamStatuses.put(playerId, status);
+        streamStatuses.computeIfPresent(playerId, (id, statuses) -> {
+            statuses.remove(status);
+            return statuses.isEmpty() ? null : statuses;
+        });
     }
 
-    public synchronized List<TransferStatus> getAllStreamStatuses() {
-
-        List<TransferStatus> result = new ArrayList<TransferStatus>(streamStatuses);
-
-        // Add inactive status for those players that have no active status.
-        Set<Integer> activePlayers = new HashSet<Integer>();
-        for (TransferStatus status : streamStatuses) {
-            activePlayers.add(status.getPlayer().getId());
-        }
-
-        for (Map.Entry<Integer, TransferStatus> entry : inactiveStreamStatuses.entrySet()) {
-            if (!activePlayers.contains(entry.getKey())) {
-                result.add(entry.getValue());
-            }
+    /**
+     * Returns the stream statuses of all players, ordered by player ID. For players without active streams,
+     * the last inactive status is returned.
+     */
+    public List<TransferStatus> getAllStreamStatuses() {
+        SortedSet<Integer> playerIds = new TreeSet<>(streamStatuses.keySet());
+        playerIds.addAll(inactiveStreamStatuses.keySet());
+
+        List<TransferStatus> result = new ArrayList<>();
+        for (Integer playerId : playerIds) {
+            result.addAll(getStreamStatusesForPlayer(playerId));
         }
         return result;
     }
 
-    public synchronized List<TransferStatus> getStreamStatusesForPlayer(Player player) {
-        List<TransferStatus> result = new ArrayList<TransferStatus>();
-        for (TransferStatus status : streamStatuses) {
-            if (status.getPlayer().getId().equals(player.getId())) {
-                result.add(status);
-            }
+    public List<TransferStatus> getStreamStatusesForPlayer(Player player) {
+        return getStreamStatusesForPlayer(player.getId());
+    }
+
+    private List<TransferStatus> getStreamStatusesForPlayer(Integer playerId) {
+        List<TransferStatus> statuses = streamStatuses.get(playerId);
+        if (statuses != null && !statuses.isEmpty()) {
+            return new ArrayList<>(statuses);
         }
 
         // If no active statuses exists, add the inactive one.
-        if (result.isEmpty()) {
-            TransferStatus inactiveStatus = inactiveStreamStatuses.get(player.getId());
-            if (inactiveStatus != null) {
-                result.add(inactiveStatus);
-            }
+        List<TransferStatus> result = new ArrayList<>();
+        TransferStatus inactiveStatus = inactiveStreamStatuses.get(playerId);
+        if (inactiveStatus != null) {
+            result.add(inactiveStatus);
         }
-
         return result;
     }
 
-    public synchronized TransferStatus createDownloadStatus(Player player) {
-        return createStatus(player, downloadStatuses);
+    public TransferStatus createDownloadStatus(Player player) {
+        TransferStatus status = createStatus(player);
+        downloadStatuses.add(status);
+        return status;
     }
 
-    public synchronized void removeDownloadStatus(TransferStatus status) {
+    public void removeDownloadStatus(TransferStatus status) {
         downloadStatuses.remove(status);
     }
 
-    public synchronized List<TransferStatus> getAllDownloadStatuses() {
-        return new ArrayList<TransferStatus>(downloadStatuses);
+    public List<TransferStatus> getAllDownloadStatuses() {
+        return new ArrayList<>(downloadStatuses);
     }
 
-    public synchronized TransferStatus createUploadStatus(Player player) {
-        return createStatus(player, uploadStatuses);
+    public TransferStatus createUploadStatus(Player player) {
+        TransferStatus status = createStatus(player);
+        uploadStatuses.add(status);
+        return status;
     }
 
-    public synchronized void removeUploadStatus(TransferStatus status) {
+    public void removeUploadStatus(TransferStatus status) {
         uploadStatuses.remove(status);
     }
 
-    public synchronized List<TransferStatus> getAllUploadStatuses() {
-        return new ArrayList<TransferStatus>(uploadStatuses);
+    public List<TransferStatus> getAllUploadStatuses() {
+        return new ArrayList<>(uploadStatuses);
     }
 
-    public synchronized void addRemotePlay(PlayStatus playStatus) {
-        remotePlays.removeIf(PlayStatus::isExpired);
-        remotePlays.add(playStatus);
+    public void addRemotePlay(PlayStatus playStatus) {
+        remotePlays.values().removeIf(PlayStatus::isExpired);
+        remotePlays.put(playStatus.getPlayer().getId(), playStatus);
     }
 
-    public synchronized List<PlayStatus> getPlayStatuses() {
+    public List<PlayStatus> getPlayStatuses() {
         Map<Integer, PlayStatus> result = new LinkedHashMap<Integer, PlayStatus>();
-        for (PlayStatus remotePlay : remotePlays) {
+        for (PlayStatus remotePlay : remotePlays.values()) {
             if (!remotePlay.isExpired()) {
                 result.put(remotePlay.getPlayer().getId(), remotePlay);
             }
@@ -145,7 +207,7 @@ public class StatusService {
 
         List<TransferStatus> statuses = new ArrayList<TransferStatus>();
         statuses.addAll(inactiveStreamStatuses.values());
-        statuses.addAll(streamStatuses);
+        streamStatuses.values().forEach(statuses::addAll);
 
         for (TransferStatus streamStatus : statuses) {
             Player player = streamStatus.getPlayer();
@@ -163,10 +225,9 @@ public class StatusService {
         return new ArrayList<PlayStatus>(result.values());
     }
 
-    private synchronized TransferStatus createStatus(Player player, List<TransferStatus> statusList) {
+    private TransferStatus createStatus(Player player) {
         TransferStatus status = new TransferStatus();
         status.setPlayer(player);
-        statusList.add(status);
         return status;
     }
 
@@ -0,0 +1,300 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.service;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.Transcoding;
+import org.airsonic.player.io.TranscodeInputStream;
+import org.airsonic.player.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps transcoded media files on disk, so that replaying a file with the same transcoding and bit rate doesn't
+ * require transcoding it again. The transcoder output is copied to the cache while it is being streamed, and
+ * only added to the cache once the transcoding is complete.
+ * <p/>
+ * The least recently used files are removed when the cache exceeds the size given in the settings. Files are
+ * cached by the time the media file was changed, so changed media files are transcoded again. Video is not
+ * cached.
+ *
+ * @see TranscodingService#getTranscodedInputStream
+ */
+@Service
+public class TranscodeCacheService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TranscodeCacheService.class);
+    private static final String TMP_SUFFIX = ".tmp";
+
+    @Autowired
+    private SettingsService settingsService;
+
+    private File directory;
+
+    // Sizes of the cached files by name, least recently used first. Guarded by itself.
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75F, true);
+    private long size;
+
+    // Names of the cached files currently being written.
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        directory = new File(SettingsService.getAirsonicHome(), "transcodeCache");
+        if (!directory.exists() && !directory.mkdirs()) {
+            LOG.warn("Failed to create directory " + directory);
+        }
+
+        // Pick up the files cached before a restart, oldest first.
+        File[] files = FileUtil.listFiles(directory);
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        synchronized (entries) {
+            for (File file : files) {
+                if (file.getName().endsWith(TMP_SUFFIX)) {
+                    delete(file);
+                } else {
+                    entries.put(file.getName(), file.length());
+                    size += file.length();
+                }
+            }
+            evict();
+        }
+    }
+
+    /**
+     * Returns the cached transcoding of a media file.
+     *
+     * @param parameters The transcoding parameters.
+     * @return The cached file, or {@code null} if not cached.
+     */
+    public File getCachedFile(TranscodingService.Parameters parameters) {
+        String name = getName(parameters);
+        if (name == null) {
+            return null;
+        }
+        synchronized (entries) {
+            if (entries.get(name) == null) {
+                return null;
+            }
+        }
+
+        File file = new File(directory, name);
+        if (!file.setLastModified(System.currentTimeMillis())) {
+            LOG.debug("Failed to touch " + file);
+        }
+        return file;
+    }
+
+    /**
+     * Copies the given transcoder output to the cache while it is being read. If the stream is closed before it
+     * is read to the end, nothing is cached.
+     *
+     * @param parameters The transcoding parameters.
+     * @param in         The transcoder output.
+     * @return A stream to read instead of the transcoder output.
+     */
+    public InputStream cache(TranscodingService.Parameters parameters, InputStream in) {
+        String name = getName(parameters);
+
+        // Only one copy of a file is cached at a time.
+        if (name == null || !pending.add(name)) {
+            return in;
+        }
+
+        File tmpFile = new File(directory, name + TMP_SUFFIX);
+        try {
+            return new CachingInputStream(in, new BufferedOutputStream(new FileOutputStream(tmpFile)), name, tmpFile);
+        } catch (IOException x) {
+            LOG.warn("Failed to create " + tmpFile, x);
+            pending.remove(name);
+            return in;
+        }
+    }
+
+    /**
+     * Returns the name of the cached file for the given parameters, or {@code null} if they are not cacheable.
+     */
+    private String getName(TranscodingService.Parameters parameters) {
+        MediaFile mediaFile = parameters.getMediaFile();
+        Transcoding transcoding = parameters.getTranscoding();
+        if (getMaxSize() == 0 || transcoding == null || parameters.getVideoTranscodingSettings() != null ||
+            mediaFile.isVideo() || mediaFile.getChanged() == null) {
+            return null;
+        }
+
+        // Changing the transcoding commands must not serve files transcoded with the previous ones.
+        String commands = transcoding.getStep1() + '\n' + transcoding.getStep2() + '\n' + transcoding.getStep3();
+        return mediaFile.getId() + "-" + mediaFile.getChanged().getTime() + "-" + Integer.toHexString(commands.hashCode()) +
+               "-" + parameters.getMaxBitRate() + "." + transcoding.getTargetFormat();
+    }
+
+    private long getMaxSize() {
+        return settingsService.getTranscodeCacheSize() * 1024L * 1024L;
+    }
+
+    private void add(String name, File tmpFile) {
+        File file = new File(directory, name);
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException x) {
+            LOG.warn("Failed to cache " + file, x);
+            delete(tmpFile);
+            return;
+        }
+
+        synchronized (entries) {
+            Long previousSize = entries.put(name, file.length());
+            size += file.length() - (previousSize == null ? 0 : previousSize);
+            evict();
+        }
+        LOG.debug("Cached transcoded file " + file);
+    }
+
+    /**
+     * Removes the least recently used files until the cache is within its size limit. Must be called while
+     * holding the lock on the entries.
+     */
+    private void evict() {
+        long maxSize = getMaxSize();
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            iterator.remove();
+            size -= entry.getValue();
+            delete(new File(directory, entry.getKey()));
+        }
+    }
+
+    private void delete(File file) {
+        if (!file.delete()) {
+            LOG.warn("Failed to delete " + file);
+        }
+    }
+
+    public void setSettingsService(SettingsService settingsService) {
+        this.settingsService = settingsService;
+    }
+
+    /**
+     * Copies all data read to a temporary file, which is added to the cache when the end of the stream is reached.
+     */
+    private class CachingInputStream extends FilterInputStream {
+
+        private final OutputStream out;
+        private final String name;
+        private final File tmpFile;
+        private boolean done;
+
+        CachingInputStream(InputStream in, OutputStream out, String name, File tmpFile) {
+            super(in);
+            this.out = out;
+            this.name = name;
+            this.tmpFile = tmpFile;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete();
+            } else if (!done) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                complete();
+            } else if (!done) {
+                write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped data would be missing from the cached file.
+            abort();
+            return super.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                abort();
+            }
+        }
+
+        private void write(byte[] b, int off, int len) {
+            try {
+                out.write(b, off, len);
+            } catch (IOException x) {
+                LOG.warn("Failed to write " + tmpFile, x);
+                abort();
+            }
+        }
+
+        private void complete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                out.close();
+                if (in instanceof TranscodeInputStream && !((TranscodeInputStream) in).isSuccessful()) {
+                    LOG.debug("Not caching " + tmpFile + ", as transcoding failed.");
+                    delete(tmpFile);
+                } else {
+                    add(name, tmpFile);
+                }
+            } catch (IOException x) {
+                LOG.warn("Failed to write " + tmpFile, x);
+                delete(tmpFile);
+            } finally {
+                pending.remove(name);
+            }
+        }
+
+        private void abort() {
+            if (done) {
+                return;
+            }
+            done = true;
+            FileUtil.closeQuietly(out);
+            delete(tmpFile);
+            pending.remove(name);
+        }
+    }
+}
@@ -19,9 +19,11 @@
  */
 package org.airsonic.player.service;
 
+import net.sf.ehcache.Ehcache;
 import org.airsonic.player.controller.VideoPlayerController;
 import org.airsonic.player.dao.TranscodingDao;
 import org.airsonic.player.domain.*;
+import org.airsonic.player.io.FileSourceInputStream;
 import org.airsonic.player.io.TranscodeInputStream;
 import org.airsonic.player.util.StringUtil;
 import org.airsonic.player.util.Util;
@@ -36,7 +38,7 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
@@ -62,8 +64,12 @@ public class TranscodingService {
     @Autowired
     private SettingsService settingsService;
     @Autowired
+    private TranscodeCacheService transcodeCacheService;
+    @Autowired
     @Lazy // used to deal with circular dependencies between PlayerService and TranscodingService
     private PlayerService playerService;
+    @Autowired
+    private Ehcache upnpItemCache;
 
     /**
      * Returns all transcodings.
@@ -93,6 +99,7 @@ public class TranscodingService {
      */
     public void setTranscodingsForPlayer(Player player, int[] transcodingIds) {
         transcodingDao.setTranscodingsForPlayer(player.getId(), transcodingIds);
+        evictUpnpItems();
     }
 
     /**
@@ -137,6 +144,7 @@ public class TranscodingService {
      */
     public void deleteTranscoding(Integer id) {
         transcodingDao.deleteTranscoding(id);
+        evictUpnpItems();
     }
 
     /**
@@ -146,6 +154,14 @@ public class TranscodingService {
      */
     public void updateTranscoding(Transcoding transcoding) {
         transcodingDao.updateTranscoding(transcoding);
+        evictUpnpItems();
+    }
+
+    /**
+     * Clears the cached UPnP items, since the suffix and MIME type they advertise depend on the transcodings.
+     */
+    private void evictUpnpItems() {
+        upnpItemCache.removeAll();
     }
 
     /**
@@ -233,6 +249,9 @@ public class TranscodingService {
         }
 
         parameters.setMaxBitRate(maxBitRate == 0 ? null : maxBitRate);
+        if (parameters.isTranscode()) {
+            parameters.setCachedFile(transcodeCacheService.getCachedFile(parameters));
+        }
         parameters.setExpectedLength(getExpectedLength(parameters));
         parameters.setRangeAllowed(isRangeAllowed(parameters));
         return parameters;
@@ -248,6 +267,8 @@ public class TranscodingService {
      * with a bit rate limit which is higher than the actual bit rate of the file.
      * <p/>
      * Otherwise, a normal input stream to the original file is returned.
+     * <p/>
+     * Transcoded audio is read from the transcode cache if possible, and added to it otherwise.
      *
      * @param parameters As returned by {@link #getParameters}.
      * @return A possible transcoded or downsampled input stream.
@@ -257,7 +278,14 @@ public class TranscodingService {
         try {
 
             if (parameters.getTranscoding() != null) {
-                return createTranscodedInputStream(parameters);
+                if (parameters.getCachedFile() != null) {
+                    try {
+                        return new FileSourceInputStream(parameters.getCachedFile());
+                    } catch (FileNotFoundException x) {
+                        LOG.debug("Cached transcoding was removed: " + parameters.getCachedFile());
+                    }
+                }
+                return transcodeCacheService.cache(parameters, createTranscodedInputStream(parameters));
             }
 
         } catch (IOException x) {
@@ -266,7 +294,7 @@ public class TranscodingService {
             LOG.warn("Transcoder failed. Using original: " + parameters.getMediaFile().getFile().getAbsolutePath(), x);
         }
 
-        return new FileInputStream(parameters.getMediaFile().getFile());
+        return new FileSourceInputStream(parameters.getMediaFile().getFile());
     }
 
 
@@ -505,6 +533,9 @@ public class TranscodingService {
         if (!parameters.isTranscode()) {
             return file.getFileSize();
         }
+        if (parameters.getCachedFile() != null) {
+            return parameters.getCachedFile().length();
+        }
         Integer duration = file.getDurationSeconds();
         Integer maxBitRate = parameters.getMaxBitRate();
 
@@ -530,6 +561,9 @@ public class TranscodingService {
         } else {
             return true;  // not transcoding
         }
+        if (parameters.getCachedFile() != null) {
+            return true;  // already transcoded
+        }
 
         // Verify that were able to predict the length
         if (parameters.getExpectedLength() == null) {
@@ -573,6 +607,14 @@ public class TranscodingService {
         this.playerService = playerService;
     }
 
+    public void setTranscodeCacheService(TranscodeCacheService transcodeCacheService) {
+        this.transcodeCacheService = transcodeCacheService;
+    }
+
+    public void setUpnpItemCache(Ehcache upnpItemCache) {
+        this.upnpItemCache = upnpItemCache;
+    }
+
     public static class Parameters {
         private boolean downsample;
         private Long expectedLength;
@@ -581,6 +623,7 @@ public class TranscodingService {
         private final VideoTranscodingSettings videoTranscodingSettings;
         private Integer maxBitRate;
         private Transcoding transcoding;
+        private File cachedFile;
 
         public Parameters(MediaFile mediaFile, VideoTranscodingSettings videoTranscodingSettings) {
             this.mediaFile = mediaFile;
@@ -630,5 +673,16 @@ public class TranscodingService {
         public VideoTranscodingSettings getVideoTranscodingSettings() {
             return videoTranscodingSettings;
         }
+
+        /**
+         * Returns the cached output of the transcoding, or {@code null} if not cached.
+         */
+        public File getCachedFile() {
+            return cachedFile;
+        }
+
+        public void setCachedFile(File cachedFile) {
+            this.cachedFile = cachedFile;
+        }
     }
 }
@@ -0,0 +1,381 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.service.metadata;
+
+import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the parsed meta data of media files on disk, keyed by path, size and modification time, so that
+ * unchanged files need not be parsed again when their media files are re-created. This happens for instance
+ * when the database is rebuilt, or when {@link org.airsonic.player.dao.MediaFileDao#VERSION} is bumped.
+ * <p/>
+ * The cache is an append-only log in the Airsonic home. Only the position of each entry is kept in memory.
+ * Superseded entries, and entries of files that no longer exist, are removed from the log on startup, once
+ * the superseded ones outnumber the current ones. Meta data without a duration is not cached, since it
+ * usually means that parsing failed.
+ * <p/>
+ * Entries are read concurrently, with positional reads that do not lock. Only appending to the log is
+ * serialized.
+ */
+@Component
+public class MetaDataCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetaDataCache.class);
+    private static final String FILE_NAME = "metadata.cache";
+    private static final int MAGIC = 0x41534d44;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final int MAX_RECORD_LENGTH = 1024 * 1024;
+
+    // Entries are only added once their record is completely written.
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private volatile FileChannel reader;
+
+    // Guarded by appendLock.
+    private final Object appendLock = new Object();
+    private File file;
+    private RandomAccessFile log;
+    private int recordCount;
+
+    @PostConstruct
+    public void init() {
+        open(new File(SettingsService.getAirsonicHome(), FILE_NAME));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        synchronized (appendLock) {
+            FileUtil.closeQuietly(log);
+            FileUtil.closeQuietly(reader);
+            log = null;
+            reader = null;
+        }
+    }
+
+    /**
+     * Returns the meta data of the given file, either from the cache or by parsing the file.
+     *
+     * @param parser The parser to use if the file is not cached.
+     * @param file   The file in question.
+     * @return Meta data for the file, never null.
+     */
+    public MetaData getMetaData(MetaDataParser parser, File file) {
+        String path = file.getPath();
+        long size = FileUtil.length(file);
+        long lastModified = FileUtil.lastModified(file);
+
+        MetaData metaData = get(path, size, lastModified);
+        if (metaData == null) {
+            metaData = parser.getMetaData(file);
+            if (metaData.getDurationSeconds() != null) {
+                put(path, size, lastModified, metaData);
+            }
+        }
+        return metaData;
+    }
+
+    /**
+     * Opens the cache in the given file, creating it if necessary.
+     */
+    void open(File file) {
+        synchronized (appendLock) {
+            this.file = file;
+            entries.clear();
+            recordCount = 0;
+            long length = load();
+            try {
+                log = new RandomAccessFile(file, "rw");
+                if (length < HEADER_LENGTH) {
+                    log.setLength(0);
+                    log.writeInt(MAGIC);
+                    log.writeInt(FORMAT_VERSION);
+                } else {
+                    // Drop any incomplete entry at the end.
+                    log.setLength(length);
+                }
+                LOG.debug("Meta data cache contains {} entries.", entries.size());
+                if (recordCount > 1000 && recordCount > 2 * entries.size()) {
+                    compact();
+                }
+                reader = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            } catch (IOException x) {
+                LOG.warn("Failed to open meta data cache " + file + ", files will be parsed every time.", x);
+                destroy();
+            }
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Reads the positions of the entries in the log.
+     *
+     * @return The length of the valid part of the log, or zero if there is none.
+     */
+    private long load() {
+        if (!file.exists()) {
+            return 0;
+        }
+        long position = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOG.info("Discarding meta data cache in old format.");
+                return 0;
+            }
+            position = HEADER_LENGTH;
+            while (true) {
+                byte[] record = new byte[checkRecordLength(in.readInt())];
+                in.readFully(record);
+                try (DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record))) {
+                    String path = recordIn.readUTF();
+                    entries.put(path, new Entry(recordIn.readLong(), recordIn.readLong(), position));
+                }
+                recordCount++;
+                position += 4 + record.length;
+            }
+        } catch (EOFException x) {
+            return position;
+        } catch (IOException x) {
+            LOG.warn("Failed to read meta data cache " + file + ", discarding the rest of it.", x);
+            return position;
+        }
+    }
+
+    private MetaData get(String path, long size, long lastModified) {
+        FileChannel reader = this.reader;
+        Entry entry = entries.get(path);
+        if (reader == null || entry == null || entry.size != size || entry.lastModified != lastModified) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(readRecord(reader, entry.position)));
+            in.readUTF();
+            in.readLong();
+            in.readLong();
+            return readMetaData(in);
+        } catch (ClosedChannelException x) {
+            // The channel is closed when a thread reading from it is interrupted.
+            reopenReader(reader);
+            return null;
+        } catch (IOException x) {
+            LOG.warn("Failed to read meta data of " + path + " from cache.", x);
+            return null;
+        }
+    }
+
+    private void reopenReader(FileChannel closed) {
+        synchronized (appendLock) {
+            if (reader != closed || log == null) {
+                return;
+            }
+            try {
+                reader = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            } catch (IOException x) {
+                LOG.warn("Failed to reopen meta data cache " + file + ", files will be parsed every time.", x);
+                destroy();
+            }
+        }
+    }
+
+    private void put(String path, long size, long lastModified, MetaData metaData) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(record)) {
+            out.writeUTF(path);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            writeMetaData(out, metaData);
+        } catch (UTFDataFormatException x) {
+            LOG.debug("Not caching meta data of " + path + ", which is too long.", x);
+            return;
+        } catch (IOException x) {
+            LOG.warn("Failed to cache meta data of " + path + ".", x);
+            return;
+        }
+
+        synchronized (appendLock) {
+            if (log == null) {
+                return;
+            }
+            try {
+                long position = log.length();
+                log.seek(position);
+                log.writeInt(record.size());
+                log.write(record.toByteArray());
+                entries.put(path, new Entry(size, lastModified, position));
+                recordCount++;
+            } catch (IOException x) {
+                LOG.warn("Failed to write meta data cache " + file + ", files will be parsed every time.", x);
+                destroy();
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with the current entries of existing files only.
+     */
+    private void compact() throws IOException {
+        LOG.info("Compacting meta data cache, removing {} superseded entries.", recordCount - entries.size());
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Map<String, Entry> compacted = new HashMap<String, Entry>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (!new File(entry.getKey()).exists()) {
+                    continue;
+                }
+                Entry value = entry.getValue();
+                byte[] record = readRecord(log, value.position);
+                compacted.put(entry.getKey(), new Entry(value.size, value.lastModified, out.size()));
+                out.writeInt(record.length);
+                out.write(record);
+            }
+        }
+        log.close();
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log = new RandomAccessFile(file, "rw");
+        LOG.debug("Meta data cache contains {} entries after compaction.", compacted.size());
+        entries.clear();
+        entries.putAll(compacted);
+        recordCount = entries.size();
+    }
+
+    private static byte[] readRecord(RandomAccessFile log, long position) throws IOException {
+        log.seek(position);
+        byte[] record = new byte[checkRecordLength(log.readInt())];
+        log.readFully(record);
+        return record;
+    }
+
+    private static byte[] readRecord(FileChannel reader, long position) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(reader, length, position);
+        ByteBuffer record = ByteBuffer.allocate(checkRecordLength(length.getInt(0)));
+        readFully(reader, record, position + 4);
+        return record.array();
+    }
+
+    private static void readFully(FileChannel reader, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (reader.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static int checkRecordLength(int length) throws IOException {
+        if (length < 0 || length > MAX_RECORD_LENGTH) {
+            throw new IOException("Invalid entry length " + length);
+        }
+        return length;
+    }
+
+    private static void writeMetaData(DataOutputStream out, MetaData metaData) throws IOException {
+        writeInteger(out, metaData.getDiscNumber());
+        writeInteger(out, metaData.getTrackNumber());
+        writeString(out, metaData.getTitle());
+        writeString(out, metaData.getArtist());
+        writeString(out, metaData.getAlbumArtist());
+        writeString(out, metaData.getAlbumName());
+        writeString(out, metaData.getGenre());
+        writeInteger(out, metaData.getYear());
+        writeInteger(out, metaData.getBitRate());
+        out.writeBoolean(metaData.getVariableBitRate());
+        writeInteger(out, metaData.getDurationSeconds());
+        writeInteger(out, metaData.getWidth());
+        writeInteger(out, metaData.getHeight());
+        writeString(out, metaData.getMusicBrainzReleaseId());
+        writeString(out, metaData.getMusicBrainzRecordingId());
+    }
+
+    private static MetaData readMetaData(DataInputStream in) throws IOException {
+        MetaData metaData = new MetaData();
+        metaData.setDiscNumber(readInteger(in));
+        metaData.setTrackNumber(readInteger(in));
+        metaData.setTitle(readString(in));
+        metaData.setArtist(readString(in));
+        metaData.setAlbumArtist(readString(in));
+        metaData.setAlbumName(readString(in));
+        metaData.setGenre(readString(in));
+        metaData.setYear(readInteger(in));
+        metaData.setBitRate(readInteger(in));
+        metaData.setVariableBitRate(in.readBoolean());
+        metaData.setDurationSeconds(readInteger(in));
+        metaData.setWidth(readInteger(in));
+        metaData.setHeight(readInteger(in));
+        metaData.setMusicBrainzReleaseId(readString(in));
+        metaData.setMusicBrainzRecordingId(readString(in));
+        return metaData;
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final long position;
+
+        Entry(long size, long lastModified, long position) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.service.metadata;
+
+import org.airsonic.player.service.SettingsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses meta data for many files at once, in the background. Tags are parsed by a pool with one thread
+ * per processor, while video files are probed by a separate, smaller pool, since each probe forks an
+ * <code>ffprobe</code> process. The sizes of both pools are configurable in {@link SettingsService}.
+ *
+ * @see MetaDataParserFactory
+ * @see MetaDataCache
+ */
+@Component
+public class MetaDataParserPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetaDataParserPool.class);
+
+    private final MetaDataParserFactory metaDataParserFactory;
+    private final MetaDataCache metaDataCache;
+    private final SettingsService settingsService;
+    private final ThreadPoolExecutor parserExecutor;
+    private final ThreadPoolExecutor ffprobeExecutor;
+
+    @Autowired
+    public MetaDataParserPool(MetaDataParserFactory metaDataParserFactory, MetaDataCache metaDataCache,
+                              SettingsService settingsService) {
+        this.metaDataParserFactory = metaDataParserFactory;
+        this.metaDataCache = metaDataCache;
+        this.settingsService = settingsService;
+        parserExecutor = createExecutor(settingsService.getMetaDataParserThreads(), "MetaDataParser");
+        ffprobeExecutor = createExecutor(settingsService.getFFprobeThreads(), "FFprobe");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        parserExecutor.shutdownNow();
+        ffprobeExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts parsing meta data for the given files.
+     *
+     * @param files The files to parse.
+     * @return The meta data of each file, in the same order as the files. The meta data is <code>null</code>
+     * for files without an applicable parser.
+     */
+    public List<Future<MetaData>> parse(List<File> files) {
+        // Pick up changed settings.
+        resize(parserExecutor, settingsService.getMetaDataParserThreads());
+        resize(ffprobeExecutor, settingsService.getFFprobeThreads());
+
+        List<Future<MetaData>> result = new ArrayList<Future<MetaData>>(files.size());
+        for (File file : files) {
+            MetaDataParser parser = metaDataParserFactory.getParser(file);
+            if (parser == null) {
+                result.add(CompletableFuture.completedFuture(null));
+            } else {
+                ThreadPoolExecutor executor = parser instanceof FFmpegParser ? ffprobeExecutor : parserExecutor;
+                result.add(CompletableFuture.supplyAsync(() -> metaDataCache.getMetaData(parser, file), executor));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the meta data of the given file, as returned by {@link #parse}. If it could not be parsed
+     * in the background, it is parsed by the calling thread instead.
+     */
+    public MetaData get(Future<MetaData> metaData, File file) {
+        try {
+            return metaData.get();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException x) {
+            LOG.warn("Failed to parse meta data in " + file, x.getCause());
+        }
+        MetaDataParser parser = metaDataParserFactory.getParser(file);
+        return parser == null ? null : metaDataCache.getMetaData(parser, file);
+    }
+
+    private static void resize(ThreadPoolExecutor executor, int threads) {
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else if (threads < executor.getMaximumPoolSize()) {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor(int threads, String name) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setName(name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<Runnable>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
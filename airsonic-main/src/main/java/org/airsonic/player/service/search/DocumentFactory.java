@@ -25,9 +25,11 @@ import org.airsonic.player.domain.Artist;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.TextField;
@@ -48,21 +50,12 @@ import static org.springframework.util.ObjectUtils.isEmpty;
 @Component
 public class DocumentFactory {
 
-    private static final FieldType TYPE_ID;
-
     private static final FieldType TYPE_ID_NO_STORE;
 
     private static final FieldType TYPE_KEY;
 
     static {
 
-        TYPE_ID = new FieldType();
-        TYPE_ID.setIndexOptions(IndexOptions.DOCS);
-        TYPE_ID.setTokenized(false);
-        TYPE_ID.setOmitNorms(true);
-        TYPE_ID.setStored(true);
-        TYPE_ID.freeze();
-
         TYPE_ID_NO_STORE = new FieldType();
         TYPE_ID_NO_STORE.setIndexOptions(IndexOptions.DOCS);
         TYPE_ID_NO_STORE.setTokenized(false);
@@ -85,8 +78,13 @@ public class DocumentFactory {
 
     }
 
+    /*
+     * The id is indexed as a term, which is the primary key for updates and deletes,
+     * and kept as doc values, from which search results are read. It is not stored.
+     */
     private BiConsumer<@NonNull Document, @NonNull Integer> fieldId = (doc, value) -> {
-        doc.add(new StoredField(FieldNames.ID, Integer.toString(value), TYPE_ID));
+        doc.add(new Field(FieldNames.ID, Integer.toString(value), TYPE_ID_NO_STORE));
+        doc.add(new NumericDocValuesField(FieldNames.ID, value));
     };
 
     private BiConsumer<@NonNull Document, @NonNull Integer> fieldFolderId = (doc, value) -> {
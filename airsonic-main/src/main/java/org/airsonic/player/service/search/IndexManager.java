@@ -32,6 +32,7 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
@@ -39,18 +40,26 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
-import static org.springframework.util.ObjectUtils.isEmpty;
-
 /**
  * Function class that is strongly linked to the lucene index implementation.
  * Legacy has an implementation in SearchService.
@@ -59,6 +68,11 @@ import static org.springframework.util.ObjectUtils.isEmpty;
  * there is often a dependency conflict on the class used.
  * Although the interface of SearchService is left to maintain the legacy implementation,
  * it is desirable that methods of index operations other than search essentially use this class directly.
+ *
+ * One IndexWriter per index is kept open, and searches use near-real-time readers from it, so that media
+ * files changed between scans can be indexed with {@link #update(MediaFile)} and {@link #delete(MediaFile)}.
+ * The readers are refreshed every second, and changes made between scans are committed every minute.
+ * While a scan is indexing, the readers are not refreshed until it completes.
  */
 @Component
 public class IndexManager {
@@ -74,7 +88,7 @@ public class IndexManager {
      *    DocumentFactory or the class that they use.
      *
      */
-    private static final int INDEX_VERSION = 19;
+    private static final int INDEX_VERSION = 20;
 
     /**
      * Literal name of index top directory.
@@ -83,6 +97,10 @@ public class IndexManager {
 
     private static final String MEDIA_STATISTICS_KEY = "stats";
 
+    private static final long REFRESH_INTERVAL_SECONDS = 1;
+
+    private static final long COMMIT_INTERVAL_SECONDS = 60;
+
     /**
      * File supplier for index directory.
      */
@@ -110,15 +128,69 @@ public class IndexManager {
     @Autowired
     private AlbumDao albumDao;
 
-    private EnumMap<IndexType, SearcherManager> searchers = new EnumMap<>(IndexType.class);
+    // The maps are guarded by this.
+    private final EnumMap<IndexType, Directory> directories = new EnumMap<>(IndexType.class);
+
+    private final EnumMap<IndexType, SearcherManager> searchers = new EnumMap<>(IndexType.class);
+
+    // Read without locking, but only modified while holding this.
+    private final Map<IndexType, IndexWriter> writers = new ConcurrentHashMap<>();
 
-    private EnumMap<IndexType, IndexWriter> writers = new EnumMap<>(IndexType.class);
+    // Media files changed outside the scan while it is indexing, by id.
+    private final Map<Integer, MediaFile> pendingUpdates = new ConcurrentHashMap<>();
+
+    // The statistics of the last scan, or null if not read from the index yet. Guarded by this.
+    private MediaLibraryStatistics statistics;
+
+    // Whether a scan is indexing, between startIndexing and stopIndexing.
+    private volatile boolean indexing;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "IndexRefresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, REFRESH_INTERVAL_SECONDS, REFRESH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::commit, COMMIT_INTERVAL_SECONDS, COMMIT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Commits any pending changes and closes the indexes.
+     */
+    @PreDestroy
+    public synchronized void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        commit();
+        searchers.values().forEach(FileUtil::closeQuietly);
+        searchers.clear();
+        for (IndexWriter writer : writers.values()) {
+            try {
+                // An interrupted scan is discarded, and done again on the next start.
+                if (indexing) {
+                    writer.rollback();
+                } else {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to close search index.", e);
+            }
+        }
+        writers.clear();
+        directories.values().forEach(FileUtil::closeQuietly);
+        directories.clear();
+    }
 
     public void index(Album album) {
         Term primarykey = documentFactory.createPrimarykey(album);
         Document document = documentFactory.createAlbumId3Document(album);
         try {
-            writers.get(IndexType.ALBUM_ID3).updateDocument(primarykey, document);
+            getWriter(IndexType.ALBUM_ID3).updateDocument(primarykey, document);
         } catch (Exception x) {
             LOG.error("Failed to create search index for " + album, x);
         }
@@ -128,44 +200,170 @@ public class IndexManager {
         Term primarykey = documentFactory.createPrimarykey(artist);
         Document document = documentFactory.createArtistId3Document(artist, musicFolder);
         try {
-            writers.get(IndexType.ARTIST_ID3).updateDocument(primarykey, document);
+            getWriter(IndexType.ARTIST_ID3).updateDocument(primarykey, document);
         } catch (Exception x) {
             LOG.error("Failed to create search index for " + artist, x);
         }
     }
 
     public void index(MediaFile mediaFile) {
+        if (indexing) {
+            // The scan indexes the current state of the media file, so a pending update is superseded.
+            pendingUpdates.remove(mediaFile.getId());
+        }
         Term primarykey = documentFactory.createPrimarykey(mediaFile);
         try {
             if (mediaFile.isFile()) {
                 Document document = documentFactory.createSongDocument(mediaFile);
-                writers.get(IndexType.SONG).updateDocument(primarykey, document);
+                getWriter(IndexType.SONG).updateDocument(primarykey, document);
             } else if (mediaFile.isAlbum()) {
                 Document document = documentFactory.createAlbumDocument(mediaFile);
-                writers.get(IndexType.ALBUM).updateDocument(primarykey, document);
+                getWriter(IndexType.ALBUM).updateDocument(primarykey, document);
             } else {
                 Document document = documentFactory.createArtistDocument(mediaFile);
-                writers.get(IndexType.ARTIST).updateDocument(primarykey, document);
+                getWriter(IndexType.ARTIST).updateDocument(primarykey, document);
             }
         } catch (Exception x) {
             LOG.error("Failed to create search index for " + mediaFile, x);
         }
     }
 
+    /**
+     * Indexes a media file that was changed outside a scan, for instance by editing its tags or by
+     * downloading a Podcast episode. While a scan is indexing, the change is held back until the scan
+     * either indexes the media file itself or finishes, since the scan updates most media files it visits.
+     */
+    public void update(MediaFile mediaFile) {
+        if (indexing) {
+            pendingUpdates.put(mediaFile.getId(), mediaFile);
+            // The scan may have finished, and applied the pending updates, in the meantime.
+            if (indexing || pendingUpdates.remove(mediaFile.getId()) == null) {
+                return;
+            }
+        }
+        apply(mediaFile);
+    }
+
+    private void apply(MediaFile mediaFile) {
+        if (mediaFile.isPresent()) {
+            index(mediaFile);
+        } else {
+            delete(mediaFile);
+        }
+    }
+
+    /**
+     * Removes a media file from the index, for instance because it was deleted.
+     */
+    public void delete(MediaFile mediaFile) {
+        Term primarykey = documentFactory.createPrimarykey(mediaFile);
+        IndexType indexType = mediaFile.isFile() ? IndexType.SONG : mediaFile.isAlbum() ? IndexType.ALBUM : IndexType.ARTIST;
+        try {
+            getWriter(indexType).deleteDocuments(primarykey);
+        } catch (Exception x) {
+            LOG.error("Failed to delete " + mediaFile + " from search index.", x);
+        }
+    }
+
     public final void startIndexing() {
+        indexing = true;
         try {
-            for (IndexType IndexType : IndexType.values()) {
-                writers.put(IndexType, createIndexWriter(IndexType));
+            for (IndexType indexType : IndexType.values()) {
+                getWriter(indexType);
             }
         } catch (IOException e) {
             LOG.error("Failed to create search index.", e);
         }
     }
 
-    private IndexWriter createIndexWriter(IndexType indexType) throws IOException {
-        File indexDirectory = getIndexDirectory.apply(indexType);
-        IndexWriterConfig config = new IndexWriterConfig(analyzerFactory.getAnalyzer());
-        return new IndexWriter(FSDirectory.open(indexDirectory.toPath()), config);
+    /**
+     * Returns the writer of the specified index, opening it if necessary.
+     * Once the writer is open, the index is searched through it.
+     */
+    private IndexWriter getWriter(IndexType indexType) throws IOException {
+        IndexWriter writer = writers.get(indexType);
+        return writer == null ? openWriter(indexType) : writer;
+    }
+
+    private synchronized IndexWriter openWriter(IndexType indexType) throws IOException {
+        IndexWriter writer = writers.get(indexType);
+        if (writer == null) {
+            Directory directory = getDirectory(indexType);
+            Map<String, String> userData = getLastCommitData(directory);
+            writer = new IndexWriter(directory, new IndexWriterConfig(analyzerFactory.getAnalyzer()));
+            try {
+                // Keep the statistics of the last scan in the commits made between scans.
+                writer.setLiveCommitData(userData.entrySet());
+                FileUtil.closeQuietly(searchers.put(indexType, new SearcherManager(writer, null)));
+            } catch (IOException e) {
+                FileUtil.closeQuietly(writer);
+                throw e;
+            }
+            writers.put(indexType, writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Closes the writer of the specified index after a failure, so that it is opened again when needed.
+     */
+    private synchronized void closeWriter(IndexType indexType) {
+        FileUtil.closeQuietly(searchers.remove(indexType));
+        FileUtil.closeQuietly(writers.remove(indexType));
+    }
+
+    private synchronized Directory getDirectory(IndexType indexType) throws IOException {
+        Directory directory = directories.get(indexType);
+        if (directory == null) {
+            directory = FSDirectory.open(getIndexDirectory.apply(indexType).toPath());
+            directories.put(indexType, directory);
+        }
+        return directory;
+    }
+
+    private static Map<String, String> getLastCommitData(Directory directory) throws IOException {
+        if (!DirectoryReader.indexExists(directory)) {
+            return Collections.emptyMap();
+        }
+        List<IndexCommit> commits = DirectoryReader.listCommits(directory);
+        return commits.get(commits.size() - 1).getUserData();
+    }
+
+    /**
+     * Makes the changes made between scans visible to searches. Called by the scheduler.
+     */
+    private void refresh() {
+        if (indexing) {
+            return;
+        }
+        for (SearcherManager manager : getSearcherManagers()) {
+            try {
+                manager.maybeRefresh();
+            } catch (Exception e) {
+                LOG.warn("Failed to refresh SearcherManager.", e);
+            }
+        }
+    }
+
+    /**
+     * Commits the changes made between scans. Called by the scheduler, and on shutdown.
+     */
+    private synchronized void commit() {
+        if (indexing) {
+            return;
+        }
+        for (IndexType indexType : IndexType.values()) {
+            IndexWriter writer = writers.get(indexType);
+            if (writer != null && writer.hasUncommittedChanges()) {
+                try {
+                    writer.commit();
+                    LOG.trace("Committed changes to search index : [" + indexType + "]");
+                } catch (Exception e) {
+                    LOG.error("Failed to commit search index : [" + indexType + "]", e);
+                    closeWriter(indexType);
+                }
+            }
+        }
     }
 
     public void expunge() {
@@ -174,7 +372,7 @@ public class IndexManager {
                 .map(m -> documentFactory.createPrimarykey(m))
                 .toArray(i -> new Term[i]);
         try {
-            writers.get(IndexType.ARTIST).deleteDocuments(primarykeys);
+            getWriter(IndexType.ARTIST).deleteDocuments(primarykeys);
         } catch (IOException e) {
             LOG.error("Failed to delete artist doc.", e);
         }
@@ -183,7 +381,7 @@ public class IndexManager {
                 .map(m -> documentFactory.createPrimarykey(m))
                 .toArray(i -> new Term[i]);
         try {
-            writers.get(IndexType.ALBUM).deleteDocuments(primarykeys);
+            getWriter(IndexType.ALBUM).deleteDocuments(primarykeys);
         } catch (IOException e) {
             LOG.error("Failed to delete album doc.", e);
         }
@@ -192,7 +390,7 @@ public class IndexManager {
                 .map(m -> documentFactory.createPrimarykey(m))
                 .toArray(i -> new Term[i]);
         try {
-            writers.get(IndexType.SONG).deleteDocuments(primarykeys);
+            getWriter(IndexType.SONG).deleteDocuments(primarykeys);
         } catch (IOException e) {
             LOG.error("Failed to delete song doc.", e);
         }
@@ -201,7 +399,7 @@ public class IndexManager {
                 .map(m -> documentFactory.createPrimarykey(m))
                 .toArray(i -> new Term[i]);
         try {
-            writers.get(IndexType.ARTIST_ID3).deleteDocuments(primarykeys);
+            getWriter(IndexType.ARTIST_ID3).deleteDocuments(primarykeys);
         } catch (IOException e) {
             LOG.error("Failed to delete artistId3 doc.", e);
         }
@@ -210,7 +408,7 @@ public class IndexManager {
                 .map(m -> documentFactory.createPrimarykey(m))
                 .toArray(i -> new Term[i]);
         try {
-            writers.get(IndexType.ALBUM_ID3).deleteDocuments(primarykeys);
+            getWriter(IndexType.ALBUM_ID3).deleteDocuments(primarykeys);
         } catch (IOException e) {
             LOG.error("Failed to delete albumId3 doc.", e);
         }
@@ -218,32 +416,41 @@ public class IndexManager {
     }
 
     /**
-     * Close Writer of all indexes and update SearcherManager.
+     * Commit Writer of all indexes and refresh SearcherManager.
      * Called at the end of the Scan flow.
      */
-    public void stopIndexing(MediaLibraryStatistics statistics) {
-        Arrays.asList(IndexType.values()).forEach(indexType -> stopIndexing(indexType, statistics));
+    public synchronized void stopIndexing(MediaLibraryStatistics statistics) {
+        // Updates made from now on are applied directly, and committed with the scan or the next time.
+        indexing = false;
+        for (Integer id : new ArrayList<>(pendingUpdates.keySet())) {
+            MediaFile mediaFile = pendingUpdates.remove(id);
+            if (mediaFile != null) {
+                apply(mediaFile);
+            }
+        }
+        Map<String, String> userData = Util.objectToStringMap(statistics);
+        Arrays.asList(IndexType.values()).forEach(indexType -> stopIndexing(indexType, userData));
+        this.statistics = null;
     }
 
     /**
-     * Close Writer of specified index and refresh SearcherManager.
+     * Commit Writer of specified index and refresh SearcherManager.
      */
-    private void stopIndexing(IndexType type, MediaLibraryStatistics statistics) {
+    private void stopIndexing(IndexType type, Map<String, String> userData) {
 
-        boolean isUpdate = false;
-        // close
         IndexWriter indexWriter = writers.get(type);
+        if (indexWriter == null) {
+            return;
+        }
+
+        boolean isUpdate = false;
         try {
-            Map<String,String> userData = Util.objectToStringMap(statistics);
             indexWriter.setLiveCommitData(userData.entrySet());
             isUpdate = -1 != indexWriter.commit();
-            indexWriter.close();
-            writers.remove(type);
             LOG.trace("Success to create or update search index : [" + type + "]");
         } catch (IOException e) {
             LOG.error("Failed to create search index.", e);
-        } finally {
-            FileUtil.closeQuietly(indexWriter);
+            closeWriter(type);
         }
 
         // refresh reader as index may have been written
@@ -253,7 +460,7 @@ public class IndexManager {
                 LOG.trace("SearcherManager has been refreshed : [" + type + "]");
             } catch (IOException e) {
                 LOG.error("Failed to refresh SearcherManager : [" + type + "]", e);
-                searchers.remove(type);
+                closeWriter(type);
             }
         }
 
@@ -263,21 +470,27 @@ public class IndexManager {
      * Return the MediaLibraryStatistics saved on commit in the index. Ensures that each index reports the same data.
      * On invalid indices, returns null.
      */
-    public @Nullable MediaLibraryStatistics getStatistics() {
+    public synchronized @Nullable MediaLibraryStatistics getStatistics() {
+        if (statistics == null) {
+            statistics = readStatistics();
+        }
+        return statistics;
+    }
+
+    private @Nullable MediaLibraryStatistics readStatistics() {
         MediaLibraryStatistics stats = null;
         for (IndexType indexType : IndexType.values()) {
-            IndexSearcher searcher = getSearcher(indexType);
-            if (searcher == null) {
+            if (!getIndexDirectory.apply(indexType).exists()) {
                 LOG.trace("No index for type " + indexType);
                 return null;
             }
-            IndexReader indexReader = searcher.getIndexReader();
-            if (!(indexReader instanceof DirectoryReader)) {
-                LOG.warn("Unexpected index type " + indexReader.getClass());
-                return null;
-            }
             try {
-                Map<String, String> userData = ((DirectoryReader) indexReader).getIndexCommit().getUserData();
+                Directory directory = getDirectory(indexType);
+                if (!DirectoryReader.indexExists(directory)) {
+                    LOG.trace("No index for type " + indexType);
+                    return null;
+                }
+                Map<String, String> userData = getLastCommitData(directory);
                 MediaLibraryStatistics currentStats = Util.stringMapToValidObject(MediaLibraryStatistics.class,
                         userData);
                 if (stats == null) {
@@ -302,41 +515,53 @@ public class IndexManager {
      * if the user performs any search before performing a scan.
      */
     public @Nullable IndexSearcher getSearcher(IndexType indexType) {
+        SearcherManager manager = getSearcherManager(indexType);
+        if (manager == null) {
+            return null;
+        }
+        try {
+            return manager.acquire();
+        } catch (Exception e) {
+            LOG.warn("Failed to acquire IndexSearcher.", e);
+        }
+        return null;
+    }
+
+    private synchronized @Nullable SearcherManager getSearcherManager(IndexType indexType) {
         if (!searchers.containsKey(indexType)) {
             File indexDirectory = getIndexDirectory.apply(indexType);
             try {
                 if (indexDirectory.exists()) {
-                    SearcherManager manager = new SearcherManager(FSDirectory.open(indexDirectory.toPath()), null);
+                    SearcherManager manager = new SearcherManager(getDirectory(indexType), null);
                     searchers.put(indexType, manager);
                 } else {
                     LOG.warn("{} does not exist. Please run a scan.", indexDirectory.getAbsolutePath());
                 }
             } catch (IndexNotFoundException e) {
                 LOG.debug("Index {} does not exist in {}, likely not yet created.", indexType.toString(), indexDirectory.getAbsolutePath());
-                return null;
             } catch (IOException e) {
                 LOG.warn("Failed to initialize SearcherManager.", e);
-                return null;
             }
         }
-        try {
-            SearcherManager manager = searchers.get(indexType);
-            if (!isEmpty(manager)) {
-                return searchers.get(indexType).acquire();
-            }
-        } catch (Exception e) {
-            LOG.warn("Failed to acquire IndexSearcher.", e);
-        }
-        return null;
+        return searchers.get(indexType);
+    }
+
+    private synchronized List<SearcherManager> getSearcherManagers() {
+        return new ArrayList<>(searchers.values());
     }
 
     public void release(IndexType indexType, IndexSearcher indexSearcher) {
-        if (searchers.containsKey(indexType)) {
+        // A searcher acquired before the writer was opened is released through the new manager, which works
+        // since releasing only decrements the reference count of the reader.
+        SearcherManager manager;
+        synchronized (this) {
+            manager = searchers.get(indexType);
+        }
+        if (manager != null) {
             try {
-                searchers.get(indexType).release(indexSearcher);
+                manager.release(indexSearcher);
             } catch (IOException e) {
                 LOG.error("Failed to release IndexSearcher.", e);
-                searchers.remove(indexType);
             }
         } else {
             // irregular case
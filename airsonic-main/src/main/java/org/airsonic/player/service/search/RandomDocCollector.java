@@ -0,0 +1,113 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.service.search;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Collects a uniformly random sample of the matching documents, without materializing all matches.
+ * <p/>
+ * Uses reservoir sampling with geometric skips (Li's "Algorithm L"), so it runs in time linear in the
+ * number of matches, keeps only the sample in memory, and draws random numbers only for the matches that
+ * enter the sample.
+ */
+class RandomDocCollector extends SimpleCollector {
+
+    private final int[] sample;
+    private final Random random;
+
+    private int docBase;
+    private long seen;
+    private long next;
+    private double weight;
+
+    /**
+     * @param count  The size of the sample.
+     * @param random The source of randomness.
+     */
+    RandomDocCollector(int count, Random random) {
+        this.sample = new int[Math.max(0, count)];
+        this.random = random;
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+        return ScoreMode.COMPLETE_NO_SCORES;
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) {
+        docBase = context.docBase;
+    }
+
+    @Override
+    public void collect(int doc) {
+        long index = seen++;
+        int k = sample.length;
+        if (k == 0) {
+            return;
+        }
+        if (index < k) {
+            sample[(int) index] = docBase + doc;
+            if (index == k - 1) {
+                weight = Math.exp(Math.log(nextDouble()) / k);
+                next = index + skip() + 1;
+            }
+        } else if (index == next) {
+            sample[random.nextInt(k)] = docBase + doc;
+            weight *= Math.exp(Math.log(nextDouble()) / k);
+            next = index + skip() + 1;
+        }
+    }
+
+    /**
+     * Returns the document ids of the sample, in random order.
+     */
+    int[] getDocs() {
+        int[] docs = Arrays.copyOf(sample, (int) Math.min(seen, sample.length));
+        for (int i = docs.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int doc = docs[i];
+            docs[i] = docs[j];
+            docs[j] = doc;
+        }
+        return docs;
+    }
+
+    /**
+     * Returns the number of matches to pass over before the next one enters the sample.
+     */
+    private long skip() {
+        double skip = Math.floor(Math.log(nextDouble()) / Math.log(1 - weight));
+        return skip >= 0 && skip < Long.MAX_VALUE / 2 ? (long) skip : Long.MAX_VALUE / 2;
+    }
+
+    /**
+     * Returns a random number in (0, 1].
+     */
+    private double nextDouble() {
+        return 1.0 - random.nextDouble();
+    }
+}
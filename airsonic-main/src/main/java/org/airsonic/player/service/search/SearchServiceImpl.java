@@ -22,7 +22,6 @@ package org.airsonic.player.service.search;
 
 import org.airsonic.player.domain.*;
 import org.airsonic.player.service.SearchService;
-import org.apache.lucene.document.Document;
 import org.apache.lucene.search.*;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
@@ -32,8 +31,7 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 import static org.airsonic.player.service.search.IndexType.*;
 import static org.springframework.util.ObjectUtils.isEmpty;
@@ -76,9 +74,8 @@ public class SearchServiceImpl implements SearchService {
             int start = Math.min(offset, totalHits);
             int end = Math.min(start + count, totalHits);
 
-            for (int i = start; i < end; i++) {
-                util.addIfAnyMatch(result, indexType, searcher.doc(topDocs.scoreDocs[i].doc));
-            }
+            int[] docs = Arrays.stream(topDocs.scoreDocs, start, end).mapToInt(scoreDoc -> scoreDoc.doc).toArray();
+            util.addIfAnyMatch(result, indexType, util.getIds(searcher, docs));
 
         } catch (IOException e) {
             LOG.error("Failed to execute Lucene search.", e);
@@ -90,28 +87,22 @@ public class SearchServiceImpl implements SearchService {
 
     /**
      * Common processing of random method.
+     * A random sample of the matches is collected, rather than all of them.
      *
      * @param count Number of albums to return.
-     * @param id2ListCallBack Callback to get D from id and store it in List
+     * @param ids2List Callback to get the list of D from their ids
      */
     private final <D> List<D> createRandomDocsList(
-            int count, IndexSearcher searcher, Query query, BiConsumer<List<D>, Integer> id2ListCallBack)
+            int count, IndexSearcher searcher, Query query, Function<List<Integer>, List<D>> ids2List)
             throws IOException {
 
-        List<Integer> docs = Arrays
-                .stream(searcher.search(query, Integer.MAX_VALUE).scoreDocs)
-                .map(sd -> sd.doc)
-                .collect(Collectors.toList());
-
-        List<D> result = new ArrayList<>();
-        while (!docs.isEmpty() && result.size() < count) {
-            int randomPos = util.nextInt.apply(docs.size());
-            Document document = searcher.doc(docs.get(randomPos));
-            id2ListCallBack.accept(result, util.getId.apply(document));
-            docs.remove(randomPos);
+        if (count <= 0) {
+            return new ArrayList<>();
         }
 
-        return result;
+        RandomDocCollector collector = new RandomDocCollector(count, util.getRandom.get());
+        searcher.search(query, collector);
+        return ids2List.apply(util.getIds(searcher, collector.getDocs()));
     }
 
     @Override
@@ -126,8 +117,7 @@ public class SearchServiceImpl implements SearchService {
         try {
 
             Query query = queryFactory.getRandomSongs(criteria);
-            return createRandomDocsList(criteria.getCount(), searcher, query,
-                (dist, id) -> util.addIgnoreNull(dist, SONG, id));
+            return createRandomDocsList(criteria.getCount(), searcher, query, util::getMediaFiles);
 
         } catch (IOException e) {
             LOG.error("Failed to search or random songs.", e);
@@ -149,8 +139,7 @@ public class SearchServiceImpl implements SearchService {
 
         try {
 
-            return createRandomDocsList(count, searcher, query,
-                (dist, id) -> util.addIgnoreNull(dist, ALBUM, id));
+            return createRandomDocsList(count, searcher, query, util::getMediaFiles);
 
         } catch (IOException e) {
             LOG.error("Failed to search for random albums.", e);
@@ -172,8 +161,7 @@ public class SearchServiceImpl implements SearchService {
 
         try {
 
-            return createRandomDocsList(count, searcher, query,
-                (dist, id) -> util.addIgnoreNull(dist, ALBUM_ID3, id));
+            return createRandomDocsList(count, searcher, query, util::getAlbumsId3);
 
         } catch (IOException e) {
             LOG.error("Failed to search for random albums.", e);
@@ -222,10 +210,8 @@ public class SearchServiceImpl implements SearchService {
             int start = Math.min(offset, totalHits);
             int end = Math.min(start + count, totalHits);
 
-            for (int i = start; i < end; i++) {
-                Document doc = searcher.doc(topDocs.scoreDocs[i].doc);
-                util.addIgnoreNull(result, indexType, util.getId.apply(doc), assignableClass);
-            }
+            int[] docs = Arrays.stream(topDocs.scoreDocs, start, end).mapToInt(scoreDoc -> scoreDoc.doc).toArray();
+            util.addIgnoreNull(result, indexType, util.getIds(searcher, docs), assignableClass);
 
         } catch (IOException e) {
             LOG.error("Failed to execute Lucene search.", e);
@@ -28,23 +28,29 @@ import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.ParamSearchResult;
 import org.airsonic.player.domain.SearchResult;
 import org.airsonic.player.service.MediaFileService;
-import org.apache.commons.collections4.CollectionUtils;
-import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.IndexSearcher;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.Security;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
-import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.springframework.util.ObjectUtils.isEmpty;
@@ -72,9 +78,8 @@ public class SearchServiceUtilities {
 
     /*
      * Search by id only.
-     * Although there is no influence at present,
-     * mediaFileService has a caching mechanism.
-     * Service is used instead of Dao until you are sure you need to use mediaFileDao.
+     * mediaFileService has a caching mechanism,
+     * so only the media files that are not cached are read from the database.
      */
     @Autowired
     private MediaFileService mediaFileService;
@@ -113,7 +118,7 @@ public class SearchServiceUtilities {
 
     }
 
-    public Function<Integer, Integer> nextInt = (range) -> random.nextInt(range);
+    public Supplier<Random> getRandom = () -> random;
 
     public final Function<Long, Integer> round = (i) -> {
         // return
@@ -121,27 +126,66 @@ public class SearchServiceUtilities {
         return i.intValue();
     };
 
-    public final Function<Document, Integer> getId = d -> {
-        return Integer.valueOf(d.get(FieldNames.ID));
-    };
-
-    public final BiConsumer<List<MediaFile>, Integer> addMediaFileIfAnyMatch = (dist, id) -> {
-        if (!dist.stream().anyMatch(m -> id == m.getId())) {
-            MediaFile mediaFile = mediaFileService.getMediaFile(id);
-            if (!isEmpty(mediaFile)) {
-                dist.add(mediaFile);
+    /**
+     * Returns the ids of the given documents, in the same order.
+     * The ids are read from the doc values of the id field, so that no stored fields are loaded.
+     * Documents without an id are skipped.
+     */
+    public final List<Integer> getIds(IndexSearcher searcher, int[] docs) throws IOException {
+
+        // Doc values are read forwards, so visit the documents in index order.
+        Integer[] positions = new Integer[docs.length];
+        Arrays.setAll(positions, i -> i);
+        Arrays.sort(positions, Comparator.comparingInt(i -> docs[i]));
+
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        Integer[] ids = new Integer[docs.length];
+        LeafReaderContext leaf = null;
+        NumericDocValues values = null;
+        for (int position : positions) {
+            int doc = docs[position];
+            if (leaf == null || doc >= leaf.docBase + leaf.reader().maxDoc()) {
+                leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+                values = DocValues.getNumeric(leaf.reader(), FieldNames.ID);
+            }
+            if (values.advanceExact(doc - leaf.docBase)) {
+                ids[position] = (int) values.longValue();
             }
         }
-    };
+        return Arrays.stream(ids).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the entities with the given ids in the same order, skipping ids that are not found.
+     */
+    private static <T> List<T> inOrder(List<Integer> ids, List<T> entities, Function<T, Integer> getId) {
+        Map<Integer, T> entitiesById = entities.stream().collect(Collectors.toMap(getId, e -> e, (a, b) -> a));
+        return ids.stream().map(entitiesById::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    public final List<MediaFile> getMediaFiles(List<Integer> ids) {
+        return mediaFileService.getMediaFiles(ids);
+    }
+
+    public final List<Artist> getArtistsId3(List<Integer> ids) {
+        return inOrder(ids, artistDao.getArtistsById(ids), Artist::getId);
+    }
+
+    public final List<Album> getAlbumsId3(List<Integer> ids) {
+        return inOrder(ids, albumDao.getAlbumsById(ids), Album::getId);
+    }
 
-    public final BiConsumer<List<Artist>, Integer> addArtistId3IfAnyMatch = (dist, id) -> {
-        if (!dist.stream().anyMatch(a -> id == a.getId())) {
-            Artist artist = artistDao.getArtist(id);
-            if (!isEmpty(artist)) {
-                dist.add(artist);
+    /**
+     * Adds the subjects that are not in dist yet.
+     */
+    private static <T> void addIfAnyMatch(List<T> dist, List<T> subjects, Function<T, Integer> getId) {
+        for (T subject : subjects) {
+            Integer id = getId.apply(subject);
+            if (dist.stream().noneMatch(t -> id.equals(getId.apply(t)))) {
+                dist.add(subject);
             }
         }
-    };
+    }
 
     public final Function<Class<?>, @Nullable IndexType> getIndexType = (assignableClass) -> {
         IndexType indexType = null;
@@ -167,53 +211,30 @@ public class SearchServiceUtilities {
         return fieldName;
     };
 
-    public final BiConsumer<List<Album>, Integer> addAlbumId3IfAnyMatch = (dist, subjectId) -> {
-        if (!dist.stream().anyMatch(a -> subjectId == a.getId())) {
-            Album album = albumDao.getAlbum(subjectId);
-            if (!isEmpty(album)) {
-                dist.add(album);
-            }
-        }
-    };
-
-    public final boolean addIgnoreNull(Collection collection, Object object) {
-        return CollectionUtils.addIgnoreNull(collection, object);
-    }
-
-    public final boolean addIgnoreNull(Collection<?> collection, IndexType indexType,
-            int subjectId) {
-        if (indexType == IndexType.ALBUM || indexType == IndexType.SONG) {
-            return addIgnoreNull(collection, mediaFileService.getMediaFile(subjectId));
-        } else if (indexType == IndexType.ALBUM_ID3) {
-            return addIgnoreNull(collection, albumDao.getAlbum(subjectId));
-        }
-        return false;
-    }
-
     public final <T> void addIgnoreNull(ParamSearchResult<T> dist, IndexType indexType,
-            int subjectId, Class<T> subjectClass) {
+            List<Integer> subjectIds, Class<T> subjectClass) {
+        List<?> subjects;
         if (indexType == IndexType.SONG) {
-            MediaFile mediaFile = mediaFileService.getMediaFile(subjectId);
-            addIgnoreNull(dist.getItems(), subjectClass.cast(mediaFile));
+            subjects = getMediaFiles(subjectIds);
         } else if (indexType == IndexType.ARTIST_ID3) {
-            Artist artist = artistDao.getArtist(subjectId);
-            addIgnoreNull(dist.getItems(), subjectClass.cast(artist));
+            subjects = getArtistsId3(subjectIds);
         } else if (indexType == IndexType.ALBUM_ID3) {
-            Album album = albumDao.getAlbum(subjectId);
-            addIgnoreNull(dist.getItems(), subjectClass.cast(album));
+            subjects = getAlbumsId3(subjectIds);
+        } else {
+            return;
         }
+        subjects.forEach(subject -> dist.getItems().add(subjectClass.cast(subject)));
     }
 
     public final void addIfAnyMatch(SearchResult dist, IndexType subjectIndexType,
-            Document subject) {
-        int documentId = getId.apply(subject);
+            List<Integer> subjectIds) {
         if (subjectIndexType == IndexType.ARTIST || subjectIndexType == IndexType.ALBUM
                 || subjectIndexType == IndexType.SONG) {
-            addMediaFileIfAnyMatch.accept(dist.getMediaFiles(), documentId);
+            addIfAnyMatch(dist.getMediaFiles(), getMediaFiles(subjectIds), MediaFile::getId);
         } else if (subjectIndexType == IndexType.ARTIST_ID3) {
-            addArtistId3IfAnyMatch.accept(dist.getArtists(), documentId);
+            addIfAnyMatch(dist.getArtists(), getArtistsId3(subjectIds), Artist::getId);
         } else if (subjectIndexType == IndexType.ALBUM_ID3) {
-            addAlbumId3IfAnyMatch.accept(dist.getAlbums(), documentId);
+            addIfAnyMatch(dist.getAlbums(), getAlbumsId3(subjectIds), Album::getId);
         }
     }
 
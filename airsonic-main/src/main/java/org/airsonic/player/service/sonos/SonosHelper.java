@@ -80,6 +80,7 @@ public class SonosHelper {
         library.setItemType(ItemType.COLLECTION);
         library.setId(SonosService.ID_LIBRARY);
         library.setTitle("Browse Library");
+        library.setCanScroll(true);
 
         MediaCollection playlists = new MediaCollection();
         playlists.setItemType(ItemType.FAVORITES);
@@ -167,6 +168,7 @@ public class SonosHelper {
             mediaCollection.setItemType(ItemType.COLLECTION);
             mediaCollection.setId(SonosService.ID_MUSICFOLDER_PREFIX + musicFolder.getId());
             mediaCollection.setTitle(musicFolder.getName());
+            mediaCollection.setCanScroll(true);
             result.add(mediaCollection);
         }
         return result;
@@ -598,11 +600,11 @@ public class SonosHelper {
     }
 
     public void star(int id, String username) {
-        mediaFileDao.starMediaFile(id, username);
+        mediaFileService.starMediaFile(id, username);
     }
 
     public void unstar(int id, String username) {
-        mediaFileDao.unstarMediaFile(id, username);
+        mediaFileService.unstarMediaFile(id, username);
     }
 
     private String getCoverArtUrl(String id, HttpServletRequest request) {
@@ -621,6 +623,41 @@ public class SonosHelper {
         return result;
     }
 
+    /**
+     * Creates the scroll indices of an alphabetically sorted list, i.e., the first letter of each item
+     * along with the position of the first item starting with it, like "A,0,B,15,D,40". Programs such as
+     * "Shuffle Play" and items out of alphabetical order are skipped.
+     *
+     * @return The scroll indices, or null if there are none.
+     */
+    public static String createScrollIndices(List<? extends AbstractMedia> media, String[] ignoredArticles) {
+        List<String> result = new ArrayList<String>();
+        char previous = 0;
+        for (int i = 0; i < media.size(); i++) {
+            AbstractMedia item = media.get(i);
+            if (item.getItemType() == ItemType.PROGRAM || item.getTitle() == null) {
+                continue;
+            }
+            char letter = getScrollLetter(item.getTitle(), ignoredArticles);
+            if (letter >= 'A' && letter <= 'Z' && letter > previous) {
+                result.add(letter + "," + i);
+                previous = letter;
+            }
+        }
+        return result.isEmpty() ? null : String.join(",", result);
+    }
+
+    private static char getScrollLetter(String title, String[] ignoredArticles) {
+        String name = title.toUpperCase();
+        for (String article : ignoredArticles) {
+            if (name.startsWith(article.toUpperCase() + " ")) {
+                name = name.substring(article.length() + 1);
+                break;
+            }
+        }
+        return name.isEmpty() ? 0 : name.charAt(0);
+    }
+
     private List<MediaFile> filterMusic(List<MediaFile> files) {
         return Lists.newArrayList(Iterables.filter(files, input -> input.getMediaType() == MediaFile.MediaType.MUSIC));
     }
@@ -22,19 +22,15 @@ package org.airsonic.player.service.upnp;
 import org.airsonic.player.dao.AlbumDao;
 import org.airsonic.player.dao.MediaFileDao;
 import org.airsonic.player.domain.Album;
-import org.airsonic.player.domain.CoverArtScheme;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.service.SearchService;
-import org.fourthline.cling.support.model.BrowseResult;
 import org.fourthline.cling.support.model.DIDLContent;
 import org.fourthline.cling.support.model.PersonWithRole;
-import org.fourthline.cling.support.model.SortCriterion;
 import org.fourthline.cling.support.model.container.Container;
 import org.fourthline.cling.support.model.container.MusicAlbum;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
 import java.util.ArrayList;
@@ -61,20 +57,6 @@ public class AlbumUpnpProcessor extends UpnpContentProcessor <Album, MediaFile>
         setRootTitle("Albums");
     }
 
-    /**
-     * Browses the top-level content of a type.
-     */
-    public BrowseResult browseRoot(String filter, long firstResult, long maxResults, SortCriterion[] orderBy) throws Exception {
-        DIDLContent didl = new DIDLContent();
-
-        List<MusicFolder> allFolders = getDispatchingContentDirectory().getSettingsService().getAllMusicFolders();
-        List<Album> selectedItems = getAlbumDao().getAlphabeticalAlbums((int) firstResult, (int) maxResults, false, true, allFolders);
-        for (Album item : selectedItems) {
-            addItem(didl, item);
-        }
-
-        return createBrowseResult(didl, (int) didl.getCount(), getAllItemsSize());
-    }
     public Container createContainer(Album album) {
         MusicAlbum container = new MusicAlbum();
 
@@ -95,8 +77,13 @@ public class AlbumUpnpProcessor extends UpnpContentProcessor <Album, MediaFile>
     }
 
     public List<Album> getAllItems() {
+        return getItems(0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Album> getItems(long offset, long count) {
         List<MusicFolder> allFolders = getDispatchingContentDirectory().getSettingsService().getAllMusicFolders();
-        return getAlbumDao().getAlphabeticalAlbums(0, Integer.MAX_VALUE, false, true, allFolders);
+        return getAlbumDao().getAlphabeticalAlbums(toQueryParameter(offset), toQueryParameter(count), false, true, allFolders);
     }
 
     public Album getItemById(String id) {
@@ -135,7 +122,7 @@ public class AlbumUpnpProcessor extends UpnpContentProcessor <Album, MediaFile>
     }
 
     @Override
-    public int getAllItemsSize() {
+    public int getItemCount() {
         List<MusicFolder> allFolders = getDispatchingContentDirectory().getSettingsService().getAllMusicFolders();
         return getAlbumDao().getAlbumCount(allFolders);
     }
@@ -146,7 +133,7 @@ public class AlbumUpnpProcessor extends UpnpContentProcessor <Album, MediaFile>
     }
 
     public URI getAlbumArtURI(int albumId) {
-        return getDispatcher().getJwtSecurityService().addJWTToken(UriComponentsBuilder.fromUriString(getDispatcher().getBaseUrl() + "/ext/coverArt.view").queryParam("id", albumId).queryParam("size", CoverArtScheme.LARGE.getSize())).build().encode().toUri();
+        return getDispatcher().getAlbumArtUrl(albumId);
     }
 
     public PersonWithRole[] getAlbumArtists(String artist) {
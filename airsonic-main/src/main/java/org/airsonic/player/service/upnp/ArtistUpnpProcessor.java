@@ -61,12 +61,19 @@ public class ArtistUpnpProcessor extends UpnpContentProcessor <Artist, Album> {
     }
 
     public List<Artist> getAllItems() {
+        return getItems(0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Artist> getItems(long offset, long count) {
         List<MusicFolder> allFolders = getDispatcher().getSettingsService().getAllMusicFolders();
-        List<Artist> allArtists = getArtistDao().getAlphabetialArtists(0, Integer.MAX_VALUE, allFolders);
-        // alpha artists doesn't quite work :P
-        allArtists.sort((Artist o1, Artist o2) -> o1.getName().replaceAll("\\W", "").compareToIgnoreCase(o2.getName().replaceAll("\\W", "")));
+        return getArtistDao().getAlphabetialArtists(toQueryParameter(offset), toQueryParameter(count), allFolders);
+    }
 
-        return allArtists;
+    @Override
+    public int getItemCount() {
+        List<MusicFolder> allFolders = getDispatcher().getSettingsService().getAllMusicFolders();
+        return getArtistDao().getArtistCount(allFolders);
     }
 
     public Artist getItemById(String id) {
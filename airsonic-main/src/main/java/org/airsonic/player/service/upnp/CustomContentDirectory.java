@@ -20,6 +20,8 @@
 package org.airsonic.player.service.upnp;
 
 import com.google.common.collect.Lists;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.Player;
 import org.airsonic.player.service.JWTSecurityService;
@@ -56,6 +58,8 @@ public abstract class CustomContentDirectory extends AbstractContentDirectorySer
     private TranscodingService transcodingService;
     @Autowired
     protected JWTSecurityService jwtSecurityService;
+    @Autowired
+    private Ehcache upnpUrlCache;
 
     public CustomContentDirectory() {
         super(Lists.newArrayList("*"), Lists.newArrayList());
@@ -72,9 +76,7 @@ public abstract class CustomContentDirectory extends AbstractContentDirectorySer
             builder.queryParam("format", TranscodingService.FORMAT_RAW);
         }
 
-        jwtSecurityService.addJWTToken(builder);
-
-        String url = builder.toUriString();
+        String url = addJWTToken(builder);
 
         String suffix = song.isVideo() ? FilenameUtils.getExtension(song.getPath()) : transcodingService.getSuffix(player, song, null);
         String mimeTypeString = StringUtil.getMimeType(suffix);
@@ -85,6 +87,21 @@ public abstract class CustomContentDirectory extends AbstractContentDirectorySer
         return res;
     }
 
+    /**
+     * Returns the given URL with a JWT token added. Clients browse the same containers over and over again,
+     * so the signed URL is cached for a while rather than signed again every time.
+     */
+    protected String addJWTToken(UriComponentsBuilder builder) {
+        String url = builder.toUriString();
+        Element element = upnpUrlCache.get(url);
+        if (element != null) {
+            return (String) element.getObjectValue();
+        }
+        String signedUrl = jwtSecurityService.addJWTToken(builder).toUriString();
+        upnpUrlCache.put(new Element(url, signedUrl));
+        return signedUrl;
+    }
+
     private String formatDuration(Integer seconds) {
         if (seconds == null) {
             return null;
@@ -128,4 +145,8 @@ public abstract class CustomContentDirectory extends AbstractContentDirectorySer
     public void setJwtSecurityService(JWTSecurityService jwtSecurityService) {
         this.jwtSecurityService = jwtSecurityService;
     }
+
+    public void setUpnpUrlCache(Ehcache upnpUrlCache) {
+        this.upnpUrlCache = upnpUrlCache;
+    }
 }
@@ -19,6 +19,8 @@
 */
 package org.airsonic.player.service.upnp;
 
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
 import org.airsonic.player.domain.CoverArtScheme;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.service.*;
@@ -85,6 +87,12 @@ public class DispatchingContentDirectory extends CustomContentDirectory {
     @Autowired
     private SearchService searchService;
 
+    @Autowired
+    private MediaScannerService mediaScannerService;
+
+    @Autowired
+    private Ehcache upnpItemCache;
+
 
     @Override
     public BrowseResult browse(String objectId, BrowseFlag browseFlag,
@@ -170,7 +178,25 @@ public class DispatchingContentDirectory extends CustomContentDirectory {
         return null;
     }
 
+    /**
+     * Returns the DIDL item of a song. Items are cached until the media library is updated, since creating
+     * one looks up the parent directory and signs the URLs of the stream and the cover art.
+     */
     public Item createItem(MediaFile song) {
+        String baseUrl = getBaseUrl();
+        long lastUpdated = mediaScannerService.getLastUpdated();
+        Element element = upnpItemCache.get(song.getId());
+        CachedItem cached = element == null ? null : (CachedItem) element.getObjectValue();
+        if (cached != null && cached.lastUpdated == lastUpdated && cached.baseUrl.equals(baseUrl)) {
+            return cached.item;
+        }
+
+        Item item = doCreateItem(song);
+        upnpItemCache.put(new Element(song.getId(), new CachedItem(item, baseUrl, lastUpdated)));
+        return item;
+    }
+
+    private Item doCreateItem(MediaFile song) {
         MediaFile parent = mediaFileService.getParentOf(song);
         MusicTrack item = new MusicTrack();
         item.setId(String.valueOf(song.getId()));
@@ -196,7 +222,7 @@ public class DispatchingContentDirectory extends CustomContentDirectory {
     }
 
     public URI getAlbumArtUrl(int id) {
-        return jwtSecurityService.addJWTToken(UriComponentsBuilder.fromUriString(getBaseUrl() + "/ext/coverArt.view").queryParam("id", id).queryParam("size", CoverArtScheme.LARGE.getSize())).build().encode().toUri();
+        return URI.create(addJWTToken(UriComponentsBuilder.fromUriString(getBaseUrl() + "/ext/coverArt.view").queryParam("id", id).queryParam("size", CoverArtScheme.LARGE.getSize())));
     }
 
     public PlaylistUpnpProcessor getPlaylistProcessor() {
@@ -283,4 +309,29 @@ public class DispatchingContentDirectory extends CustomContentDirectory {
     public void setSearchService(SearchService searchService) {
         this.searchService = searchService;
     }
+
+    public void setMediaScannerService(MediaScannerService mediaScannerService) {
+        this.mediaScannerService = mediaScannerService;
+    }
+
+    public void setUpnpItemCache(Ehcache upnpItemCache) {
+        this.upnpItemCache = upnpItemCache;
+    }
+
+    /**
+     * A DIDL item, along with the base URL of its resources and when the media library was last updated.
+     * Items are shared by all responses, so they must not be modified once created.
+     */
+    private static class CachedItem {
+
+        private final Item item;
+        private final String baseUrl;
+        private final long lastUpdated;
+
+        private CachedItem(Item item, String baseUrl, long lastUpdated) {
+            this.item = item;
+            this.baseUrl = baseUrl;
+            this.lastUpdated = lastUpdated;
+        }
+    }
 }
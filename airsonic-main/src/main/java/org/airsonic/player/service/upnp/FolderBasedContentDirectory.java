@@ -269,12 +269,9 @@ public class FolderBasedContentDirectory extends CustomContentDirectory {
     }
 
     private URI getAlbumArtUrl(MediaFile album) {
-        return jwtSecurityService.addJWTToken(UriComponentsBuilder.fromUriString(getBaseUrl() + "/ext/coverArt.view")
+        return URI.create(addJWTToken(UriComponentsBuilder.fromUriString(getBaseUrl() + "/ext/coverArt.view")
                 .queryParam("id", album.getId())
-                .queryParam("size", CoverArtScheme.LARGE.getSize()))
-                .build()
-                .encode()
-                .toUri();
+                .queryParam("size", CoverArtScheme.LARGE.getSize())));
     }
 
     public void setMediaFileService(MediaFileService mediaFileService) {
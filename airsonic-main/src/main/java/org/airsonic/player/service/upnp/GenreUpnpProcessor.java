@@ -22,7 +22,6 @@ package org.airsonic.player.service.upnp;
 import org.airsonic.player.domain.Genre;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
-import org.airsonic.player.util.Util;
 import org.fourthline.cling.support.model.BrowseResult;
 import org.fourthline.cling.support.model.DIDLContent;
 import org.fourthline.cling.support.model.SortCriterion;
@@ -50,19 +49,18 @@ public class GenreUpnpProcessor extends UpnpContentProcessor <Genre, MediaFile>
     public BrowseResult browseRoot(String filter, long firstResult, long maxResults, SortCriterion[] orderBy) throws Exception {
         // we have to override this to do an index-based id.
         DIDLContent didl = new DIDLContent();
-        List<Genre> allItems = getAllItems();
         if (filter != null) {
             // filter items
         }
         if (orderBy != null) {
             // sort items
         }
-        List<Genre> selectedItems = Util.subList(allItems, firstResult, maxResults);
+        List<Genre> selectedItems = getItems(firstResult, maxResults);
         for (int i = 0; i < selectedItems.size(); i++) {
             Genre item = selectedItems.get(i);
             didl.addContainer(createContainer(item, (int) (i + firstResult)));
         }
-        return createBrowseResult(didl, (int) didl.getCount(), allItems.size());
+        return createBrowseResult(didl, (int) didl.getCount(), getItemCount());
     }
 
     public Container createContainer(Genre item) {
@@ -98,6 +96,18 @@ public class GenreUpnpProcessor extends UpnpContentProcessor <Genre, MediaFile>
         return getDispatcher().getMediaFileProcessor().getMediaFileDao().getSongsByGenre(item.getName(), 0, Integer.MAX_VALUE, allFolders);
     }
 
+    @Override
+    public List<MediaFile> getChildren(Genre item, long offset, long count) {
+        List<MusicFolder> allFolders = getDispatcher().getSettingsService().getAllMusicFolders();
+        return getDispatcher().getMediaFileProcessor().getMediaFileDao().getSongsByGenre(item.getName(), toQueryParameter(offset), toQueryParameter(count), allFolders);
+    }
+
+    @Override
+    public int getChildCount(Genre item) {
+        List<MusicFolder> allFolders = getDispatcher().getSettingsService().getAllMusicFolders();
+        return getDispatcher().getMediaFileProcessor().getMediaFileDao().getSongCountByGenre(item.getName(), allFolders);
+    }
+
     public void addChild(DIDLContent didl, MediaFile child) {
         didl.addItem(getDispatcher().getMediaFileProcessor().createItem(child));
     }
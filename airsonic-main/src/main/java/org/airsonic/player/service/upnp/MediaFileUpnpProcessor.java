@@ -25,17 +25,15 @@ import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.service.MediaFileService;
 import org.fourthline.cling.support.model.BrowseResult;
 import org.fourthline.cling.support.model.DIDLContent;
-import org.fourthline.cling.support.model.DIDLObject;
 import org.fourthline.cling.support.model.container.Container;
 import org.fourthline.cling.support.model.container.MusicAlbum;
 import org.fourthline.cling.support.model.item.Item;
-import org.fourthline.cling.support.model.item.MusicTrack;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -74,8 +72,7 @@ public class MediaFileUpnpProcessor extends UpnpContentProcessor <MediaFile, Med
         }
         container.setId(DispatchingContentDirectory.CONTAINER_ID_FOLDER_PREFIX + DispatchingContentDirectory.SEPARATOR + item.getId());
         container.setTitle(item.getName());
-        List<MediaFile> children = getChildren(item);
-        container.setChildCount(children.size());
+        container.setChildCount(getChildCount(item));
 
         if (! getMediaFileService().isRoot(item)) {
             MediaFile parent = getMediaFileService().getParentOf(item);
@@ -102,6 +99,24 @@ public class MediaFileUpnpProcessor extends UpnpContentProcessor <MediaFile, Med
         return returnValue;
     }
 
+    @Override
+    public List<MediaFile> getItems(long offset, long count) throws Exception {
+        List<MusicFolder> allFolders = getDispatcher().getSettingsService().getAllMusicFolders();
+        if (allFolders.size() == 1) {
+            return getChildren(getMediaFileService().getMediaFile(allFolders.get(0).getPath()), offset, count);
+        }
+        return super.getItems(offset, count);
+    }
+
+    @Override
+    public int getItemCount() {
+        List<MusicFolder> allFolders = getDispatcher().getSettingsService().getAllMusicFolders();
+        if (allFolders.size() == 1) {
+            return getChildCount(getMediaFileService().getMediaFile(allFolders.get(0).getPath()));
+        }
+        return allFolders.size();
+    }
+
     public MediaFile getItemById(String id) {
         return getMediaFileService().getMediaFile(Integer.parseInt(id));
     }
@@ -112,6 +127,20 @@ public class MediaFileUpnpProcessor extends UpnpContentProcessor <MediaFile, Med
         return children;
     }
 
+    @Override
+    public List<MediaFile> getChildren(MediaFile item, long offset, long count) {
+        if (!item.isDirectory()) {
+            return Collections.emptyList();
+        }
+        getMediaFileService().refreshChildren(item);
+        return getMediaFileDao().getChildrenOf(item.getPath(), toQueryParameter(offset), toQueryParameter(count));
+    }
+
+    @Override
+    public int getChildCount(MediaFile item) {
+        return item.isDirectory() ? getMediaFileDao().getChildCount(item.getPath()) : 0;
+    }
+
     public void addItem(DIDLContent didl, MediaFile item) {
         if (item.isFile()) {
             didl.addItem(createItem(item));
@@ -129,28 +158,7 @@ public class MediaFileUpnpProcessor extends UpnpContentProcessor <MediaFile, Med
     }
 
     public Item createItem(MediaFile song) {
-        MediaFile parent = getMediaFileService().getParentOf(song);
-        MusicTrack item = new MusicTrack();
-        item.setId(String.valueOf(song.getId()));
-        item.setParentID(String.valueOf(parent.getId()));
-        item.setTitle(song.getTitle());
-        item.setAlbum(song.getAlbumName());
-        if (song.getArtist() != null) {
-            item.setArtists(getDispatcher().getAlbumProcessor().getAlbumArtists(song.getArtist()));
-        }
-        Integer year = song.getYear();
-        if (year != null) {
-            item.setDate(year + "-01-01");
-        }
-        item.setOriginalTrackNumber(song.getTrackNumber());
-        if (song.getGenre() != null) {
-            item.setGenres(new String[]{song.getGenre()});
-        }
-        item.setResources(Arrays.asList(getDispatcher().createResourceForSong(song)));
-        item.setDescription(song.getComment());
-        item.addProperty(new DIDLObject.Property.UPNP.ALBUM_ART_URI(getDispatcher().getAlbumProcessor().getAlbumArtURI(parent.getId())));
-
-        return item;
+        return getDispatcher().createItem(song);
     }
 
     public MediaFileService getMediaFileService() {
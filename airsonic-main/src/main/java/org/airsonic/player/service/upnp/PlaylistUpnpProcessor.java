@@ -50,7 +50,7 @@ public class PlaylistUpnpProcessor extends UpnpContentProcessor <Playlist, Media
         container.setParentID(getRootId());
         container.setTitle(item.getName());
         container.setDescription(item.getComment());
-        container.setChildCount(getPlaylistService().getFilesInPlaylist(item.getId()).size());
+        container.setChildCount(getChildCount(item));
 
         return container;
     }
@@ -67,6 +67,16 @@ public class PlaylistUpnpProcessor extends UpnpContentProcessor <Playlist, Media
         return getPlaylistService().getFilesInPlaylist(item.getId());
     }
 
+    @Override
+    public List<MediaFile> getChildren(Playlist item, long offset, long count) {
+        return getPlaylistService().getFilesInPlaylist(item.getId(), toQueryParameter(offset), toQueryParameter(count));
+    }
+
+    @Override
+    public int getChildCount(Playlist item) {
+        return getPlaylistService().getFileCountInPlaylist(item.getId());
+    }
+
     public void addChild(DIDLContent didl, MediaFile child) {
         didl.addItem(getDispatchingContentDirectory().createItem(child));
     }
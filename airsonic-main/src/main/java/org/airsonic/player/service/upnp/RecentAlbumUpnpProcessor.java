@@ -21,9 +21,6 @@ package org.airsonic.player.service.upnp;
 import org.airsonic.player.domain.Album;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.util.Util;
-import org.fourthline.cling.support.model.BrowseResult;
-import org.fourthline.cling.support.model.DIDLContent;
-import org.fourthline.cling.support.model.SortCriterion;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -41,28 +38,6 @@ public class RecentAlbumUpnpProcessor extends AlbumUpnpProcessor {
         setRootTitle("RecentAlbums");
     }
 
-    /**
-     * Browses the top-level content.
-     */
-    public BrowseResult browseRoot(String filter, long firstResult, long maxResults, SortCriterion[] orderBy) throws Exception {
-        // AlbumUpnpProcessor overrides browseRoot() with an optimization;
-        // this restores the default behavior for the subclass.
-        DIDLContent didl = new DIDLContent();
-        List<Album> allItems = getAllItems();
-        if (filter != null) {
-            // filter items (not implemented yet)
-        }
-        if (orderBy != null) {
-            // sort items (not implemented yet)
-        }
-        List<Album> selectedItems = Util.subList(allItems, firstResult, maxResults);
-        for (Album item : selectedItems) {
-            addItem(didl, item);
-        }
-
-        return createBrowseResult(didl, (int) didl.getCount(), allItems.size());
-    }
-
     @Override
     public List<Album> getAllItems() {
         List<MusicFolder> allFolders = getDispatchingContentDirectory().getSettingsService().getAllMusicFolders();
@@ -80,9 +55,17 @@ public class RecentAlbumUpnpProcessor extends AlbumUpnpProcessor {
     }
 
     @Override
-    public int getAllItemsSize() {
+    public List<Album> getItems(long offset, long count) {
+        // AlbumUpnpProcessor pages through all albums in the database;
+        // this restores the default behavior for the subclass.
+        return Util.subList(getAllItems(), offset, count);
+    }
+
+    @Override
+    public int getItemCount() {
         List<MusicFolder> allFolders = getDispatchingContentDirectory().getSettingsService().getAllMusicFolders();
-        int allAlbumCount = getAlbumDao().getAlbumCount(allFolders);
-        return Math.min(allAlbumCount, RECENT_COUNT);
+        int albumCount = Math.min(getAlbumDao().getAlbumCount(allFolders), RECENT_COUNT);
+        // includes the "All Albums" entry added by getAllItems()
+        return albumCount > 1 ? albumCount + 1 : albumCount;
     }
 }
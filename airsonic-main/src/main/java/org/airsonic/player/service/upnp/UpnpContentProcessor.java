@@ -59,7 +59,7 @@ public abstract class UpnpContentProcessor<T extends Object, U extends Object> {
         container.setId(getRootId());
         container.setTitle(getRootTitle());
 
-        int childCount = getAllItemsSize();
+        int childCount = getItemCount();
         container.setChildCount(childCount);
         container.setParentID(DispatchingContentDirectory.CONTAINER_ID_ROOT);
         return container;
@@ -70,19 +70,19 @@ public abstract class UpnpContentProcessor<T extends Object, U extends Object> {
      */
     public BrowseResult browseRoot(String filter, long firstResult, long maxResults, SortCriterion[] orderBy) throws Exception {
         DIDLContent didl = new DIDLContent();
-        List<T> allItems = getAllItems();
         if (filter != null) {
             // filter items (not implemented yet)
         }
         if (orderBy != null) {
             // sort items (not implemented yet)
         }
-        List<T> selectedItems = Util.subList(allItems, firstResult, maxResults);
+        List<T> selectedItems = getItems(firstResult, maxResults);
         for (T item : selectedItems) {
             addItem(didl, item);
         }
 
-        return createBrowseResult(didl, (int) didl.getCount(), allItems.size());
+        int totalMatches = isLastPage(firstResult, maxResults, selectedItems) ? (int) firstResult + selectedItems.size() : getItemCount();
+        return createBrowseResult(didl, (int) didl.getCount(), totalMatches);
     }
 
     /**
@@ -100,20 +100,28 @@ public abstract class UpnpContentProcessor<T extends Object, U extends Object> {
      */
     public BrowseResult browseObject(String id, String filter, long firstResult, long maxResults, SortCriterion[] orderBy) throws Exception {
         T item = getItemById(id);
-        List<U> allChildren = getChildren(item);
         if (filter != null) {
             // filter items (not implemented yet)
         }
         if (orderBy != null) {
             // sort items (not implemented yet)
         }
-        List<U> selectedChildren = Util.subList(allChildren, firstResult, maxResults);
+        List<U> selectedChildren = getChildren(item, firstResult, maxResults);
 
         DIDLContent didl = new DIDLContent();
         for (U child : selectedChildren) {
             addChild(didl, child);
         }
-        return createBrowseResult(didl, selectedChildren.size(), allChildren.size());
+        int totalMatches = isLastPage(firstResult, maxResults, selectedChildren) ? (int) firstResult + selectedChildren.size() : getChildCount(item);
+        return createBrowseResult(didl, selectedChildren.size(), totalMatches);
+    }
+
+    /**
+     * Returns whether a page came back short, in which case the total number of matches is known
+     * without counting them. An empty page past the first one may just have started too far, so it is counted.
+     */
+    private static boolean isLastPage(long firstResult, long maxResults, List<?> page) {
+        return page.size() < maxResults && (!page.isEmpty() || firstResult == 0);
     }
 
     protected BrowseResult createBrowseResult(DIDLContent didl, int count, int totalMatches) throws Exception {
@@ -155,11 +163,44 @@ public abstract class UpnpContentProcessor<T extends Object, U extends Object> {
         didl.addContainer(createContainer(item));
     }
 
-    // this can probably be optimized in some cases
-    public int getAllItemsSize() throws Exception {
+    /**
+     * Returns a page of the top-level items. Processors for large types override this with a paged query,
+     * the default pages through {@link #getAllItems()}.
+     */
+    public List<T> getItems(long offset, long count) throws Exception {
+        return Util.subList(getAllItems(), offset, count);
+    }
+
+    /**
+     * Returns the number of top-level items.
+     */
+    public int getItemCount() throws Exception {
         return getAllItems().size();
     }
 
+    /**
+     * Returns a page of the children of an item. Processors for large containers override this with a paged
+     * query, the default pages through {@link #getChildren(Object)}.
+     */
+    public List<U> getChildren(T item, long offset, long count) throws Exception {
+        return Util.subList(getChildren(item), offset, count);
+    }
+
+    /**
+     * Returns the number of children of an item.
+     */
+    public int getChildCount(T item) throws Exception {
+        return getChildren(item).size();
+    }
+
+    /**
+     * Converts an offset or count of a browse request to a query parameter. The count is
+     * {@link Long#MAX_VALUE} when all results are requested.
+     */
+    protected static int toQueryParameter(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
+    }
+
     public abstract Container createContainer(T item);
 
     public abstract List<T> getAllItems() throws Exception;
@@ -21,6 +21,26 @@ public class EhcacheConfiguration {
         return cacheFactory.getCache("userCache");
     }
 
+    @Bean
+    public Ehcache restAuthenticationCache(CacheFactory cacheFactory) {
+        return cacheFactory.getCache("restAuthenticationCache");
+    }
+
+    @Bean
+    public Ehcache upnpUrlCache(CacheFactory cacheFactory) {
+        return cacheFactory.getCache("upnpUrlCache");
+    }
+
+    @Bean
+    public Ehcache upnpItemCache(CacheFactory cacheFactory) {
+        return cacheFactory.getCache("upnpItemCache");
+    }
+
+    @Bean
+    public Ehcache sonosMediaCache(CacheFactory cacheFactory) {
+        return cacheFactory.getCache("sonosMediaCache");
+    }
+
     @Bean
     public Ehcache mediaFileMemoryCache(CacheFactory cacheFactory) {
         return cacheFactory.getCache("mediaFileMemoryCache");
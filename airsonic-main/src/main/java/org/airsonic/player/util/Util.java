@@ -37,6 +37,8 @@ import javax.validation.Validation;
 import javax.validation.Validator;
 import javax.validation.ValidatorFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -49,6 +51,12 @@ public final class Util {
     private static final Logger LOG = LoggerFactory.getLogger(Util.class);
     private static final String URL_SENSITIVE_REPLACEMENT_STRING = "<hidden>";
 
+    // Request attributes used by Tomcat to send files, see org.apache.catalina.Globals.
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_FILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_FILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
     /**
      * Disallow external instantiation.
      */
@@ -91,8 +99,37 @@ public final class Util {
         }
     }
 
+    /**
+     * Returns whether the servlet container is able to send files to the client itself, without copying them
+     * through the JVM. This is the case for Tomcat, unless disabled or serving HTTPS.
+     *
+     * @param request The HTTP request.
+     * @see #sendFile(HttpServletRequest, File, long, long)
+     */
+    public static boolean isSendFileSupported(HttpServletRequest request) {
+        return Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR));
+    }
+
+    /**
+     * Makes the servlet container send the given part of a file to the client once the request has been
+     * handled. The headers must be set beforehand, including the content length, and nothing must be written
+     * to the response.
+     *
+     * @param request The HTTP request.
+     * @param file    The file to send.
+     * @param start   The first byte to send (inclusive).
+     * @param end     The last byte to send (exclusive).
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void sendFile(HttpServletRequest request, File file, long start, long end) throws IOException {
+        request.setAttribute(SENDFILE_FILENAME_ATTR, file.getCanonicalPath());
+        request.setAttribute(SENDFILE_FILE_START_ATTR, start);
+        request.setAttribute(SENDFILE_FILE_END_ATTR, end);
+    }
+
     public static <T> List<T> subList(List<T> list, long offset, long max) {
-        return list.subList((int) offset, Math.min(list.size(), (int) (offset + max)));
+        int from = (int) Math.min(list.size(), offset);
+        return list.subList(from, from + (int) Math.min(list.size() - from, max));
     }
 
     public static List<Integer> toIntegerList(int[] values) {
@@ -60,6 +60,9 @@
     <tr><td class="ruleTableHeader"><fmt:message key="internalhelp.lastscandate"/></td><td class="ruleTableCell">${model.statLastScanDate}</td></tr>
     <tr><td class="ruleTableHeader"><fmt:message key="internalhelp.totaldurationseconds"/></td><td class="ruleTableCell">${model.statTotalDurationSeconds}</td></tr>
     <tr><td class="ruleTableHeader"><fmt:message key="internalhelp.totalsizebytes"/></td><td class="ruleTableCell">${model.statTotalLengthBytes}</td></tr>
+    <tr><td class="ruleTableHeader"><fmt:message key="internalhelp.mediafilecachesize"/></td><td class="ruleTableCell">${model.statMediaFileCacheSize}</td></tr>
+    <tr><td class="ruleTableHeader"><fmt:message key="internalhelp.mediafilecachehits"/></td><td class="ruleTableCell">${model.statMediaFileCacheHits}</td></tr>
+    <tr><td class="ruleTableHeader"><fmt:message key="internalhelp.mediafilecachemisses"/></td><td class="ruleTableCell">${model.statMediaFileCacheMisses}</td></tr>
 </table>
 
 <p></p>
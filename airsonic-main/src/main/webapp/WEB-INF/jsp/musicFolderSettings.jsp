@@ -121,6 +121,24 @@
         <fmt:message key="musicfoldersettings.fastcache.description"/>
     </p>
 
+    <div>
+        <form:checkbox path="incrementalScan" cssClass="checkbox" id="incrementalScan"/>
+        <form:label path="incrementalScan"><fmt:message key="musicfoldersettings.incrementalscan"/></form:label>
+    </div>
+
+    <p class="detail" style="width:60%;white-space:normal;">
+        <fmt:message key="musicfoldersettings.incrementalscan.description"/>
+    </p>
+
+    <div>
+        <form:checkbox path="libraryWatch" cssClass="checkbox" id="libraryWatch"/>
+        <form:label path="libraryWatch"><fmt:message key="musicfoldersettings.librarywatch"/></form:label>
+    </div>
+
+    <p class="detail" style="width:60%;white-space:normal;">
+        <fmt:message key="musicfoldersettings.librarywatch.description"/>
+    </p>
+
     <p class="forward"><a href="musicFolderSettings.view?expunge"><fmt:message key="musicfoldersettings.expunge"/></a></p>
     <p class="detail" style="width:60%;white-space:normal;margin-top:-10px;">
         <fmt:message key="musicfoldersettings.expunge.description"/>
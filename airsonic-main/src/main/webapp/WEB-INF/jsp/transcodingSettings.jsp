@@ -66,6 +66,15 @@
                 <input class="monospace" type="text" name="hlsCommand" size="100" value="${model.hlsCommand}"/>
             </td>
         </tr>
+        <tr>
+            <td style="font-weight: bold;">
+                <fmt:message key="transcodingsettings.cachesize"/>
+            </td>
+            <td>
+                <input type="text" name="transcodeCacheSize" size="8" value="${model.transcodeCacheSize}"/>
+                <fmt:message key="transcodingsettings.cachesize.description"/>
+            </td>
+        </tr>
     </table>
 
 
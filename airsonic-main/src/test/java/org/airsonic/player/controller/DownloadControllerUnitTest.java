@@ -0,0 +1,201 @@
+package org.airsonic.player.controller;
+
+import org.airsonic.player.dao.FileChecksumDao;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.TransferStatus;
+import org.airsonic.player.domain.User;
+import org.airsonic.player.service.MediaFileService;
+import org.airsonic.player.service.PlayerService;
+import org.airsonic.player.service.SecurityService;
+import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.service.StatusService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DownloadControllerUnitTest {
+
+    @InjectMocks
+    DownloadController downloadController;
+
+    @Mock
+    PlayerService playerService;
+
+    @Mock
+    StatusService statusService;
+
+    @Mock
+    SecurityService securityService;
+
+    @Mock
+    SettingsService settingsService;
+
+    @Mock
+    MediaFileService mediaFileService;
+
+    @Mock
+    FileChecksumDao fileChecksumDao;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private byte[] content;
+    private MediaFile song;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[100 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        File file = new File(temporaryFolder.newFolder("album"), "song.mp3");
+        Files.write(file.toPath(), content);
+        song = createMediaFile(1, file, MediaFile.MediaType.MUSIC);
+    }
+
+    @Test
+    public void rangeIsTransferred() throws Exception {
+        MockHttpServletResponse response = download("bytes=1000-50999");
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 1000-50999/102400", response.getHeader("Content-Range"));
+        assertEquals(50000, response.getContentLength());
+        assertArrayEquals(Arrays.copyOfRange(content, 1000, 51000), response.getContentAsByteArray());
+    }
+
+    @Test
+    public void rangeIsTransferredWithBitrateLimit() throws Exception {
+        when(settingsService.getDownloadBitrateLimit()).thenReturn(100000L);
+
+        MockHttpServletResponse response = download("bytes=1000-");
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 1000-102399/102400", response.getHeader("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(content, 1000, content.length), response.getContentAsByteArray());
+    }
+
+    @Test
+    public void rangePastEndIsNotSatisfiable() throws Exception {
+        MockHttpServletResponse response = download("bytes=102400-");
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */102400", response.getHeader("Content-Range"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void directoryIsZippedWithContentLength() throws Exception {
+        MockHttpServletResponse response = download(createAlbum(), null);
+
+        byte[] zip = response.getContentAsByteArray();
+        assertEquals(200, response.getStatus());
+        assertEquals(zip.length, response.getContentLength());
+
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                names.add(entry.getName());
+                assertEquals(ZipEntry.STORED, entry.getMethod());
+            }
+        }
+        Collections.sort(names);
+        assertEquals(Arrays.asList("CD2/", "CD2/other.mp3", "song.mp3"), names);
+        verify(fileChecksumDao).setCrc(eq(song.getPath()), eq((long) content.length), anyLong(), anyLong());
+    }
+
+    @Test
+    public void directoryRangeIsZipped() throws Exception {
+        MediaFile album = createAlbum();
+        byte[] zip = download(album, null).getContentAsByteArray();
+
+        MockHttpServletResponse response = download(album, "bytes=5000-");
+        assertEquals(206, response.getStatus());
+        assertEquals(String.format("bytes 5000-%d/%d", zip.length - 1, zip.length), response.getHeader("Content-Range"));
+        assertEquals(zip.length - 5000, response.getContentLength());
+        assertArrayEquals(Arrays.copyOfRange(zip, 5000, zip.length), response.getContentAsByteArray());
+
+        response = download(album, "bytes=" + zip.length + "-");
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */" + zip.length, response.getHeader("Content-Range"));
+    }
+
+    @Test
+    public void zipLengthIncludesZip64Records() {
+        File file = new File("song.mp3");
+        List<DownloadController.ZipItem> items = Arrays.asList(
+                new DownloadController.ZipItem(file, "song.mp3", 5000000000L, 0L),
+                new DownloadController.ZipItem(file, "other.mp3", 10L, 0L));
+
+        // Local headers with names, data, central directory headers with names, and the end records. The first entry
+        // has zip64 sizes, and the second one a zip64 offset.
+        long expected = (30 + 8 + 20 + 5000000000L) + (30 + 9 + 10)
+                        + (46 + 8 + 4 + 16) + (46 + 9 + 4 + 8)
+                        + 22 + 56 + 20;
+        assertEquals(expected, DownloadController.getZipLength(items));
+    }
+
+    private MediaFile createAlbum() throws Exception {
+        File directory = song.getParentFile();
+        File subDirectory = new File(directory, "CD2");
+        assertTrue(subDirectory.mkdir());
+        Files.write(new File(subDirectory, "other.mp3").toPath(), new byte[1234]);
+        Files.write(new File(directory, ".hidden").toPath(), new byte[10]);
+
+        MediaFile album = createMediaFile(2, directory, MediaFile.MediaType.ALBUM);
+        MediaFile disc = createMediaFile(3, subDirectory, MediaFile.MediaType.DIRECTORY);
+        when(mediaFileService.getChildrenOf(album, true, false, true)).thenReturn(Arrays.asList(song, disc));
+        return album;
+    }
+
+    private static MediaFile createMediaFile(int id, File file, MediaFile.MediaType mediaType) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(id);
+        mediaFile.setPath(file.getPath());
+        mediaFile.setMediaType(mediaType);
+        return mediaFile;
+    }
+
+    private MockHttpServletResponse download(String range) throws Exception {
+        return download(song, range);
+    }
+
+    private MockHttpServletResponse download(MediaFile mediaFile, String range) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.setParameter("id", String.valueOf(mediaFile.getId()));
+        if (range != null) {
+            request.addHeader("Range", range);
+        }
+
+        User user = new User("admin", "admin", null);
+        when(securityService.getCurrentUser(request)).thenReturn(user);
+        when(securityService.isFolderAccessAllowed(mediaFile, "admin")).thenReturn(true);
+        when(statusService.createDownloadStatus(any())).thenReturn(new TransferStatus());
+        when(mediaFileService.getMediaFile(mediaFile.getId())).thenReturn(mediaFile);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        downloadController.handleRequest(request, response);
+        return response;
+    }
+}
@@ -0,0 +1,141 @@
+package org.airsonic.player.controller;
+
+import org.airsonic.player.service.SettingsService;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.subsonic.restapi.License;
+import org.subsonic.restapi.Response;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JAXBWriterUnitTest {
+
+    @Mock
+    SettingsService settingsService;
+
+    private JAXBWriter jaxbWriter;
+    private Response res;
+
+    @Before
+    public void setUp() {
+        jaxbWriter = new JAXBWriter(settingsService);
+        res = jaxbWriter.createResponse(true);
+        License license = new License();
+        license.setEmail("airsonic@github.com");
+        license.setValid(true);
+        res.setLicense(license);
+    }
+
+    @Test
+    public void xmlIsWritten() throws Exception {
+        MockHttpServletResponse response = write(new MockHttpServletRequest());
+
+        String xml = response.getContentAsString();
+        assertTrue(response.getContentType().startsWith("text/xml"));
+        assertNull(response.getHeader("Content-Encoding"));
+        assertTrue(xml.startsWith("<?xml"));
+        assertTrue(xml.contains("<subsonic-response"));
+        assertTrue(xml.contains("status=\"ok\""));
+        assertTrue(xml.contains("version=\"" + jaxbWriter.getRestProtocolVersion() + "\""));
+        assertTrue(xml.contains("email=\"airsonic@github.com\""));
+    }
+
+    @Test
+    public void jsonIsWritten() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setParameter("f", "json");
+        MockHttpServletResponse response = write(request);
+
+        String json = response.getContentAsString();
+        assertTrue(response.getContentType().startsWith("application/json"));
+        assertTrue(json.startsWith("{\"subsonic-response\":{"));
+        assertTrue(json.contains("\"status\":\"ok\""));
+        assertTrue(json.contains("\"email\":\"airsonic@github.com\""));
+    }
+
+    @Test
+    public void jsonpIsWrappedInCallback() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setParameter("f", "json");
+        String json = write(request).getContentAsString();
+
+        request = new MockHttpServletRequest();
+        request.setParameter("f", "jsonp");
+        request.setParameter("callback", "handle");
+        MockHttpServletResponse response = write(request);
+
+        assertTrue(response.getContentType().startsWith("text/javascript"));
+        assertEquals("handle(" + json + ");", response.getContentAsString());
+    }
+
+    @Test
+    public void responseIsGzippedWhenAccepted() throws Exception {
+        when(settingsService.isRestGzipEnabled()).thenReturn(true);
+        String xml = write(new MockHttpServletRequest()).getContentAsString();
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Accept-Encoding", "deflate, gzip");
+        MockHttpServletResponse response = write(request);
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals(xml, IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void failedResponseIsReset() {
+        MockHttpServletResponse response = new MockHttpServletResponse() {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throw new IOException("Connection reset");
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                    }
+                };
+            }
+        };
+        response.setHeader("X-Test", "true");
+
+        try {
+            jaxbWriter.writeResponse(new MockHttpServletRequest(), response, res);
+            fail();
+        } catch (RuntimeException x) {
+            assertNull(response.getHeader("X-Test"));
+            assertNull(response.getContentType());
+        }
+    }
+
+    private MockHttpServletResponse write(MockHttpServletRequest request) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        jaxbWriter.writeResponse(request, response, res);
+        return response;
+    }
+}
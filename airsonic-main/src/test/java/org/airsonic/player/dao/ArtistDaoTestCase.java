@@ -0,0 +1,61 @@
+package org.airsonic.player.dao;
+
+import org.airsonic.player.domain.Artist;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of {@link ArtistDao}.
+ */
+public class ArtistDaoTestCase extends DaoTestCaseBean2 {
+
+    @Autowired
+    ArtistDao artistDao;
+
+    @Before
+    public void setUp() {
+        getJdbcTemplate().execute("delete from artist");
+    }
+
+    @Test
+    public void testMarkPresent() {
+        Date oldScan = new Date(1000000000000L);
+        Date newScan = new Date(1500000000000L);
+
+        // More artists than the media scanner marks present per batch.
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            names.add("artist" + i);
+            createArtist("artist" + i, oldScan);
+        }
+        createArtist("other", oldScan);
+
+        artistDao.markPresent(names, newScan);
+
+        for (String name : names) {
+            Artist artist = artistDao.getArtist(name);
+            assertTrue("Wrong present state.", artist.isPresent());
+            assertEquals("Wrong last scanned.", newScan.getTime(), artist.getLastScanned().getTime());
+        }
+        Artist other = artistDao.getArtist("other");
+        assertFalse("Wrong present state.", other.isPresent());
+        assertEquals("Wrong last scanned.", oldScan.getTime(), other.getLastScanned().getTime());
+    }
+
+    private void createArtist(String name, Date lastScanned) {
+        Artist artist = new Artist();
+        artist.setName(name);
+        artist.setLastScanned(lastScanned);
+        artist.setPresent(false);
+        artistDao.createOrUpdateArtist(artist);
+    }
+}
@@ -0,0 +1,70 @@
+package org.airsonic.player.dao;
+
+import org.airsonic.player.domain.MediaFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit test of {@link FileChecksumDao}.
+ */
+public class FileChecksumDaoTestCase extends DaoTestCaseBean2 {
+
+    @Autowired
+    FileChecksumDao fileChecksumDao;
+
+    @Autowired
+    MediaFileDao mediaFileDao;
+
+    @Before
+    public void setUp() {
+        getJdbcTemplate().execute("delete from file_checksum");
+        getJdbcTemplate().execute("delete from media_file");
+    }
+
+    @Test
+    public void testSetAndGetCrc() {
+        assertNull("Wrong checksum.", fileChecksumDao.getCrc("path", 100L, 1000L));
+
+        fileChecksumDao.setCrc("path", 100L, 1000L, 0xFFFFFFFFL);
+        assertEquals("Wrong checksum.", Long.valueOf(0xFFFFFFFFL), fileChecksumDao.getCrc("path", 100L, 1000L));
+        assertNull("Wrong checksum.", fileChecksumDao.getCrc("path", 101L, 1000L));
+        assertNull("Wrong checksum.", fileChecksumDao.getCrc("path", 100L, 1001L));
+        assertNull("Wrong checksum.", fileChecksumDao.getCrc("other", 100L, 1000L));
+
+        fileChecksumDao.setCrc("path", 200L, 2000L, 42L);
+        assertEquals("Wrong checksum.", Long.valueOf(42L), fileChecksumDao.getCrc("path", 200L, 2000L));
+        assertNull("Wrong checksum.", fileChecksumDao.getCrc("path", 100L, 1000L));
+    }
+
+    @Test
+    public void testExpunge() {
+        Date now = new Date();
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setPath("/music/album/song.mp3");
+        mediaFile.setParentPath("/music/album");
+        mediaFile.setFolder("/music");
+        mediaFile.setMediaType(MediaFile.MediaType.MUSIC);
+        mediaFile.setCoverArtPath("/music/album/cover.jpg");
+        mediaFile.setCreated(now);
+        mediaFile.setChanged(now);
+        mediaFile.setLastScanned(now);
+        mediaFile.setChildrenLastUpdated(now);
+        mediaFile.setPresent(true);
+        mediaFileDao.createOrUpdateMediaFile(mediaFile);
+
+        fileChecksumDao.setCrc("/music/album/song.mp3", 100L, 1000L, 1L);
+        fileChecksumDao.setCrc("/music/album/cover.jpg", 100L, 1000L, 2L);
+        fileChecksumDao.setCrc("/music/album/deleted.mp3", 100L, 1000L, 3L);
+
+        fileChecksumDao.expunge();
+        assertEquals("Wrong checksum.", Long.valueOf(1L), fileChecksumDao.getCrc("/music/album/song.mp3", 100L, 1000L));
+        assertEquals("Wrong checksum.", Long.valueOf(2L), fileChecksumDao.getCrc("/music/album/cover.jpg", 100L, 1000L));
+        assertNull("Wrong checksum.", fileChecksumDao.getCrc("/music/album/deleted.mp3", 100L, 1000L));
+    }
+}
@@ -0,0 +1,67 @@
+package org.airsonic.player.dao;
+
+import org.airsonic.player.domain.MediaFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of {@link MediaFileDao}.
+ */
+public class MediaFileDaoTestCase extends DaoTestCaseBean2 {
+
+    @Autowired
+    MediaFileDao mediaFileDao;
+
+    @Before
+    public void setUp() {
+        getJdbcTemplate().execute("delete from media_file");
+    }
+
+    @Test
+    public void testMarkPresent() {
+        Date oldScan = new Date(1000000000000L);
+        Date newScan = new Date(1500000000000L);
+
+        // More media files than the media scanner marks present per batch.
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            paths.add("/music/song" + i + ".mp3");
+            createMediaFile("/music/song" + i + ".mp3", oldScan);
+        }
+        createMediaFile("/music/other.mp3", oldScan);
+
+        mediaFileDao.markPresent(paths, newScan);
+
+        for (String path : paths) {
+            MediaFile mediaFile = mediaFileDao.getMediaFile(path);
+            assertTrue("Wrong present state.", mediaFile.isPresent());
+            assertEquals("Wrong last scanned.", newScan.getTime(), mediaFile.getLastScanned().getTime());
+        }
+        MediaFile other = mediaFileDao.getMediaFile("/music/other.mp3");
+        assertFalse("Wrong present state.", other.isPresent());
+        assertEquals("Wrong last scanned.", oldScan.getTime(), other.getLastScanned().getTime());
+    }
+
+    private void createMediaFile(String path, Date lastScanned) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setPath(path);
+        mediaFile.setParentPath("/music");
+        mediaFile.setFolder("/music");
+        mediaFile.setMediaType(MediaFile.MediaType.MUSIC);
+        mediaFile.setCreated(lastScanned);
+        mediaFile.setChanged(lastScanned);
+        mediaFile.setLastScanned(lastScanned);
+        mediaFile.setChildrenLastUpdated(lastScanned);
+        mediaFile.setPresent(false);
+        mediaFileDao.createOrUpdateMediaFile(mediaFile);
+    }
+}
@@ -10,7 +10,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -72,7 +74,7 @@ public class UserDaoTestCase extends DaoTestCaseBean2 {
 
     @Test
     public void testUpdateUser() {
-        User user = new User("sindre", "secret", null);
+        User user = new User("sindre", "secret", null, false, 1000L, 2000L, 3000L);
         user.setAdminRole(true);
         user.setCommentRole(true);
         user.setCoverArtRole(true);
@@ -103,11 +105,33 @@ public class UserDaoTestCase extends DaoTestCaseBean2 {
         user.setSettingsRole(false);
         userDao.updateUser(user);
 
+        // Byte counts are only changed through addByteCounts.
         User newUser = userDao.getAllUsers().get(0);
+        assertEquals("Wrong bytes streamed.", 1000L, newUser.getBytesStreamed());
+        assertEquals("Wrong bytes downloaded.", 2000L, newUser.getBytesDownloaded());
+        assertEquals("Wrong bytes uploaded.", 3000L, newUser.getBytesUploaded());
+
+        user.setBytesStreamed(1000L);
+        user.setBytesDownloaded(2000L);
+        user.setBytesUploaded(3000L);
         assertUserEquals(user, newUser);
-        assertEquals("Wrong bytes streamed.", 1, newUser.getBytesStreamed());
-        assertEquals("Wrong bytes downloaded.", 2, newUser.getBytesDownloaded());
-        assertEquals("Wrong bytes uploaded.", 3, newUser.getBytesUploaded());
+    }
+
+    @Test
+    public void testAddByteCounts() {
+        userDao.createUser(new User("sindre", "secret", null, false, 1000L, 2000L, 3000L));
+        userDao.createUser(new User("bente", "secret", null));
+
+        Map<String, long[]> deltas = new HashMap<>();
+        deltas.put("sindre", new long[]{1L, 2L, 3L});
+        deltas.put("bente", new long[]{10L, 0L, 0L});
+        userDao.addByteCounts(deltas);
+
+        User sindre = userDao.getUserByName("sindre", true);
+        assertEquals("Wrong bytes streamed.", 1001L, sindre.getBytesStreamed());
+        assertEquals("Wrong bytes downloaded.", 2002L, sindre.getBytesDownloaded());
+        assertEquals("Wrong bytes uploaded.", 3003L, sindre.getBytesUploaded());
+        assertEquals("Wrong bytes streamed.", 10L, userDao.getUserByName("bente", true).getBytesStreamed());
     }
 
     @Test
@@ -0,0 +1,92 @@
+package org.airsonic.player.service;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LibraryWatcherServiceUnitTest {
+
+    @InjectMocks
+    LibraryWatcherService libraryWatcherService;
+
+    @Mock
+    MediaScannerService mediaScannerService;
+
+    private final Path artist = Paths.get("/music/artist");
+    private final Path album = Paths.get("/music/artist/album");
+
+    @Test
+    public void changesAreAppliedInOneBatch() {
+        when(mediaScannerService.updateDirectories(any())).thenReturn(true);
+
+        libraryWatcherService.changed(album);
+        libraryWatcherService.changed(artist);
+        libraryWatcherService.changed(album);
+        libraryWatcherService.applyChanges(0);
+        libraryWatcherService.applyChanges(0);
+
+        verify(mediaScannerService, times(1)).updateDirectories(
+                argThat(directories -> new ArrayList<>(directories).equals(Arrays.asList(artist.toFile(), album.toFile()))));
+    }
+
+    @Test
+    public void changesAreAppliedOnceQuiet() {
+        libraryWatcherService.changed(album);
+        libraryWatcherService.applyChanges(60);
+
+        verify(mediaScannerService, never()).updateDirectories(any());
+    }
+
+    @Test
+    public void changesAreRetriedDuringScan() {
+        when(mediaScannerService.updateDirectories(any())).thenReturn(false, true);
+
+        libraryWatcherService.changed(album);
+        libraryWatcherService.applyChanges(0);
+        libraryWatcherService.applyChanges(0);
+        libraryWatcherService.applyChanges(0);
+
+        verify(mediaScannerService, times(2)).updateDirectories(
+                argThat(directories -> new ArrayList<>(directories).equals(Collections.singletonList(album.toFile()))));
+    }
+
+    @Test
+    public void lostEventsTriggerFullScan() {
+        WatchEvent<?> overflow = mock(WatchEvent.class);
+        doReturn(StandardWatchEventKinds.OVERFLOW).when(overflow).kind();
+
+        libraryWatcherService.handleEvents(artist, Collections.singletonList(overflow));
+        libraryWatcherService.applyChanges(0);
+
+        verify(mediaScannerService).scanLibrary();
+        verify(mediaScannerService, never()).updateDirectories(any());
+    }
+
+    @Test
+    public void modifiedFileMarksDirectoryChanged() {
+        WatchEvent<?> modify = mock(WatchEvent.class);
+        doReturn(StandardWatchEventKinds.ENTRY_MODIFY).when(modify).kind();
+        doReturn(Paths.get("song.mp3")).when(modify).context();
+        when(mediaScannerService.updateDirectories(any())).thenReturn(true);
+
+        libraryWatcherService.handleEvents(album, Arrays.asList(modify, modify));
+        libraryWatcherService.applyChanges(0);
+
+        verify(mediaScannerService).updateDirectories(
+                argThat(directories -> new ArrayList<>(directories).equals(Collections.singletonList(album.toFile()))));
+        verify(mediaScannerService, never()).scanLibrary();
+    }
+}
@@ -7,6 +7,7 @@ import org.airsonic.player.TestCaseUtils;
 import org.airsonic.player.dao.*;
 import org.airsonic.player.domain.Album;
 import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.Genre;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.util.HomeRule;
@@ -29,9 +30,11 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
@@ -151,6 +154,104 @@ public class MediaScannerServiceTestCase {
         System.out.print("End");
     }
 
+    /**
+     * Tests that a parallel scan produces the same library as a serial scan.
+     */
+    @Test
+    public void testParallelScanLibrary() {
+        musicFolderDao.getAllMusicFolders().forEach(musicFolder -> musicFolderDao.deleteMusicFolder(musicFolder.getId()));
+        MusicFolderTestData.getTestMusicFolders().forEach(musicFolderDao::createMusicFolder);
+        settingsService.clearMusicFolderCache();
+
+        settingsService.setScanParallelism(1);
+        TestCaseUtils.execScan(mediaScannerService);
+        Map<String, String> serialLibrary = getLibrarySummary();
+
+        // Scan again into an empty database.
+        daoHelper.getJdbcTemplate().execute("delete from media_file");
+        daoHelper.getJdbcTemplate().execute("delete from album");
+        daoHelper.getJdbcTemplate().execute("delete from artist");
+        daoHelper.getJdbcTemplate().execute("delete from genre");
+        mediaFileService.clearMemoryCache();
+
+        settingsService.setScanParallelism(4);
+        TestCaseUtils.execScan(mediaScannerService);
+        Map<String, String> parallelLibrary = getLibrarySummary();
+
+        Assert.assertFalse(serialLibrary.isEmpty());
+        Assert.assertEquals(serialLibrary, parallelLibrary);
+    }
+
+    /**
+     * Returns the album count of each artist, the song count and duration of each album, and the song and
+     * album count of each genre.
+     */
+    private Map<String, String> getLibrarySummary() {
+        List<MusicFolder> musicFolders = musicFolderDao.getAllMusicFolders();
+        Map<String, String> summary = new TreeMap<>();
+        for (Artist artist : artistDao.getAlphabetialArtists(0, Integer.MAX_VALUE, musicFolders)) {
+            summary.put("Artist " + artist.getName(), artist.getAlbumCount() + " albums");
+        }
+        for (Album album : albumDao.getAlphabeticalAlbums(0, Integer.MAX_VALUE, true, true, musicFolders)) {
+            summary.put("Album " + album.getArtist() + " - " + album.getName(),
+                        album.getSongCount() + " songs, " + album.getDurationSeconds() + " seconds");
+        }
+        for (Genre genre : mediaFileDao.getGenres(false)) {
+            summary.put("Genre " + genre.getName(), genre.getSongCount() + " songs, " + genre.getAlbumCount() + " albums");
+        }
+        return summary;
+    }
+
+    /**
+     * Tests that an incremental scan skips directories that are unchanged since the previous scan, and rescans
+     * the changed ones.
+     */
+    @Test
+    public void testIncrementalScanLibrary() throws Exception {
+        File unchangedSong = copyPiano(new File(temporaryFolder.newFolder("Unchanged", "Album"), "Piano.mp3"));
+        File changedSong = copyPiano(new File(temporaryFolder.newFolder("Changed", "Album"), "Piano.mp3"));
+
+        MusicFolder musicFolder = new MusicFolder(1, temporaryFolder.getRoot(), "Music", true, new Date());
+        musicFolderDao.createMusicFolder(musicFolder);
+        settingsService.clearMusicFolderCache();
+        settingsService.setIncrementalScanEnabled(true);
+        settingsService.save();
+        try {
+            // Scan dates are truncated to the second, and must be after the settings were changed.
+            Thread.sleep(1000);
+            TestCaseUtils.execScan(mediaScannerService);
+            long unchangedSongChanged = mediaFileDao.getMediaFile(unchangedSong.getPath()).getChanged().getTime();
+
+            // Modifying a file does not change its directory, so an incremental scan doesn't notice it.
+            Assert.assertTrue(unchangedSong.setLastModified(unchangedSong.lastModified() + 60000L));
+            Assert.assertTrue(changedSong.setLastModified(changedSong.lastModified() + 60000L));
+            File addedSong = copyPiano(new File(changedSong.getParentFile(), "Added.mp3"));
+            Thread.sleep(1000);
+            TestCaseUtils.execScan(mediaScannerService);
+
+            MediaFile unchanged = mediaFileDao.getMediaFile(unchangedSong.getPath());
+            Assert.assertTrue(unchanged.isPresent());
+            Assert.assertEquals(unchangedSongChanged, unchanged.getChanged().getTime());
+
+            MediaFile changed = mediaFileDao.getMediaFile(changedSong.getPath());
+            Assert.assertTrue(changed.isPresent());
+            Assert.assertEquals(changedSong.lastModified(), changed.getChanged().getTime());
+            Assert.assertEquals(2, mediaFileDao.getChildrenOf(changedSong.getParent()).size());
+            Assert.assertEquals(addedSong.getPath(), mediaFileDao.getMediaFile(addedSong.getPath()).getPath());
+        } finally {
+            settingsService.setIncrementalScanEnabled(false);
+            settingsService.save();
+        }
+    }
+
+    private static File copyPiano(File file) throws Exception {
+        try (InputStream resource = MediaScannerServiceTestCase.class.getClassLoader().getResourceAsStream("MEDIAS/piano.mp3");
+             FileOutputStream out = new FileOutputStream(file)) {
+            IOUtils.copy(resource, out);
+        }
+        return file;
+    }
+
     @Test
     public void testSpecialCharactersInFilename() throws Exception {
         InputStream resource = MediaScannerServiceTestCase.class
@@ -173,6 +274,32 @@ public class MediaScannerServiceTestCase {
         assertNotNull(mediaFile);
     }
 
+    /**
+     * Tests that files added after a scan are picked up by updating just the changed directories.
+     */
+    @Test
+    public void testUpdateDirectories() throws Exception {
+        MusicFolder musicFolder = new MusicFolder(1, temporaryFolder.getRoot(), "Music", true, new Date());
+        musicFolderDao.createMusicFolder(musicFolder);
+        settingsService.clearMusicFolderCache();
+        TestCaseUtils.execScan(mediaScannerService);
+
+        File artistDir = temporaryFolder.newFolder("Artist");
+        File musicFile = new File(artistDir, "Piano.mp3");
+        try (InputStream resource = MediaScannerServiceTestCase.class.getClassLoader().getResourceAsStream("MEDIAS/piano.mp3");
+             FileOutputStream out = new FileOutputStream(musicFile)) {
+            IOUtils.copy(resource, out);
+        }
+
+        Assert.assertTrue(mediaScannerService.updateDirectories(Arrays.asList(temporaryFolder.getRoot(), artistDir)));
+
+        List<MediaFile> rootChildren = mediaFileDao.getChildrenOf(temporaryFolder.getRoot().getPath());
+        Assert.assertEquals(1, rootChildren.size());
+        List<MediaFile> artistChildren = mediaFileDao.getChildrenOf(artistDir.getPath());
+        Assert.assertEquals(1, artistChildren.size());
+        Assert.assertEquals(musicFile.getPath(), artistChildren.get(0).getPath());
+    }
+
     @Test
     public void testNeverScanned() {
 
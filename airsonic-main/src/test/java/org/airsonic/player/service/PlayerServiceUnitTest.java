@@ -0,0 +1,108 @@
+package org.airsonic.player.service;
+
+import org.airsonic.player.dao.PlayerDao;
+import org.airsonic.player.domain.Player;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PlayerServiceUnitTest {
+
+    @InjectMocks
+    PlayerService playerService;
+
+    @Mock
+    PlayerDao playerDao;
+
+    @Mock
+    StatusService statusService;
+
+    @Mock
+    SecurityService securityService;
+
+    @Mock
+    TranscodingService transcodingService;
+
+    private final AtomicInteger lastId = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        doAnswer(invocation -> {
+            invocation.<Player>getArgument(0).setId(lastId.incrementAndGet());
+            return null;
+        }).when(playerDao).createPlayer(any(Player.class));
+        playerService.init();
+    }
+
+    @After
+    public void tearDown() {
+        playerService.destroy();
+    }
+
+    @Test
+    public void playerIsFoundByIpAddressAndUsername() throws Exception {
+        MockHttpServletRequest request = createStreamRequest("192.168.0.2");
+        when(securityService.getCurrentUsername(request)).thenReturn("admin");
+
+        Player player = playerService.getPlayer(request, null, false, true);
+        assertEquals("admin", player.getUsername());
+        assertEquals("192.168.0.2", player.getIpAddress());
+        assertEquals(player.getId(), playerService.getPlayer(request, null, false, true).getId());
+        verify(playerDao, times(1)).createPlayer(any(Player.class));
+
+        MockHttpServletRequest otherRequest = createStreamRequest("192.168.0.3");
+        when(securityService.getCurrentUsername(otherRequest)).thenReturn("admin");
+        assertNotEquals(player.getId(), playerService.getPlayer(otherRequest, null, false, true).getId());
+        verify(playerDao, times(2)).createPlayer(any(Player.class));
+    }
+
+    @Test
+    public void lastSeenIsWrittenBehind() throws Exception {
+        MockHttpServletRequest request = createStreamRequest("192.168.0.2");
+        when(securityService.getCurrentUsername(request)).thenReturn("admin");
+
+        playerService.getPlayer(request, null, false, true);
+        Player player = playerService.getPlayer(request, null, false, true);
+        assertNotNull(player.getLastSeen());
+        verify(playerDao, never()).updatePlayer(any(Player.class));
+
+        playerService.destroy();
+        verify(playerDao, times(1)).updatePlayer(any(Player.class));
+    }
+
+    @Test
+    public void callersGetCopies() {
+        Player player = new Player();
+        player.setUsername("admin");
+        player.setClientId("client");
+        playerService.createPlayer(player);
+
+        Player copy = playerService.getPlayersForUserAndClientId("admin", "client").get(0);
+        copy.setName("changed");
+        assertNull(playerService.getPlayerById(player.getId()).getName());
+
+        playerService.updatePlayer(copy);
+        verify(playerDao).updatePlayer(copy);
+        assertEquals("changed", playerService.getPlayerById(player.getId()).getName());
+        assertTrue(playerService.getPlayersForUserAndClientId("admin", null).isEmpty());
+    }
+
+    private static MockHttpServletRequest createStreamRequest(String ipAddress) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(ipAddress);
+        request.addHeader("user-agent", "test");
+        return request;
+    }
+}
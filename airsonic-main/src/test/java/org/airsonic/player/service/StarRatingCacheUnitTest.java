@@ -0,0 +1,88 @@
+package org.airsonic.player.service;
+
+import org.airsonic.player.dao.MediaFileDao;
+import org.airsonic.player.dao.RatingDao;
+import org.airsonic.player.domain.MediaFile;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StarRatingCacheUnitTest {
+
+    @InjectMocks
+    StarRatingCache starRatingCache;
+
+    @Mock
+    MediaFileDao mediaFileDao;
+
+    @Mock
+    RatingDao ratingDao;
+
+    @Test
+    public void starredDatesAreReadOncePerUser() {
+        Date starred = new Date();
+        when(mediaFileDao.getMediaFileStarredDates("admin")).thenReturn(Collections.singletonMap(1, starred));
+
+        assertEquals(starred, starRatingCache.getStarredDates("admin").get(1));
+        assertNull(starRatingCache.getStarredDates("admin").get(2));
+        verify(mediaFileDao, times(1)).getMediaFileStarredDates("admin");
+    }
+
+    @Test
+    public void starIsWrittenThrough() {
+        Date starred = new Date();
+        when(mediaFileDao.getMediaFileStarredDates("admin")).thenReturn(new HashMap<>());
+        when(mediaFileDao.getMediaFileStarredDate(2, "admin")).thenReturn(starred);
+        assertTrue(starRatingCache.getStarredDates("admin").isEmpty());
+
+        starRatingCache.star(2, "admin");
+        verify(mediaFileDao).starMediaFile(2, "admin");
+        assertEquals(starred, starRatingCache.getStarredDates("admin").get(2));
+
+        starRatingCache.unstar(2, "admin");
+        verify(mediaFileDao).unstarMediaFile(2, "admin");
+        assertTrue(starRatingCache.getStarredDates("admin").isEmpty());
+        verify(mediaFileDao, times(1)).getMediaFileStarredDates("admin");
+    }
+
+    @Test
+    public void ratingIsWrittenThrough() {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setPath("/music/album");
+        Map<String, Double> averages = new HashMap<>();
+        averages.put("/music/album", 3.0);
+        when(ratingDao.getRatingsForUser("admin")).thenReturn(new HashMap<>());
+        when(ratingDao.getAverageRatings()).thenReturn(averages);
+        when(ratingDao.getAverageRating(mediaFile)).thenReturn(4.0);
+
+        assertNull(starRatingCache.getRatings("admin").get("/music/album"));
+        assertEquals(3.0, starRatingCache.getAverageRatings().get("/music/album"), 0.0);
+
+        starRatingCache.setRating("admin", mediaFile, 5);
+        verify(ratingDao).setRatingForUser("admin", mediaFile, 5);
+        assertEquals(Integer.valueOf(5), starRatingCache.getRatings("admin").get("/music/album"));
+        assertEquals(4.0, starRatingCache.getAverageRatings().get("/music/album"), 0.0);
+        verify(ratingDao, times(1)).getRatingsForUser("admin");
+        verify(ratingDao, times(1)).getAverageRatings();
+    }
+
+    @Test
+    public void invalidRatingIsIgnored() {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setPath("/music/album");
+
+        starRatingCache.setRating("admin", mediaFile, 6);
+        verify(ratingDao, never()).setRatingForUser(anyString(), any(), any());
+    }
+}
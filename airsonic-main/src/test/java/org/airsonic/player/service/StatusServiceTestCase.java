@@ -81,4 +81,19 @@ public class StatusServiceTestCase extends TestCase {
         assertEquals("Wrong list of statuses.", Arrays.asList(statusC), service.getAllStreamStatuses());
         assertEquals("Wrong list of statuses.", Arrays.asList(statusC), service.getStreamStatusesForPlayer(player1));
     }
+
+    public void testSecondStreamIsSampled() throws Exception {
+        TransferStatus first = service.createStreamStatus(player1);
+        first.addBytesTransfered(100L);
+        service.removeStreamStatus(first);
+
+        TransferStatus second = service.createStreamStatus(player1);
+        assertSame("Inactive status not reused.", first, second);
+        assertTrue("Wrong status.", second.isActive());
+
+        Thread.sleep(200L);
+        second.addBytesTransfered(1000L);
+        service.sampleStatuses();
+        assertTrue("Status not sampled.", second.getMillisSinceLastUpdate() < 200L);
+    }
 }
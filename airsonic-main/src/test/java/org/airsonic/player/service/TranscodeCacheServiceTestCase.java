@@ -0,0 +1,110 @@
+package org.airsonic.player.service;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.Transcoding;
+import org.airsonic.player.util.HomeRule;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TranscodeCacheServiceTestCase {
+
+    @ClassRule
+    public static final HomeRule classRule = new HomeRule(); // sets airsonic.home to a temporary dir
+
+    private static final int FILE_SIZE = 600 * 1024;
+
+    private SettingsService settingsService;
+    private TranscodeCacheService transcodeCacheService;
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteDirectory(new File(SettingsService.getAirsonicHome(), "transcodeCache"));
+        settingsService = mock(SettingsService.class);
+        when(settingsService.getTranscodeCacheSize()).thenReturn(1L);
+        transcodeCacheService = new TranscodeCacheService();
+        transcodeCacheService.setSettingsService(settingsService);
+        transcodeCacheService.init();
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        TranscodingService.Parameters parameters = createParameters(1);
+        assertNull(transcodeCacheService.getCachedFile(parameters));
+
+        byte[] data = createData();
+        try (InputStream in = transcodeCacheService.cache(parameters, new ByteArrayInputStream(data))) {
+            assertArrayEquals(data, IOUtils.toByteArray(in));
+        }
+
+        File cachedFile = transcodeCacheService.getCachedFile(parameters);
+        assertNotNull(cachedFile);
+        assertArrayEquals(data, FileUtils.readFileToByteArray(cachedFile));
+
+        // A changed media file must be transcoded again.
+        parameters.getMediaFile().setChanged(new Date(parameters.getMediaFile().getChanged().getTime() + 1000L));
+        assertNull(transcodeCacheService.getCachedFile(parameters));
+    }
+
+    @Test
+    public void testIncompleteNotCached() throws Exception {
+        TranscodingService.Parameters parameters = createParameters(1);
+        try (InputStream in = transcodeCacheService.cache(parameters, new ByteArrayInputStream(createData()))) {
+            assertEquals(1024, in.read(new byte[1024]));
+        }
+        assertNull(transcodeCacheService.getCachedFile(parameters));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        when(settingsService.getTranscodeCacheSize()).thenReturn(0L);
+        TranscodingService.Parameters parameters = createParameters(1);
+        InputStream in = new ByteArrayInputStream(createData());
+        assertSame(in, transcodeCacheService.cache(parameters, in));
+        assertNull(transcodeCacheService.getCachedFile(parameters));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        TranscodingService.Parameters first = createParameters(1);
+        TranscodingService.Parameters second = createParameters(2);
+        for (TranscodingService.Parameters parameters : new TranscodingService.Parameters[]{first, second}) {
+            try (InputStream in = transcodeCacheService.cache(parameters, new ByteArrayInputStream(createData()))) {
+                IOUtils.toByteArray(in);
+            }
+        }
+
+        // The cache holds 1 MB, so only the most recently used file is kept.
+        assertNull(transcodeCacheService.getCachedFile(first));
+        assertNotNull(transcodeCacheService.getCachedFile(second));
+    }
+
+    private TranscodingService.Parameters createParameters(int mediaFileId) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(mediaFileId);
+        mediaFile.setChanged(new Date(1568350960000L));
+        TranscodingService.Parameters parameters = new TranscodingService.Parameters(mediaFile, null);
+        parameters.setTranscoding(new Transcoding(1, "mp3 audio", "flac", "mp3", "ffmpeg -i %s -ab %bk -v 0 -f mp3 -", null, null, true));
+        parameters.setMaxBitRate(128);
+        return parameters;
+    }
+
+    private byte[] createData() {
+        byte[] data = new byte[FILE_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
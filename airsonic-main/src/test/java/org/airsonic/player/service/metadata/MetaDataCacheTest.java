@@ -0,0 +1,133 @@
+package org.airsonic.player.service.metadata;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetaDataCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File cacheFile;
+    private File song;
+    private MetaDataParser parser;
+    private MetaDataCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheFile = new File(temporaryFolder.getRoot(), "metadata.cache");
+        song = temporaryFolder.newFile("song.mp3");
+        Files.write(song.toPath(), new byte[]{1, 2, 3});
+        song.setLastModified(1000000L);
+
+        parser = mock(MetaDataParser.class);
+        when(parser.getMetaData(any(File.class))).thenAnswer(invocation -> createMetaData(180));
+
+        cache = new MetaDataCache();
+        cache.open(cacheFile);
+    }
+
+    @After
+    public void tearDown() {
+        cache.destroy();
+    }
+
+    @Test
+    public void testCached() {
+        assertEquals("Title", cache.getMetaData(parser, song).getTitle());
+        MetaData metaData = cache.getMetaData(parser, song);
+        verify(parser, times(1)).getMetaData(song);
+
+        assertEquals(Integer.valueOf(3), metaData.getTrackNumber());
+        assertNull(metaData.getDiscNumber());
+        assertEquals("Title", metaData.getTitle());
+        assertEquals("Artist", metaData.getArtist());
+        assertNull(metaData.getAlbumArtist());
+        assertEquals("Album", metaData.getAlbumName());
+        assertEquals(Integer.valueOf(180), metaData.getDurationSeconds());
+        assertEquals(Integer.valueOf(320), metaData.getBitRate());
+        assertFalse(metaData.getVariableBitRate());
+    }
+
+    @Test
+    public void testReopen() {
+        cache.getMetaData(parser, song);
+        cache.destroy();
+
+        cache = new MetaDataCache();
+        cache.open(cacheFile);
+        assertEquals(1, cache.size());
+        assertEquals("Title", cache.getMetaData(parser, song).getTitle());
+        verify(parser, times(1)).getMetaData(song);
+    }
+
+    @Test
+    public void testModified() throws Exception {
+        cache.getMetaData(parser, song);
+        song.setLastModified(2000000L);
+        cache.getMetaData(parser, song);
+        Files.write(song.toPath(), new byte[]{1, 2, 3, 4});
+        song.setLastModified(2000000L);
+        cache.getMetaData(parser, song);
+        verify(parser, times(3)).getMetaData(song);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        File deleted = temporaryFolder.newFile("deleted.mp3");
+        cache.getMetaData(parser, deleted);
+        for (int i = 0; i < 1100; i++) {
+            song.setLastModified(1000000L + i * 1000L);
+            cache.getMetaData(parser, song);
+        }
+        cache.destroy();
+        assertTrue(deleted.delete());
+
+        long length = cacheFile.length();
+        cache = new MetaDataCache();
+        cache.open(cacheFile);
+        assertEquals(1, cache.size());
+        assertTrue(cacheFile.length() < length);
+        assertFalse(new File(cacheFile.getPath() + ".tmp").exists());
+
+        cache.getMetaData(parser, song);
+        verify(parser, times(1101)).getMetaData(any(File.class));
+    }
+
+    @Test
+    public void testNotCachedWithoutDuration() {
+        when(parser.getMetaData(any(File.class))).thenAnswer(invocation -> createMetaData(null));
+        cache.getMetaData(parser, song);
+        cache.getMetaData(parser, song);
+        verify(parser, times(2)).getMetaData(song);
+        assertEquals(0, cache.size());
+    }
+
+    private static MetaData createMetaData(Integer durationSeconds) {
+        MetaData metaData = new MetaData();
+        metaData.setTrackNumber(3);
+        metaData.setTitle("Title");
+        metaData.setArtist("Artist");
+        metaData.setAlbumName("Album");
+        metaData.setDurationSeconds(durationSeconds);
+        metaData.setBitRate(320);
+        return metaData;
+    }
+}
@@ -0,0 +1,69 @@
+package org.airsonic.player.service.metadata;
+
+import org.airsonic.player.service.SettingsService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MetaDataParserPoolTest {
+
+    private final File song = new File("song.mp3");
+    private final File video = new File("video.mkv");
+    private final File other = new File("other.txt");
+
+    private MetaDataParserPool pool;
+
+    @Before
+    public void setUp() {
+        MetaDataParser parser = mock(MetaDataParser.class);
+        when(parser.getMetaData(any(File.class))).thenAnswer(invocation -> createMetaData(invocation.getArgument(0)));
+        FFmpegParser ffmpegParser = mock(FFmpegParser.class);
+        when(ffmpegParser.getMetaData(any(File.class))).thenAnswer(invocation -> createMetaData(invocation.getArgument(0)));
+
+        MetaDataParserFactory factory = mock(MetaDataParserFactory.class);
+        when(factory.getParser(song)).thenReturn(parser);
+        when(factory.getParser(video)).thenReturn(ffmpegParser);
+        SettingsService settingsService = mock(SettingsService.class);
+        when(settingsService.getMetaDataParserThreads()).thenReturn(2);
+        when(settingsService.getFFprobeThreads()).thenReturn(1);
+        pool = new MetaDataParserPool(factory, new MetaDataCache(), settingsService);
+    }
+
+    @After
+    public void tearDown() {
+        pool.destroy();
+    }
+
+    @Test
+    public void testParse() {
+        List<File> files = Arrays.asList(video, song, other, song);
+        List<Future<MetaData>> metaData = pool.parse(files);
+
+        assertEquals(4, metaData.size());
+        assertEquals("video.mkv", pool.get(metaData.get(0), video).getTitle());
+        assertTrue(pool.get(metaData.get(0), video).getGenre().startsWith("FFprobe-"));
+        assertEquals("song.mp3", pool.get(metaData.get(1), song).getTitle());
+        assertTrue(pool.get(metaData.get(1), song).getGenre().startsWith("MetaDataParser-"));
+        assertNull(pool.get(metaData.get(2), other));
+        assertEquals("song.mp3", pool.get(metaData.get(3), song).getTitle());
+    }
+
+    private static MetaData createMetaData(File file) {
+        MetaData metaData = new MetaData();
+        metaData.setTitle(file.getName());
+        metaData.setGenre(Thread.currentThread().getName());
+        return metaData;
+    }
+}
@@ -22,6 +22,8 @@ package org.airsonic.player.service.search;
 import org.airsonic.player.dao.AlbumDao;
 import org.airsonic.player.dao.ArtistDao;
 import org.airsonic.player.dao.MediaFileDao;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MediaLibraryStatistics;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.SearchCriteria;
 import org.airsonic.player.domain.SearchResult;
@@ -37,6 +39,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.springframework.util.ObjectUtils.isEmpty;
@@ -196,4 +199,57 @@ public class IndexManagerTestCase extends AbstractAirsonicHomeTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testUpdateAndDelete() throws InterruptedException {
+
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setOffset(0);
+        criteria.setCount(Integer.MAX_VALUE);
+        criteria.setQuery("Black Soul Choir");
+
+        SearchResult result = searchService.search(criteria, musicFolders, IndexType.SONG);
+        assertEquals(1, result.getMediaFiles().size());
+        MediaFile song = result.getMediaFiles().get(0);
+
+        /* Changes between scans become visible without a scan, once the searchers are refreshed. */
+        indexManager.delete(song);
+        assertEquals(0, awaitSongCount(criteria, 0));
+
+        indexManager.update(song);
+        assertEquals(1, awaitSongCount(criteria, 1));
+    }
+
+    @Test
+    public void testUpdateWhileIndexing() throws InterruptedException {
+
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setOffset(0);
+        criteria.setCount(Integer.MAX_VALUE);
+        criteria.setQuery("Black Soul Choir");
+
+        SearchResult result = searchService.search(criteria, musicFolders, IndexType.SONG);
+        assertEquals(1, result.getMediaFiles().size());
+        MediaFile song = result.getMediaFiles().get(0);
+
+        indexManager.delete(song);
+        assertEquals(0, awaitSongCount(criteria, 0));
+
+        /* Changes made during a scan that does not index the media file again are applied when it finishes. */
+        MediaLibraryStatistics statistics = indexManager.getStatistics();
+        indexManager.startIndexing();
+        indexManager.update(song);
+        indexManager.stopIndexing(statistics);
+        assertEquals(1, awaitSongCount(criteria, 1));
+    }
+
+    private int awaitSongCount(SearchCriteria criteria, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        int count = searchService.search(criteria, musicFolders, IndexType.SONG).getMediaFiles().size();
+        while (count != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            count = searchService.search(criteria, musicFolders, IndexType.SONG).getMediaFiles().size();
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.airsonic.player.service.search;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RandomDocCollectorTestCase {
+
+    private static final int DOCS = 20;
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+    private final Random random = new Random(42);
+
+    @Before
+    public void setUp() throws IOException {
+        directory = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            for (int i = 0; i < DOCS; i++) {
+                Document document = new Document();
+                document.add(new StringField("parity", i % 2 == 0 ? "even" : "odd", Field.Store.YES));
+                writer.addDocument(document);
+                if (i % 7 == 0) {
+                    // Spread the documents over several segments.
+                    writer.commit();
+                }
+            }
+        }
+        reader = DirectoryReader.open(directory);
+        searcher = new IndexSearcher(reader);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    @Test
+    public void testSample() throws IOException {
+        int[] docs = sample(new MatchAllDocsQuery(), 5);
+        assertEquals(5, docs.length);
+        assertEquals(5, Arrays.stream(docs).distinct().count());
+        assertTrue(Arrays.stream(docs).allMatch(doc -> doc >= 0 && doc < DOCS));
+    }
+
+    @Test
+    public void testFewerMatchesThanCount() throws IOException {
+        int[] docs = sample(new TermQuery(new Term("parity", "odd")), 50);
+        assertEquals(DOCS / 2, docs.length);
+        assertEquals(DOCS / 2, Arrays.stream(docs).distinct().count());
+        for (int doc : docs) {
+            assertEquals("odd", searcher.doc(doc).get("parity"));
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertEquals(0, sample(new MatchAllDocsQuery(), 0).length);
+        assertEquals(0, sample(new TermQuery(new Term("parity", "none")), 5).length);
+    }
+
+    @Test
+    public void testUniform() throws IOException {
+        int[] hits = new int[DOCS];
+        int trials = 2000;
+        for (int i = 0; i < trials; i++) {
+            for (int doc : sample(new MatchAllDocsQuery(), 5)) {
+                hits[doc]++;
+            }
+        }
+        // Each document is expected in a quarter of the samples.
+        for (int count : hits) {
+            assertTrue("Unexpected sample count " + count, count > 400 && count < 600);
+        }
+    }
+
+    private int[] sample(Query query, int count) throws IOException {
+        RandomDocCollector collector = new RandomDocCollector(count, random);
+        searcher.search(query, collector);
+        return collector.getDocs();
+    }
+}
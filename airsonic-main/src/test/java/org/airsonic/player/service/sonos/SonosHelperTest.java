@@ -0,0 +1,36 @@
+package org.airsonic.player.service.sonos;
+
+import com.sonos.services._1.AbstractMedia;
+import com.sonos.services._1.ItemType;
+import com.sonos.services._1.MediaCollection;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SonosHelperTest extends TestCase {
+
+    public void testCreateScrollIndices() {
+        List<AbstractMedia> media = Arrays.asList(
+                createMedia(ItemType.PROGRAM, "Shuffle Play"),
+                createMedia(ItemType.ARTIST, "ABBA"),
+                createMedia(ItemType.ARTIST, "AC/DC"),
+                createMedia(ItemType.ARTIST, "The Beatles"),
+                createMedia(ItemType.ARTIST, "Coldplay"),
+                createMedia(ItemType.ARTIST, "Björk"),
+                createMedia(ItemType.ARTIST, "Metallica"),
+                createMedia(ItemType.ARTIST, "10cc"));
+        String[] ignoredArticles = {"The"};
+
+        assertEquals("A,1,B,3,C,4,M,6", SonosHelper.createScrollIndices(media, ignoredArticles));
+        assertNull(SonosHelper.createScrollIndices(Collections.emptyList(), ignoredArticles));
+    }
+
+    private static AbstractMedia createMedia(ItemType itemType, String title) {
+        MediaCollection media = new MediaCollection();
+        media.setItemType(itemType);
+        media.setTitle(title);
+        return media;
+    }
+}
@@ -2,9 +2,13 @@ package org.airsonic.player.util;
 
 import org.airsonic.player.domain.MediaLibraryStatistics;
 import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.*;
@@ -79,6 +83,30 @@ public class UtilTest {
         assertNotNull(statistics);
     }
 
+    @Test
+    public void sendFile() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        assertFalse(Util.isSendFileSupported(request));
+
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        assertTrue(Util.isSendFileSupported(request));
+
+        File file = new File("test.mp3");
+        Util.sendFile(request, file, 10L, 20L);
+        assertEquals(file.getCanonicalPath(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(10L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(20L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+    }
+
+    @Test
+    public void subList() {
+        List<Integer> list = Arrays.asList(1, 2, 3, 4, 5);
+        assertEquals(Arrays.asList(2, 3), Util.subList(list, 1, 2));
+        assertEquals(Arrays.asList(4, 5), Util.subList(list, 3, 10));
+        assertEquals(Arrays.asList(3, 4, 5), Util.subList(list, 2, Long.MAX_VALUE));
+        assertTrue(Util.subList(list, 7, 2).isEmpty());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void stringMapToValidObjectWithNoData() {
         Map<String, String> stringStringMap = new HashMap<>();